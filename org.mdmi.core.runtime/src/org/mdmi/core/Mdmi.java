@@ -17,9 +17,11 @@ package org.mdmi.core;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Properties;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.mdmi.core.engine.MdmiEngine;
 import org.slf4j.Logger;
@@ -28,6 +30,10 @@ import org.slf4j.LoggerFactory;
 /**
  * MDMI main entry point.
  *
+ * There is one runtime per process, shared by all the threads. The loaded maps, the resolver and the registered
+ * processors are shared; everything that belongs to a single transformation lives in the MdmiTransferInfo and the
+ * MdmiUow that executes it.
+ *
  * @author goancea
  */
 public final class Mdmi {
@@ -95,35 +101,38 @@ public final class Mdmi {
 
 	public static final String PARAM_MDMI_ROOT_DIR = "mdmi.root.dir";
 
-	static private ThreadLocal<Mdmi> mdmiThreadLocal = new ThreadLocal<>() {
-
-		/*
-		 * (non-Javadoc)
-		 *
-		 * @see java.lang.ThreadLocal#initialValue()
-		 */
-		@Override
-		protected Mdmi initialValue() {
-			return new Mdmi();
-		}
+	private static final class Holder {
+		static final Mdmi INSTANCE = new Mdmi();
+	}
 
-	};
+	/**
+	 * @return the runtime shared by all the threads of this process
+	 */
+	public static Mdmi getInstance() {
+		return Holder.INSTANCE;
+	}
 
+	/**
+	 * Kept for compatibility, same as {@link #getInstance()}.
+	 *
+	 * @return the runtime shared by all the threads of this process
+	 */
 	public static final Mdmi INSTANCE() {
-		logger.trace("Call  public static final Mdmi INSTANCE() " + Thread.currentThread().getName());
-		return mdmiThreadLocal.get();
-
+		return Holder.INSTANCE;
 	}
 
 	private File m_rootDir;
 
-	private MdmiResolver m_resolver;
+	private volatile MdmiResolver m_resolver;
+
+	private volatile MdmiEngine m_engine;
 
-	private MdmiEngine m_engine;
+	// held shared by the running transfers, and exclusively by stop() once they are done
+	private final ReentrantReadWriteLock transfers = new ReentrantReadWriteLock();
 
-	private MdmiPreProcessors m_preProcessors = new MdmiPreProcessors();
+	private volatile MdmiPreProcessors m_preProcessors = new MdmiPreProcessors();
 
-	private MdmiPostProcessors m_postProcessors = new MdmiPostProcessors();
+	private volatile MdmiPostProcessors m_postProcessors = new MdmiPostProcessors();
 
 	private SourceSemanticModelProcessors sourceSemanticModelProcessors = new SourceSemanticModelProcessors();
 
@@ -143,8 +152,11 @@ public final class Mdmi {
 		return targetSemanticModelProcessors;
 	}
 
-	private HashMap<String, MapInfo> m_mapInfos = new HashMap<>();
+	private final HashMap<String, MapInfo> m_mapInfos = new HashMap<>();
 
+	/**
+	 * @return the map infos; the runtime is shared by all the threads, synchronize on the map to use it
+	 */
 	public HashMap<String, MapInfo> getMaps() {
 		return m_mapInfos;
 	}
@@ -167,9 +179,12 @@ public final class Mdmi {
 	 * Starts the runtime.
 	 * This method will load the configuration data from the 'mdmi.config' file in the root folder,
 	 * and then it will initialize and start the runtime.
+	 * Calling it on a runtime that is already started does nothing.
 	 */
 	public void start() {
-		startImpl();
+		if (!startImpl()) {
+			return;
+		}
 		try {
 			Properties prop = new Properties();
 
@@ -215,22 +230,46 @@ public final class Mdmi {
 	 * @param config
 	 *            The configuration data to use.
 	 */
-	private void startImpl() {
-
+	private synchronized boolean startImpl() {
+		if (m_engine != null) {
+			return false;
+		}
+		if (m_preProcessors == null) {
+			m_preProcessors = new MdmiPreProcessors();
+		}
+		if (m_postProcessors == null) {
+			m_postProcessors = new MdmiPostProcessors();
+		}
 		m_resolver = new MdmiResolver();
-		setM_engine(new MdmiEngine(this));
-		getEngine().start();
+		MdmiEngine engine = new MdmiEngine(this);
+		engine.start();
+		setM_engine(engine);
+		return true;
 	}
 
 	/**
 	 * Stop the runtime, unload all configuration.
+	 * The transfers running are completed first; transfers started meanwhile wait, and are refused once stopped.
 	 */
 	public void stop() {
-		getEngine().stop();
-		setM_engine(null);
-		m_resolver = null;
-		m_preProcessors = null;
-		m_postProcessors = null;
+		if (transfers.getReadHoldCount() > 0) {
+			throw new MdmiException("Mdmi.stop() The runtime cannot be stopped by one of its transfers");
+		}
+		transfers.writeLock().lock();
+		try {
+			synchronized (this) {
+				if (m_engine == null) {
+					return;
+				}
+				getEngine().stop();
+				setM_engine(null);
+				m_resolver = null;
+				m_preProcessors = null;
+				m_postProcessors = null;
+			}
+		} finally {
+			transfers.writeLock().unlock();
+		}
 
 	}
 
@@ -397,15 +436,26 @@ public final class Mdmi {
 
 	// call the engine to execute
 	private void exec(MdmiTransferInfo transferInfo, boolean async) {
+		transfers.readLock().lock();
 		try {
+			MdmiEngine engine = getEngine();
+			if (engine == null) {
+				throw new MdmiException(
+					"Mdmi.exec() The runtime is stopped, cannot execute the transformation " + transferInfo.toString());
+			}
 			logger.trace("exec(MdmiTransferInfo transferInfo, boolean async)  " + Thread.currentThread().getName());
-			transferInfo.sourceModel.resolve();
-			transferInfo.targetModel.resolve();
+			// model refs shared by prepared transformations are already resolved against the same maps
+			if (transferInfo.sourceModel.getMaps() != transferInfo.getMaps()) {
+				transferInfo.sourceModel.resolve(transferInfo.getMaps());
+			}
+			if (transferInfo.targetModel.getMaps() != transferInfo.getMaps()) {
+				transferInfo.targetModel.resolve(transferInfo.getMaps());
+			}
 			// if (async) {
 			// getEngine().executeTransferAsync(transferInfo);
 			// } else {
 			logger.trace("Start getEngine().executeTransfer(transferInfo)" + Thread.currentThread().getName());
-			getEngine().executeTransfer(transferInfo);
+			engine.executeTransfer(transferInfo);
 			logger.trace("End getEngine().executeTransfer(transferInfo)" + Thread.currentThread().getName());
 			// }
 		} catch (MdmiException ex) {
@@ -413,6 +463,8 @@ public final class Mdmi {
 		} catch (Exception ex) {
 			throw new MdmiException(
 				ex, "Mdmi.exec() Unexpected exception for transformnation " + transferInfo.toString());
+		} finally {
+			transfers.readLock().unlock();
 		}
 	}
 
@@ -443,7 +495,9 @@ public final class Mdmi {
 	 * @param mapInfo
 	 */
 	public void putMapInfo(MapInfo me) {
-		m_mapInfos.put(me.mapName, me);
+		synchronized (m_mapInfos) {
+			m_mapInfos.put(me.mapName, me);
+		}
 
 	}
 
@@ -451,7 +505,9 @@ public final class Mdmi {
 	 * @return
 	 */
 	public Collection<MapInfo> getAllMapInfos() {
-		return m_mapInfos.values();
+		synchronized (m_mapInfos) {
+			return new ArrayList<>(m_mapInfos.values());
+		}
 	}
 
 	/**
@@ -459,9 +515,11 @@ public final class Mdmi {
 	 * @return
 	 */
 	public MapInfo getMapInfoByFileName(String mapFileName) {
-		for (MapInfo me : m_mapInfos.values()) {
-			if (me.mapFileName.equals(mapFileName)) {
-				return me;
+		synchronized (m_mapInfos) {
+			for (MapInfo me : m_mapInfos.values()) {
+				if (me.mapFileName.equals(mapFileName)) {
+					return me;
+				}
 			}
 		}
 		return null;
@@ -472,14 +530,18 @@ public final class Mdmi {
 	 * @return
 	 */
 	public MapInfo getMapInfo(String mapName) {
-		return m_mapInfos.get(mapName);
+		synchronized (m_mapInfos) {
+			return m_mapInfos.get(mapName);
+		}
 	}
 
 	/**
 	 * @param mapName
 	 */
 	public void removeMapInfo(String mapName) {
-		m_mapInfos.remove(mapName);
+		synchronized (m_mapInfos) {
+			m_mapInfos.remove(mapName);
+		}
 	}
 
 	/**
@@ -0,0 +1,468 @@
+/*******************************************************************************
+* Copyright (c) 2012, 2017, 2018 MDIX Inc
+* All rights reserved. This program and the accompanying materials
+* are made available under the terms of the Eclipse Public License v1.0
+* which accompanies this distribution, and is available at
+* http://www.eclipse.org/legal/epl-v10.html
+*
+* Contributors:
+*     MDIX Inc - initial API and implementation
+*
+*******************************************************************************/
+package org.mdmi.core;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mdmi.MessageGroup;
+import org.mdmi.MessageModel;
+import org.mdmi.core.Mdmi.MapInfo;
+import org.mdmi.core.MdmiResolver.MI;
+import org.mdmi.core.engine.javascript.CodeMaps;
+import org.mdmi.core.engine.terminology.ConceptMapIndex;
+import org.mdmi.core.engine.xml.LocationMatcher;
+import org.mdmi.util.MDMIUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Versioned registry of the loaded MDMI maps.
+ *
+ * A map file is parsed once, when it is registered, and the resulting message models are published as an immutable
+ * {@link Snapshot}. Readers never lock, they just read the current snapshot. Registering the same file again is a
+ * no-op unless its content hash changed.
+ *
+ * Writers are serialized; each change builds a new snapshot and swaps it in with a single volatile write. A transfer
+ * that holds on to a snapshot keeps using the maps of that version even if a newer one is published meanwhile.
+ *
+ * The maps registered are checked on the calling thread, by the length and time of their file; only the ones that
+ * changed are parsed, concurrently on a shared pool of at most 'mdmi.load.threads' threads (defaults to the number of
+ * processors), and published in one step. A map being reloaded is not parsed again by a concurrent registration, which
+ * waits for it instead. The code maps of a group are loaded with it, see {@link CodeMaps},
+ * and so are its local ConceptMaps, see {@link ConceptMapIndex}, and the locations of its syntax nodes are
+ * indexed, see {@link LocationMatcher}.
+ */
+public final class MdmiMapRegistry {
+
+	private static Logger logger = LoggerFactory.getLogger(MdmiMapRegistry.class);
+
+	public static final String PARAM_LOAD_THREADS = "mdmi.load.threads";
+
+	/**
+	 * Immutable view of the registered maps, keyed by 'group.model'.
+	 */
+	public static final class Snapshot {
+
+		private final long version;
+
+		private final Map<String, MI> models;
+
+		Snapshot(long version, Map<String, MI> models) {
+			this.version = version;
+			this.models = Collections.unmodifiableMap(models);
+		}
+
+		/**
+		 * @return the version of this snapshot, incremented on every change to the registry
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @param key
+		 *            The qualified model name, 'group.model'.
+		 * @return The map entry for the model, or null if it is not registered.
+		 */
+		public MI get(String key) {
+			return models.get(key);
+		}
+
+		/**
+		 * @return all the registered models, keyed by 'group.model'
+		 */
+		public Map<String, MI> getModels() {
+			return models;
+		}
+	}
+
+	/**
+	 * What we know about a registered map file, used to detect changes cheaply.
+	 */
+	private static final class MapFile {
+		final long length;
+
+		final long lastModified;
+
+		final String hash;
+
+		MapFile(long length, long lastModified, String hash) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * Outcome of checking and parsing one map file, messageGroup is null if the map did not change.
+	 */
+	private static final class Loaded {
+		final MapInfo mapInfo;
+
+		final MapFile mapFile;
+
+		final MessageGroup messageGroup;
+
+		final long nanos;
+
+		final long allocated;
+
+		Loaded(MapInfo mapInfo, MapFile mapFile, MessageGroup messageGroup, long nanos, long allocated) {
+			this.mapInfo = mapInfo;
+			this.mapFile = mapFile;
+			this.messageGroup = messageGroup;
+			this.nanos = nanos;
+			this.allocated = allocated;
+		}
+	}
+
+	private volatile Snapshot snapshot = new Snapshot(0, new HashMap<String, MI>());
+
+	/** Guarded by this */
+	private final Map<String, MapFile> files = new HashMap<>();
+
+	/** The maps being reloaded, by file name, completed once published; guarded by this */
+	private final Map<String, CompletableFuture<Loaded>> loading = new HashMap<>();
+
+	/** Shared by the registries, its threads end when idle; guarded by the class */
+	private static ExecutorService executor;
+
+	/**
+	 * @return the current snapshot; never null
+	 */
+	public Snapshot snapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Register the map described by the given map info. The file is parsed only if it was never registered or its
+	 * content changed since it was last registered.
+	 *
+	 * @param mapInfo
+	 *            The map to register.
+	 * @return true if the map was (re)loaded, false if it was already current.
+	 */
+	public boolean register(MapInfo mapInfo) {
+		return registerAll(Collections.singletonList(mapInfo)) > 0;
+	}
+
+	/**
+	 * Register the given maps. The maps that are new or changed are parsed concurrently, and then published together as
+	 * a single new snapshot. The load time and allocation of each parsed map are logged.
+	 * If some maps fail to load, the others are still published and the first failure is thrown.
+	 *
+	 * @param mapInfos
+	 *            The maps to register.
+	 * @return the number of maps that were (re)loaded
+	 */
+	public int registerAll(Collection<MapInfo> mapInfos) {
+		long start = System.nanoTime();
+
+		// the maps whose file changed, the other ones are not looked at again
+		List<MapInfo> changed = new ArrayList<>();
+		for (MapInfo mapInfo : mapInfos) {
+			File file = new File(mapInfo.mapFileName);
+			long length = file.length();
+			long lastModified = file.lastModified();
+			synchronized (this) {
+				MapFile known = files.get(mapInfo.mapFileName);
+				if (known == null || known.length != length || known.lastModified != lastModified ||
+						loading.containsKey(mapInfo.mapFileName)) {
+					changed.add(mapInfo);
+				}
+			}
+		}
+		if (changed.isEmpty()) {
+			return 0;
+		}
+
+		// the maps this call reloads, and the ones already being reloaded by another
+		List<MapInfo> todo = new ArrayList<>();
+		List<CompletableFuture<Loaded>> owned = new ArrayList<>();
+		List<CompletableFuture<Loaded>> others = new ArrayList<>();
+		synchronized (this) {
+			for (MapInfo mapInfo : changed) {
+				CompletableFuture<Loaded> current = loading.get(mapInfo.mapFileName);
+				if (current != null) {
+					others.add(current);
+				} else {
+					CompletableFuture<Loaded> future = new CompletableFuture<>();
+					loading.put(mapInfo.mapFileName, future);
+					todo.add(mapInfo);
+					owned.add(future);
+				}
+			}
+		}
+
+		List<Loaded> loaded = new ArrayList<>();
+		MdmiException failure = null;
+		int threads = Math.min(todo.size(), loadThreads());
+		try {
+			if (threads <= 1) {
+				for (int i = 0; i < todo.size(); i++) {
+					try {
+						loaded.add(load(todo.get(i)));
+					} catch (MdmiException ex) {
+						logger.error("Unable to load map " + todo.get(i).mapFileName, ex);
+						owned.get(i).completeExceptionally(ex);
+						failure = failure != null
+								? failure
+								: ex;
+					}
+				}
+			} else {
+				List<Future<Loaded>> futures = new ArrayList<>();
+				for (MapInfo mapInfo : todo) {
+					futures.add(executor().submit(() -> load(mapInfo)));
+				}
+				for (int i = 0; i < futures.size(); i++) {
+					try {
+						loaded.add(futures.get(i).get());
+					} catch (ExecutionException ex) {
+						logger.error("Unable to load map " + todo.get(i).mapFileName, ex.getCause());
+						MdmiException mex = new MdmiException(
+							ex.getCause(), "Unable to load map {0}", todo.get(i).mapFileName);
+						owned.get(i).completeExceptionally(mex);
+						failure = failure != null
+								? failure
+								: mex;
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						throw new MdmiException(ex, "Interrupted while loading maps");
+					}
+				}
+			}
+		} finally {
+			publishAll(loaded);
+			synchronized (this) {
+				for (MapInfo mapInfo : todo) {
+					loading.remove(mapInfo.mapFileName);
+				}
+			}
+			for (Loaded l : loaded) {
+				owned.get(todo.indexOf(l.mapInfo)).complete(l);
+			}
+			for (CompletableFuture<Loaded> future : owned) {
+				future.completeExceptionally(new MdmiException("Map registration was interrupted"));
+			}
+		}
+
+		int count = 0;
+		for (Loaded l : loaded) {
+			if (l.messageGroup != null) {
+				count++;
+			}
+		}
+		if (count > 0) {
+			report(loaded, count, System.nanoTime() - start, threads);
+		}
+
+		// wait for the maps reloaded by other registrations, so they are published when this returns
+		for (CompletableFuture<Loaded> future : others) {
+			try {
+				future.get();
+			} catch (ExecutionException ex) {
+				failure = failure != null
+						? failure
+						: ex.getCause() instanceof MdmiException
+								? (MdmiException) ex.getCause()
+								: new MdmiException(ex.getCause(), "Unable to load map");
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new MdmiException(ex, "Interrupted while loading maps");
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return count;
+	}
+
+	private Loaded load(MapInfo mapInfo) {
+		File file = new File(mapInfo.mapFileName);
+		long length = file.length();
+		long lastModified = file.lastModified();
+
+		MapFile known;
+		synchronized (this) {
+			known = files.get(mapInfo.mapFileName);
+		}
+		String hash = hash(file);
+		MapFile mapFile = new MapFile(length, lastModified, hash);
+		if (known != null && known.hash.equals(hash)) {
+			return new Loaded(mapInfo, mapFile, null, 0, 0);
+		}
+
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		MessageGroup messageGroup = MDMIUtil.load(mapInfo.mapFileName);
+		CodeMaps.preload(messageGroup);
+		ConceptMapIndex.preload(messageGroup.getName(), mapInfo.mapFileName);
+		LocationMatcher.preload(messageGroup);
+		long nanos = System.nanoTime() - start;
+		return new Loaded(mapInfo, mapFile, messageGroup, nanos, allocatedBytes() - allocated);
+	}
+
+	private synchronized int publishAll(List<Loaded> loaded) {
+		Map<String, MI> models = new LinkedHashMap<>(snapshot.getModels());
+		int count = 0;
+		for (Loaded l : loaded) {
+			files.put(l.mapInfo.mapFileName, l.mapFile);
+			if (l.messageGroup != null) {
+				put(models, l.mapInfo, l.messageGroup);
+				count++;
+			}
+		}
+		if (count > 0) {
+			snapshot = new Snapshot(snapshot.getVersion() + 1, models);
+		}
+		return count;
+	}
+
+	private static void report(List<Loaded> loaded, int count, long nanos, int threads) {
+		for (Loaded l : loaded) {
+			if (l.messageGroup != null) {
+				logger.info(
+					"Loaded map " + l.mapInfo.mapFileName + " in " + l.nanos / 1000000 + " ms, " +
+							(l.allocated > 0
+									? l.allocated / 1024 + " KB allocated"
+									: "allocation not available"));
+			}
+		}
+		logger.info("Loaded " + count + " map(s) in " + nanos / 1000000 + " ms on " + threads + " thread(s)");
+	}
+
+	private static synchronized ExecutorService executor() {
+		if (executor == null) {
+			int threads = loadThreads();
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(
+				threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new LoaderThreadFactory());
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+		}
+		return executor;
+	}
+
+	private static int loadThreads() {
+		int threads = Runtime.getRuntime().availableProcessors();
+		String value = System.getProperty(PARAM_LOAD_THREADS);
+		if (value != null) {
+			try {
+				threads = Integer.parseInt(value.trim());
+			} catch (NumberFormatException ex) {
+				logger.warn("Invalid " + PARAM_LOAD_THREADS + " " + value + ", using " + threads);
+			}
+		}
+		return Math.max(1, threads);
+	}
+
+	// bytes allocated so far by the current thread, or 0 if the JVM does not track it
+	private static long allocatedBytes() {
+		try {
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+					Thread.currentThread().getId());
+			}
+		} catch (Throwable t) {
+			// not available on this JVM
+		}
+		return 0;
+	}
+
+	private static final class LoaderThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "mdmi-map-loader-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Publish an already parsed message group. The group replaces any previously published group with the same name,
+	 * including models that are no longer part of it.
+	 *
+	 * @param mapInfo
+	 *            The map info of the group.
+	 * @param messageGroup
+	 *            The parsed group.
+	 */
+	public void publish(MapInfo mapInfo, MessageGroup messageGroup) {
+		CodeMaps.preload(messageGroup);
+		ConceptMapIndex.preload(messageGroup.getName(), mapInfo.mapFileName);
+		LocationMatcher.preload(messageGroup);
+		synchronized (this) {
+			Map<String, MI> models = new LinkedHashMap<>(snapshot.getModels());
+			put(models, mapInfo, messageGroup);
+			snapshot = new Snapshot(snapshot.getVersion() + 1, models);
+		}
+	}
+
+	// replace the group in the given models with the new one
+	private static void put(Map<String, MI> models, MapInfo mapInfo, MessageGroup messageGroup) {
+		String groupName = messageGroup.getName();
+		models.values().removeIf(previous -> groupName.equals(previous.messageGroup.getName()));
+		MI mi = new MI(mapInfo, messageGroup);
+		logger.debug("Loaded message group " + messageGroup.getName());
+		for (MessageModel messageModel : messageGroup.getModels()) {
+			String key = groupName + "." + messageModel.getMessageModelName();
+			logger.debug("Loaded message model " + key);
+			models.put(key, mi);
+		}
+	}
+
+	private static String hash(File file) {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest.digest()) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (IOException | NoSuchAlgorithmException e) {
+			throw new MdmiException(e, "MdmiMapRegistry: unable to read map file {0}", file.getAbsolutePath());
+		}
+	}
+
+} // MdmiMapRegistry
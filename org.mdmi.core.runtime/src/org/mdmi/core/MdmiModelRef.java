@@ -32,6 +32,8 @@ public final class MdmiModelRef {
 
 	private MessageModel m_model;
 
+	private MdmiMapRegistry.Snapshot m_maps;
+
 	/**
 	 * Constructor with a qualified name string, for example 'group.message'.
 	 *
@@ -127,6 +129,16 @@ public final class MdmiModelRef {
 	 * Resolve will NOT attempt to load the map, must be already loaded.
 	 */
 	public void resolve() {
+		resolve(MdmiResolver.registry.snapshot());
+	}
+
+	/**
+	 * Resolve the references against the given snapshot of the loaded maps.
+	 *
+	 * @param maps
+	 *            The snapshot to resolve against.
+	 */
+	public void resolve(MdmiMapRegistry.Snapshot maps) {
 		// if (m_groupName == null || m_groupName.length() <= 0) {
 		// throw new MdmiException("Invalid call, message group name was not set!");
 		// }
@@ -134,13 +146,23 @@ public final class MdmiModelRef {
 		// throw new MdmiException("Invalid call, message model name was not set!");
 		// }
 
-		m_model = Mdmi.INSTANCE().getResolver().getModel(m_groupName, m_modelName);
+		m_model = Mdmi.INSTANCE().getResolver().getModel(maps, m_groupName, m_modelName);
 		if (m_model == null) {
 			throw new MdmiException("Cannot resolve reference model {0}.{1}", m_groupName, m_modelName);
 		}
+		m_maps = maps;
 		logger.debug("Resolved model ref: '" + m_groupName + "." + m_modelName + "'.");
 	}
 
+	/**
+	 * Get the snapshot of the loaded maps this reference was resolved against.
+	 *
+	 * @return The snapshot, or null if the reference is not resolved.
+	 */
+	public MdmiMapRegistry.Snapshot getMaps() {
+		return m_maps;
+	}
+
 	@Override
 	public String toString() {
 		return m_groupName + "." + m_modelName + "[isResolved=" + (isResolved()
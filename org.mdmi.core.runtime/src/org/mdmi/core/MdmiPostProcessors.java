@@ -28,7 +28,8 @@ public final class MdmiPostProcessors {
 
 	private static Logger logger = LoggerFactory.getLogger(MdmiPostProcessors.class);
 
-	private final ArrayList<IPostProcessor> postProcessors = new ArrayList<>();
+	// replaced when a processor is added, so the transfers go over it without a lock
+	private volatile ArrayList<IPostProcessor> postProcessors = new ArrayList<>();
 
 	/**
 	 * @return the postProcessors
@@ -37,7 +38,7 @@ public final class MdmiPostProcessors {
 		return postProcessors;
 	}
 
-	public void addPostProcessor(IPostProcessor postProcessor) {
+	public synchronized void addPostProcessor(IPostProcessor postProcessor) {
 		if (postProcessor != null) {
 			boolean add = true;
 			// fail safe to make sure post process is onyl added once
@@ -48,7 +49,9 @@ public final class MdmiPostProcessors {
 			}
 			if (add) {
 				logger.trace("Adding post process " + postProcessor.getName());
-				postProcessors.add(postProcessor);
+				ArrayList<IPostProcessor> added = new ArrayList<>(postProcessors);
+				added.add(postProcessor);
+				postProcessors = added;
 			}
 		}
 
@@ -65,8 +68,9 @@ public final class MdmiPostProcessors {
 		if (transferInfo == null) {
 			throw new IllegalArgumentException("transferInfo is null");
 		}
-		for (int i = 0; i < postProcessors.size(); i++) {
-			IPostProcessor postProcessor = postProcessors.get(i);
+		ArrayList<IPostProcessor> processors = postProcessors;
+		for (int i = 0; i < processors.size(); i++) {
+			IPostProcessor postProcessor = processors.get(i);
 			logger.trace("Checking " + postProcessor.getName());
 			logger.trace("messageModel.getGroup().getName() " + transferInfo.targetModel.getGroupName());
 			if (postProcessor.canProcess(transferInfo.targetModel.getModel())) {
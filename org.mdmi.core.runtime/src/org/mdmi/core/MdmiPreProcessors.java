@@ -31,12 +31,15 @@ public final class MdmiPreProcessors {
 
 	private static Logger logger = LoggerFactory.getLogger(MdmiPreProcessors.class);
 
-	private final ArrayList<IPreProcessor> preProcessors = new ArrayList<>();
+	// replaced when a processor is added, so the transfers go over it without a lock
+	private volatile ArrayList<IPreProcessor> preProcessors = new ArrayList<>();
 
-	public void addPreProcessor(IPreProcessor preProcessor) {
+	public synchronized void addPreProcessor(IPreProcessor preProcessor) {
 		if (preProcessor != null) {
 			logger.trace("Adding post process " + preProcessor.getName());
-			preProcessors.add(preProcessor);
+			ArrayList<IPreProcessor> added = new ArrayList<>(preProcessors);
+			added.add(preProcessor);
+			preProcessors = added;
 		}
 
 	}
@@ -56,8 +59,9 @@ public final class MdmiPreProcessors {
 		if (transferInfo == null) {
 			throw new IllegalArgumentException("transferInfo is null");
 		}
-		for (int i = 0; i < preProcessors.size(); i++) {
-			IPreProcessor preprocessor = preProcessors.get(i);
+		ArrayList<IPreProcessor> processors = preProcessors;
+		for (int i = 0; i < processors.size(); i++) {
+			IPreProcessor preprocessor = processors.get(i);
 			if (preprocessor.canProcess(transferInfo.sourceModel.getModel())) {
 				try {
 					preprocessor.processMessage(transferInfo.sourceModel.getModel(), transferInfo.sourceMessage);
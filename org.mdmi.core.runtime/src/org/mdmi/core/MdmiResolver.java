@@ -20,11 +20,13 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Supplier;
 
 import org.mdmi.MessageGroup;
 import org.mdmi.MessageModel;
@@ -48,10 +50,22 @@ public class MdmiResolver {
 
 	private static Logger logger = LoggerFactory.getLogger(MdmiResolver.class);
 
-	static protected HashMap<String, MI> themaps = new HashMap<>();
+	static protected final MdmiMapRegistry registry = new MdmiMapRegistry();
 
-	public synchronized HashMap<String, MI> getMaps() {
-		return themaps;
+	/**
+	 * @return a copy of the maps of the current snapshot of the registry, keyed by 'group.model'
+	 */
+	public HashMap<String, MI> getMaps() {
+		return new HashMap<>(registry.snapshot().getModels());
+	}
+
+	/**
+	 * Get the registry holding the loaded maps.
+	 *
+	 * @return The map registry.
+	 */
+	public MdmiMapRegistry getRegistry() {
+		return registry;
 	}
 
 	public static class Map {
@@ -117,9 +131,10 @@ public class MdmiResolver {
 
 		maps.add(new Map("Mdmi.RUNTIMEBUILD", Mdmi.RUNTIMEBUILD));
 
-		for (String key : Mdmi.INSTANCE().getResolver().getMaps().keySet()) {
+		HashMap<String, MI> active = Mdmi.INSTANCE().getResolver().getMaps();
+		for (String key : active.keySet()) {
 			if (filter == null || (filter != null && filter.contains(key))) {
-				MI mi = Mdmi.INSTANCE().getResolver().getMaps().get(key);
+				MI mi = active.get(key);
 				for (MessageModel mm : mi.messageGroup.getModels()) {
 					if (mm.getDescription() != null) {
 						maps.add(new Map(key, mm.getDescription()));
@@ -178,20 +193,11 @@ public class MdmiResolver {
 
 	public void resolve(InputStream inputStream) throws IOException {
 
-		synchronized (themaps) {
-
-			MessageGroup messageGroup = MDMIUtil.load(inputStream);
+		MessageGroup messageGroup = MDMIUtil.load(inputStream);
 
-			// for (MessageGroup messageGroup : mgs) {
-			logger.debug("Loaded message group " + messageGroup.getName());
-			for (MessageModel messageModel : messageGroup.getModels()) {
-				logger.debug("Loaded message model " + messageModel.getMessageModelName());
-				MapInfo mapInfo = new MapInfo();
-				mapInfo.mapName = createKey(messageGroup.getName(), messageModel.getMessageModelName());
-				MI mi = new MI(mapInfo, messageGroup);
-				themaps.put(createKey(messageGroup.getName(), messageModel.getMessageModelName()), mi);
-			}
-		}
+		MapInfo mapInfo = new MapInfo();
+		mapInfo.mapName = messageGroup.getName();
+		registry.publish(mapInfo, messageGroup);
 
 	}
 
@@ -204,16 +210,8 @@ public class MdmiResolver {
 	 */
 	public void resolveOne(Mdmi.MapInfo mapInfo) {
 
-		synchronized (themaps) {
-			MessageGroup mg = MDMIUtil.load(mapInfo.mapFileName);
-			MI mi = new MI(mapInfo, mg);
-			logger.debug("Loaded message group " + mg.getName());
-
-			for (MessageModel mm : mg.getModels()) {
-				String s = createKey(mg.getName(), mm.getMessageModelName());
-				logger.debug("Loaded message model " + s);
-				themaps.put(s, mi);
-			}
+		if (!registry.register(mapInfo)) {
+			logger.trace("Map " + mapInfo.mapFileName + " is current");
 		}
 
 	}
@@ -232,17 +230,30 @@ public class MdmiResolver {
 	 * @return The model if found, null otherwise.
 	 */
 	public MessageModel getModel(String messageGroup, String messageModel) {
+		return getModel(registry.snapshot(), messageGroup, messageModel);
+	}
+
+	/**
+	 * Get the requested message model from the given snapshot of the loaded maps.
+	 *
+	 * @param maps
+	 *            The snapshot to look into.
+	 * @param messageGroup
+	 *            The message group name.
+	 * @param messageModel
+	 *            The message model name.
+	 * @return The model if found, null otherwise.
+	 */
+	public MessageModel getModel(MdmiMapRegistry.Snapshot maps, String messageGroup, String messageModel) {
 		// if (messageGroup == null || messageModel == null) {
 		// throw new IllegalArgumentException("Null argument");
 		// }
-		synchronized (themaps) {
-			MI mi = themaps.get(createKey(messageGroup, messageModel));
-			if (mi == null) {
-				logger.error("cant find " + createKey(messageGroup, messageModel));
-				return null;
-			}
-			return mi.messageGroup.getModel(messageModel);
+		MI mi = maps.get(createKey(messageGroup, messageModel));
+		if (mi == null) {
+			logger.error("cant find " + createKey(messageGroup, messageModel));
+			return null;
 		}
+		return mi.messageGroup.getModel(messageModel);
 	}
 
 	/**
@@ -271,20 +282,17 @@ public class MdmiResolver {
 	 * @return The message group if found, null otherwise.
 	 */
 	public MessageGroup getMessageGroup(MdmiValueSetsHandler vsh) {
-
-		synchronized (themaps) {
-			if (vsh == null) {
-				throw new IllegalArgumentException("Null argument");
-			}
-			Collection<MI> c = themaps.values();
-			for (Iterator<MI> it = c.iterator(); it.hasNext();) {
-				MI mi = it.next();
-				if (mi.valueSetsHandler == vsh) {
-					return mi.messageGroup;
-				}
+		if (vsh == null) {
+			throw new IllegalArgumentException("Null argument");
+		}
+		Collection<MI> c = registry.snapshot().getModels().values();
+		for (Iterator<MI> it = c.iterator(); it.hasNext();) {
+			MI mi = it.next();
+			if (mi.valueSetsHandler == vsh) {
+				return mi.messageGroup;
 			}
-			return null;
 		}
+		return null;
 	}
 
 	/**
@@ -293,15 +301,13 @@ public class MdmiResolver {
 	 * @return A list of all known message groups.
 	 */
 	public Collection<MessageGroup> getMessageGroups() {
-		synchronized (themaps) {
-			ArrayList<MessageGroup> a = new ArrayList<>();
-			Collection<MI> c = themaps.values();
-			for (Iterator<MI> it = c.iterator(); it.hasNext();) {
-				MI mi = it.next();
-				a.add(mi.messageGroup);
-			}
-			return a;
+		ArrayList<MessageGroup> a = new ArrayList<>();
+		Collection<MI> c = registry.snapshot().getModels().values();
+		for (Iterator<MI> it = c.iterator(); it.hasNext();) {
+			MI mi = it.next();
+			a.add(mi.messageGroup);
 		}
+		return a;
 	}
 
 	/**
@@ -312,16 +318,28 @@ public class MdmiResolver {
 	 * @return The syntax parser for the specified group, or null if the group is not found.
 	 */
 	public ISyntacticParser getSyntacticParser(String messageGroup, String messageModel) {
-		synchronized (themaps) {
-			if (messageGroup == null) {
-				throw new IllegalArgumentException("Null argument");
-			}
-			MI mi = themaps.get(createKey(messageGroup, messageModel));
-			if (mi == null) {
-				return null;
-			}
-			return mi.getSyntaxParser();
+		return getSyntacticParser(registry.snapshot(), messageGroup, messageModel);
+	}
+
+	/**
+	 * Get the syntax parser for the specified message group from the given snapshot of the loaded maps.
+	 *
+	 * @param maps
+	 *            The snapshot to look into.
+	 * @param messageGroup
+	 *            The message group name to look for.
+	 * @return The syntax parser for the specified group, or null if the group is not found.
+	 */
+	public ISyntacticParser getSyntacticParser(MdmiMapRegistry.Snapshot maps, String messageGroup,
+			String messageModel) {
+		if (messageGroup == null) {
+			throw new IllegalArgumentException("Null argument");
+		}
+		MI mi = maps.get(createKey(messageGroup, messageModel));
+		if (mi == null) {
+			return null;
 		}
+		return mi.getSyntaxParser();
 	}
 
 	/**
@@ -332,17 +350,30 @@ public class MdmiResolver {
 	 * @return The enumeration converter for the specified message group, or null if the group is not found.
 	 */
 	public MdmiValueSetsHandler getValueSetsHandler(String messageGroup, String messageModel) {
-		synchronized (themaps) {
-			if (messageGroup == null) {
-				throw new IllegalArgumentException("Null argument");
-			}
+		return getValueSetsHandler(registry.snapshot(), messageGroup, messageModel);
+	}
 
-			MI mi = themaps.get(createKey(messageGroup, messageModel));
-			if (mi == null) {
-				return null;
-			}
-			return mi.valueSetsHandler;
+	/**
+	 * Get the value sets handler for the specified message group from the given snapshot of the loaded maps.
+	 *
+	 * @param maps
+	 *            The snapshot of the loaded maps.
+	 * @param messageGroup
+	 *            The message group name to look for.
+	 * @param messageModel
+	 * @return The handler for the specified group, or null if the group is not found.
+	 */
+	public MdmiValueSetsHandler getValueSetsHandler(MdmiMapRegistry.Snapshot maps, String messageGroup,
+			String messageModel) {
+		if (messageGroup == null) {
+			throw new IllegalArgumentException("Null argument");
 		}
+
+		MI mi = maps.get(createKey(messageGroup, messageModel));
+		if (mi == null) {
+			return null;
+		}
+		return mi.valueSetsHandler;
 	}
 
 	/**
@@ -354,19 +385,31 @@ public class MdmiResolver {
 	 * @return The semantic parser for the specified group, or null if the group is not found.
 	 */
 	public ISemanticParser getSemanticParser(String messageGroup, String messageModel) {
-		synchronized (themaps) {
-			if (messageGroup == null) {
-				throw new IllegalArgumentException("Null argument");
-			}
-			MI mi = themaps.get(createKey(messageGroup, messageModel));
-			if (mi == null) {
-				return null;
-			}
-			return mi.getSemanticParser();
+		return getSemanticParser(registry.snapshot(), messageGroup, messageModel);
+	}
+
+	/**
+	 * Get the semantic parser for the specified message group from the given snapshot of the loaded maps.
+	 *
+	 * @param maps
+	 *            The snapshot to look into.
+	 * @param messageGroup
+	 *            The message group name to look for.
+	 * @return The semantic parser for the specified group, or null if the group is not found.
+	 */
+	public ISemanticParser getSemanticParser(MdmiMapRegistry.Snapshot maps, String messageGroup,
+			String messageModel) {
+		if (messageGroup == null) {
+			throw new IllegalArgumentException("Null argument");
+		}
+		MI mi = maps.get(createKey(messageGroup, messageModel));
+		if (mi == null) {
+			return null;
 		}
+		return mi.getSemanticParser();
 	}
 
-	public final class MI {
+	public static final class MI {
 		Mdmi.MapInfo mapInfo;
 
 		public MessageGroup messageGroup;
@@ -377,32 +420,42 @@ public class MdmiResolver {
 
 		public String datatypemappings;
 
+		// parsers keep state while parsing, so a new one is created for each message, but how is decided only once
+		private volatile Supplier<ISyntacticParser> syntaxParserFactory;
+
 		public MI(Mdmi.MapInfo mapInfo, MessageGroup messageGroup) {
 			this.mapInfo = mapInfo;
 			this.messageGroup = messageGroup;
 		}
 
 		ISyntacticParser getSyntaxParser() {
+			Supplier<ISyntacticParser> factory = syntaxParserFactory;
+			if (factory == null) {
+				factory = createSyntaxParserFactory();
+				syntaxParserFactory = factory;
+			}
+			return factory.get();
+		}
+
+		private Supplier<ISyntacticParser> createSyntaxParserFactory() {
 
 			if (messageGroup != null) {
 				if (messageGroup.getDefaultLocationExprLang() != null) {
 					try {
 						switch (messageGroup.getDefaultLocationExprLang()) {
 							case "JSON":
-								return new org.mdmi.core.engine.json.JsonSyntacticParser();
+								return () -> new org.mdmi.core.engine.json.JsonSyntacticParser();
 							case "HL7":
-								return (ISyntacticParser) Class.forName(
-									"org.openhealthtools.mdht.mdmiplugins.parsers.HL7Parser").getDeclaredConstructor().newInstance();
+								return reflectiveFactory("org.openhealthtools.mdht.mdmiplugins.parsers.HL7Parser");
 							case "QUERY":
-								return (ISyntacticParser) Class.forName(
-									"org.mdmi.engine.parsers.QuerySyntaxParser").getDeclaredConstructor().newInstance();
+								return reflectiveFactory("org.mdmi.engine.parsers.QuerySyntaxParser");
 							case "ML":
-								return new MLSyntacticParser();
+								return () -> new MLSyntacticParser();
 							// (ISyntacticParser) Class.forName(
 							// "org.mdmi.engine.parsers.MLSyntacticParser").newInstance();
 							default:
 								// TreeWalker tw;
-								return new org.mdmi.core.engine.xml.DOMSAXSyntacticParser(messageGroup.getName());
+								break;
 						}
 					} catch (Exception e) {
 						e.printStackTrace();
@@ -413,10 +466,22 @@ public class MdmiResolver {
 
 			}
 
-			return new org.mdmi.core.engine.xml.DOMSAXSyntacticParser(messageGroup.getName());
+			String messageGroupName = messageGroup.getName();
+			return () -> new org.mdmi.core.engine.xml.DOMSAXSyntacticParser(messageGroupName);
 
 		}
 
+		private static Supplier<ISyntacticParser> reflectiveFactory(String className) throws ReflectiveOperationException {
+			Constructor<?> constructor = Class.forName(className).getDeclaredConstructor();
+			return () -> {
+				try {
+					return (ISyntacticParser) constructor.newInstance();
+				} catch (ReflectiveOperationException e) {
+					throw new MdmiException(e, "Unable to create syntax parser {0}", className);
+				}
+			};
+		}
+
 		ISemanticParser getSemanticParser() {
 
 			return new SimplifiedSemanticParser(messageGroup);
@@ -429,9 +494,6 @@ public class MdmiResolver {
 	 */
 	public void load(Mdmi instance) {
 		Collection<Mdmi.MapInfo> mes = Mdmi.INSTANCE().getAllMapInfos();
-		for (Iterator<Mdmi.MapInfo> iterator = mes.iterator(); iterator.hasNext();) {
-			Mdmi.MapInfo me = iterator.next();
-			resolveOne(me);
-		}
+		registry.registerAll(mes);
 	}
 } // MdmiMapResolver
@@ -54,6 +54,8 @@ public class MdmiTransferInfo {
 
 	public JSONObject targetValues;
 
+	private final MdmiMapRegistry.Snapshot maps;
+
 	/**
 	 * Construct a new transfer info instance. By default the useDictionary is false, meaning that the
 	 * target element names are Semantic Element names.
@@ -76,6 +78,9 @@ public class MdmiTransferInfo {
 		this.targetModel = targetModel;
 		this.targetMessage = targetMessage;
 		this.targetElements = elements;
+		this.maps = sourceModel != null && sourceModel.getMaps() != null
+				? sourceModel.getMaps()
+				: MdmiResolver.registry.snapshot();
 	}
 
 	/**
@@ -90,6 +95,17 @@ public class MdmiTransferInfo {
 		this.targetModel = src.targetModel;
 		this.targetMessage = src.targetMessage;
 		this.targetElements = src.targetElements;
+		this.maps = src.maps;
+	}
+
+	/**
+	 * Get the snapshot of the loaded maps this transfer runs against. It is taken when the transfer is created, so
+	 * maps reloaded while the transfer executes do not affect it.
+	 *
+	 * @return The snapshot of the loaded maps.
+	 */
+	public MdmiMapRegistry.Snapshot getMaps() {
+		return maps;
 	}
 
 	/**
@@ -32,9 +32,10 @@ public final class SourceSemanticModelProcessors {
 
 	private static Logger logger = LoggerFactory.getLogger(SourceSemanticModelProcessors.class);
 
-	private final ArrayList<ISemanticProcessor> sourceSemanticProcessors = new ArrayList<>();
+	// replaced when a processor is added, so the transfers go over it without a lock
+	private volatile ArrayList<ISemanticProcessor> sourceSemanticProcessors = new ArrayList<>();
 
-	public void addSourceSemanticProcessor(ISemanticProcessor sourceSemanticProcessor) {
+	public synchronized void addSourceSemanticProcessor(ISemanticProcessor sourceSemanticProcessor) {
 		if (sourceSemanticProcessor != null) {
 			boolean add = true;
 			// fail safe to make sure post process is onyl added once
@@ -46,7 +47,9 @@ public final class SourceSemanticModelProcessors {
 			}
 			if (add) {
 				logger.trace("Adding Source Semantic Model Processor " + sourceSemanticProcessor.getName());
-				sourceSemanticProcessors.add(sourceSemanticProcessor);
+				ArrayList<ISemanticProcessor> added = new ArrayList<>(sourceSemanticProcessors);
+				added.add(sourceSemanticProcessor);
+				sourceSemanticProcessors = added;
 			}
 		}
 
@@ -32,9 +32,10 @@ public final class TargetSemanticModelProcessors {
 
 	private static Logger logger = LoggerFactory.getLogger(TargetSemanticModelProcessors.class);
 
-	private final ArrayList<ISemanticProcessor> targetSemanticProcessors = new ArrayList<>();
+	// replaced when a processor is added, so the transfers go over it without a lock
+	private volatile ArrayList<ISemanticProcessor> targetSemanticProcessors = new ArrayList<>();
 
-	public void addTargetSemanticProcessor(ISemanticProcessor targetSemanticProcessor) {
+	public synchronized void addTargetSemanticProcessor(ISemanticProcessor targetSemanticProcessor) {
 		if (targetSemanticProcessor != null) {
 			boolean add = true;
 			// fail safe to make sure post process is onyl added once
@@ -45,7 +46,9 @@ public final class TargetSemanticModelProcessors {
 			}
 			if (add) {
 				logger.trace("Adding Source Semantic Model Processor " + targetSemanticProcessor.getName());
-				targetSemanticProcessors.add(targetSemanticProcessor);
+				ArrayList<ISemanticProcessor> added = new ArrayList<>(targetSemanticProcessors);
+				added.add(targetSemanticProcessor);
+				targetSemanticProcessors = added;
 			}
 		}
 
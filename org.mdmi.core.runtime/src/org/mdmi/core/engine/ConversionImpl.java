@@ -20,9 +20,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.util.Stack;
 
@@ -38,6 +36,7 @@ import org.mdmi.MessageGroup;
 import org.mdmi.Node;
 import org.mdmi.SemanticElement;
 import org.mdmi.core.Mdmi;
+import org.mdmi.core.MdmiMapRegistry;
 import org.mdmi.core.MdmiResolver.MI;
 import org.mdmi.core.MdmiValueSet;
 import org.mdmi.core.MdmiValueSetMap;
@@ -45,6 +44,7 @@ import org.mdmi.core.MdmiValueSetsHandler;
 import org.mdmi.core.engine.Conversion.ConversionInfo;
 import org.mdmi.core.engine.ITerminologyTransform.TransformCode;
 import org.mdmi.core.engine.terminology.FHIRTerminologyTransform;
+import org.mdmi.core.engine.terminology.FHIRTerminologyTransform.Lookup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -124,6 +124,16 @@ class ConversionImpl {
 		XValue xv = new XValue(
 			mapToMDMI.getBusinessElement().getName(), mapToMDMI.getBusinessElement().getReferenceDatatype());
 
+		if (pendingConversions != null) {
+			execSourceMap(sourceSemanticElement, mapToMDMI, xv);
+			if (!xv.isNullOrEmpty()) {
+				theSeerValues.add(new SEERvalues(mapToMDMI.getBusinessElement().getName(), xv));
+
+				pendingConversions.add(new PendingConversion(xv, mapToMDMI, targetSemanticElement, mapFromMDMI));
+			}
+			return !xv.isNullOrEmpty();
+		}
+
 		execMapToMDMI(sourceSemanticElement, mapToMDMI, xv);
 		if (!xv.isNullOrEmpty()) {
 			theSeerValues.add(new SEERvalues(mapToMDMI.getBusinessElement().getName(), xv));
@@ -142,38 +152,90 @@ class ConversionImpl {
 		return toSE != null && toSE.getRule() != null && 0 < toSE.getRule().length();
 	}
 
-	private static Map<String, DatamapInterpreter> datamapInterpreters = new HashMap<>();
+	// the snapshot of the maps the transfer runs against, set by initializeDI
+	private MdmiMapRegistry.Snapshot maps;
+
+	private DatamapInterpreterPool sourcePool;
+
+	private DatamapInterpreterPool targetPool;
+
+	/**
+	 * Borrow the datatype map interpreters of the source and target maps, from the maps loaded now.
+	 */
+	public void initializeDI(MessageGroup source, MessageGroup target, Properties sp, Properties tp) {
+		initializeDI(Mdmi.INSTANCE().getResolver().getRegistry().snapshot(), source, target, sp, tp);
+	}
 
-	public synchronized void initializeDI(MessageGroup source, MessageGroup target, Properties sp, Properties tp) {
+	/**
+	 * Borrow the datatype map interpreters of the source and target maps, they must be given back with
+	 * {@link #releaseDI()}.
+	 *
+	 * @param maps
+	 *            The snapshot of the maps the transfer runs against.
+	 */
+	public void initializeDI(MdmiMapRegistry.Snapshot maps, MessageGroup source, MessageGroup target, Properties sp,
+			Properties tp) {
 		String sourceKey = source.getName() + "_" + source.getModels().get(0).getMessageModelName() +
 				"__DATATYPEMAPS___";
 		String targetKey = target.getName() + "_" + target.getModels().get(0).getMessageModelName() +
 				"__DATATYPEMAPS___";
 
-		if (!datamapInterpreters.containsKey(sourceKey)) {
-
-			MI mi = Mdmi.INSTANCE().getResolver().getMaps().get(
-				source.getName() + "." + source.getModels().get(0).getMessageModelName());
-
-			if (!StringUtils.isEmpty(mi.datatypemappings)) {
-				datamapInterpreters.put(sourceKey, new DatamapInterpreter(mi.datatypemappings));
+		releaseDI();
+
+		this.maps = maps;
+		// the pool outlives the snapshot, it must not hold on to it
+		MI mi = maps.get(source.getName() + "." + source.getModels().get(0).getMessageModelName());
+		String datatypemappings = mi != null
+				? mi.datatypemappings
+				: null;
+		sourcePool = DatamapInterpreterPool.of(source, () -> {
+			if (!StringUtils.isEmpty(datatypemappings)) {
+				return new DatamapInterpreter(datatypemappings, source);
 			} else {
-				datamapInterpreters.put(sourceKey, new DatamapInterpreter(source));
+				return new DatamapInterpreter(source);
 			}
+		});
 
+		if (target == source) {
+			sourceDatamapInterpreter = sourcePool.borrow();
+			targetDatamapInterpreter = sourceDatamapInterpreter;
+		} else {
+			targetPool = DatamapInterpreterPool.of(target, () -> new DatamapInterpreter(target));
+			// always borrowed in the order of the keys, so transfers between two maps in opposite directions cannot
+			// each hold one interpreter while waiting for the other
+			if (sourceKey.compareTo(targetKey) < 0) {
+				sourceDatamapInterpreter = sourcePool.borrow();
+				targetDatamapInterpreter = targetPool.borrow();
+			} else {
+				targetDatamapInterpreter = targetPool.borrow();
+				sourceDatamapInterpreter = sourcePool.borrow();
+			}
 		}
 
-		if (!datamapInterpreters.containsKey(targetKey)) {
-			datamapInterpreters.put(targetKey, new DatamapInterpreter(target));
-		}
-
-		sourceDatamapInterpreter = datamapInterpreters.get(sourceKey);
-		targetDatamapInterpreter = datamapInterpreters.get(targetKey);
-
 		sourceProperties = sp;
 		targetProperties = tp;
 		theSeerValues.clear();
+		pendingConversions = null;
+		// the local ConceptMaps of the two maps translate the codes of the transfer
+		getTerminologyService().setGroups(source.getName(), target.getName());
+
+	}
 
+	/**
+	 * Give back the interpreters borrowed by
+	 * {@link #initializeDI(MdmiMapRegistry.Snapshot, MessageGroup, MessageGroup, Properties, Properties)}.
+	 */
+	public void releaseDI() {
+		if (sourcePool != null) {
+			sourcePool.release(sourceDatamapInterpreter);
+		}
+		if (targetPool != null) {
+			targetPool.release(targetDatamapInterpreter);
+		}
+		sourcePool = null;
+		targetPool = null;
+		sourceDatamapInterpreter = null;
+		targetDatamapInterpreter = null;
 	}
 
 	Properties sourceProperties;
@@ -182,6 +244,16 @@ class ConversionImpl {
 
 	void execMapToMDMI(XElementValue src, ConversionRule toBE, XValue v) {
 
+		execSourceMap(src, toBE, v);
+
+		// If we have a terminology conversion
+		if (v != null && hasTerminologyTransformation(toBE, toBE.getBusinessElement())) {
+			transformCode(v, toBE.getEnumExtResolverUri(), toBE.getBusinessElement().getEnumValueSet());
+		}
+
+	}
+
+	private void execSourceMap(XElementValue src, ConversionRule toBE, XValue v) {
 		if (!hasSrcRule(toBE)) {
 			logger.trace("cloneValue");
 			cloneValue(src.getXValue(), v, true, toBE, null);
@@ -195,12 +267,10 @@ class ConversionImpl {
 			// If getValue == null - we have a primitive pass int the XValue to method
 			boolean executed = true;
 			if (v.getValue() == null) {
-				executed = sourceDatamapInterpreter.execute(
-					parseFunctionName(toBE.getRule()), src.value(), v, sourceProperties, toBE);
+				executed = sourceDatamapInterpreter.execute(toBE, src.value(), v, sourceProperties);
 
 			} else {
-				executed = sourceDatamapInterpreter.execute(
-					parseFunctionName(toBE.getRule()), src.value(), v.getValue(), sourceProperties, toBE);
+				executed = sourceDatamapInterpreter.execute(toBE, src.value(), v.getValue(), sourceProperties);
 			}
 			if (!executed) {
 				logger.error(
@@ -212,40 +282,122 @@ class ConversionImpl {
 		} else {
 			logger.trace("Missing transformation Source Rule " + toBE.getRule());
 		}
+	}
 
-		// If we have a terminology conversion
-		if (v != null && hasTerminologyTransformation(toBE, toBE.getBusinessElement())) {
+	// the code of a coded value, or null
+	private static String codeOf(XValue v) {
+		if (v.getValue() != null && v.getValue() instanceof XDataStruct) {
+			XDataStruct xds = (XDataStruct) v.getValue();
+			if (xds.hasfield("code") && xds.getValue("code") != null &&
+					!StringUtils.isEmpty(xds.getValue("code").toString())) {
+				return xds.getValue("code").toString();
+			}
+		}
+		return null;
+	}
 
-			if (v.getValue() != null && v.getValue() instanceof XDataStruct) {
-
-				XDataStruct xds = (XDataStruct) v.getValue();
-
-				if (xds.hasfield("code") && xds.getValue("code") != null &&
-						!StringUtils.isEmpty(xds.getValue("code").toString())) {
-					TransformCode transformCode = getTerminologyService().transform(
-						toBE.getEnumExtResolverUri(), xds.getValue("code").toString(),
-						toBE.getBusinessElement().getEnumValueSet());
-
-					/** @TODO Add configuration for transformation code */
-					if (!StringUtils.isEmpty(transformCode.code)) {
-						xds.replaceValue("code", transformCode.code);
-						if (xds.hasfield("codeSystem")) {
-							xds.replaceValue("codeSystem", transformCode.system);
-						}
-						if (xds.hasfield("displayName")) {
-
-							if (!StringUtils.isEmpty((String) xds.getValue("displayName")) &&
-									xds.hasfield("originalText")) {
-								xds.replaceValue("originalText", (String) xds.getValue("displayName"));
-							}
-							xds.replaceValue("displayName", transformCode.displayName);
-						}
-					}
+	private void transformCode(XValue v, String source, String target) {
+		String code = codeOf(v);
+		if (code == null) {
+			return;
+		}
+		logger.trace("Looking to transform " + v.getValue());
+		XDataStruct xds = (XDataStruct) v.getValue();
+		TransformCode transformCode = getTerminologyService().transform(source, code, target);
+
+		/** @TODO Add configuration for transformation code */
+		if (!StringUtils.isEmpty(transformCode.code)) {
+			xds.replaceValue("code", transformCode.code);
+			if (xds.hasfield("codeSystem")) {
+				xds.replaceValue("codeSystem", transformCode.system);
+			}
+			if (xds.hasfield("displayName")) {
+
+				if (!StringUtils.isEmpty((String) xds.getValue("displayName")) && xds.hasfield("originalText")) {
+					xds.replaceValue("originalText", (String) xds.getValue("displayName"));
 				}
+				xds.replaceValue("displayName", transformCode.displayName);
+			}
+		}
+	}
+
+	// the conversions run up to their business element, see deferConversions
+	private List<PendingConversion> pendingConversions;
+
+	/**
+	 * Run the following conversions up to their business elements only; the rest of them, from the business
+	 * elements, runs at {@link #completeConversions()}, so the codes they translate are looked up together.
+	 */
+	void deferConversions() {
+		pendingConversions = new ArrayList<>();
+	}
+
+	/**
+	 * Complete the conversions deferred since {@link #deferConversions()}. The codes of their business element values
+	 * are translated to the business elements first, then from them, at most two round trips to the terminology
+	 * server, before the maps from the business elements run.
+	 */
+	void completeConversions() {
+		List<PendingConversion> pending = pendingConversions;
+		pendingConversions = null;
+		if (pending == null || pending.isEmpty()) {
+			return;
+		}
+		FHIRTerminologyTransform service = getTerminologyService();
+		List<Lookup> lookups = new ArrayList<>();
+		for (PendingConversion conversion : pending) {
+			MDMIBusinessElementReference be = conversion.toBE.getBusinessElement();
+			String code = codeOf(conversion.value);
+			if (code != null && hasTerminologyTransformation(conversion.toBE, be)) {
+				lookups.add(new Lookup(conversion.toBE.getEnumExtResolverUri(), code, be.getEnumValueSet()));
+			}
+		}
+		int count = service.prefetch(lookups);
+
+		lookups.clear();
+		for (PendingConversion conversion : pending) {
+			MDMIBusinessElementReference be = conversion.toBE.getBusinessElement();
+			if (hasTerminologyTransformation(conversion.toBE, be)) {
+				transformCode(conversion.value, conversion.toBE.getEnumExtResolverUri(), be.getEnumValueSet());
+			}
+			String code = codeOf(conversion.value);
+			if (code != null && hasTerminologyTransformation(conversion.toSE, conversion.toSE.getBusinessElement())) {
+				lookups.add(
+					new Lookup(
+						conversion.toSE.getBusinessElement().getEnumValueSet(), code,
+						conversion.toSE.getEnumExtResolverUri()));
 			}
+		}
+		count += service.prefetch(lookups);
+		logger.debug("Prefetched " + count + " codes");
 
+		for (PendingConversion conversion : pending) {
+			try {
+				execMapFromMDMI(conversion.value, conversion.target, conversion.toSE);
+			} catch (Exception e) {
+				logger.error("ERROR IN CONVERSION", e);
+			}
 		}
+	}
+
+	/**
+	 * A conversion run up to its business element: the value of the business element, and the rules to and from it
+	 */
+	private static final class PendingConversion {
+		final XValue value;
 
+		final ConversionRule toBE;
+
+		final XElementValue target;
+
+		final ConversionRule toSE;
+
+		PendingConversion(XValue value, ConversionRule toBE, XElementValue target, ConversionRule toSE) {
+			this.value = value;
+			this.toBE = toBE;
+			this.target = target;
+			this.toSE = toSE;
+		}
 	}
 
 	String getFullPathForNode(Node n) {
@@ -275,37 +427,7 @@ class ConversionImpl {
 		if (v != null) {
 
 			if (hasTerminologyTransformation(toSE, toSE.getBusinessElement())) {
-
-				if (v.getValue() != null && v.getValue() instanceof XDataStruct) {
-					logger.trace("Looking to transform " + v.getValue());
-					XDataStruct xds = (XDataStruct) v.getValue();
-					if (xds.hasfield("code") && xds.getValue("code") != null &&
-							!StringUtils.isEmpty(xds.getValue("code").toString())) {
-
-						TransformCode transformCode = getTerminologyService().transform(
-							toSE.getBusinessElement().getEnumValueSet(), xds.getValue("code").toString(),
-							toSE.getEnumExtResolverUri());
-
-						/** @TODO Add configuration for transformation code */
-						if (!StringUtils.isEmpty(transformCode.code)) {
-							xds.replaceValue("code", transformCode.code);
-							if (xds.hasfield("codeSystem")) {
-								xds.replaceValue("codeSystem", transformCode.system);
-							}
-							if (xds.hasfield("displayName")) {
-
-								if (!StringUtils.isEmpty((String) xds.getValue("displayName")) &&
-										xds.hasfield("originalText")) {
-									xds.replaceValue("originalText", (String) xds.getValue("displayName"));
-								}
-								xds.replaceValue("displayName", transformCode.displayName);
-							}
-							// xds.replaceValue("system", transformCode.system);
-							// xds.replaceValue("display", transformCode.displayName);
-						}
-					}
-				}
-
+				transformCode(v, toSE.getBusinessElement().getEnumValueSet(), toSE.getEnumExtResolverUri());
 			}
 
 		}
@@ -341,8 +463,7 @@ class ConversionImpl {
 			} else {
 				target = trg.value();
 			}
-			boolean executed = targetDatamapInterpreter.execute(
-				parseFunctionName(toSE.getRule()), source, target, targetProperties, toSE);
+			boolean executed = targetDatamapInterpreter.execute(toSE, source, target, targetProperties);
 
 			if (!executed) {
 
@@ -525,6 +646,13 @@ class ConversionImpl {
 		}
 	}
 
+	// the value sets handler of the group in the maps of the transfer
+	private MdmiValueSetsHandler getValueSetsHandler(String messageGroup) {
+		return maps != null
+				? Mdmi.INSTANCE().getResolver().getValueSetsHandler(maps, messageGroup, "")
+				: Mdmi.INSTANCE().getResolver().getValueSetsHandler(messageGroup, "");
+	}
+
 	/**
 	 * @deprecated
 	 * @param src
@@ -547,8 +675,7 @@ class ConversionImpl {
 		if (fromSrc) {
 			SemanticElement se = toBE.getOwner(); // source
 			MDMIBusinessElementReference ber = toBE.getBusinessElement(); // target
-			handler = Mdmi.INSTANCE().getResolver().getValueSetsHandler(
-				se.getElementSet().getModel().getGroup().getName(), "");
+			handler = getValueSetsHandler(se.getElementSet().getModel().getGroup().getName());
 			vsMapName = MdmiValueSetMap.getMapName(se.getEnumValueSet(), ber.getEnumValueSet());
 			srcDT = se.getDatatype();
 			trgDT = ber.getReferenceDatatype();
@@ -566,8 +693,7 @@ class ConversionImpl {
 		} else {
 			SemanticElement se = toSE.getOwner(); // target
 			MDMIBusinessElementReference ber = toSE.getBusinessElement(); // source
-			handler = Mdmi.INSTANCE().getResolver().getValueSetsHandler(
-				se.getElementSet().getModel().getGroup().getName(), "");
+			handler = getValueSetsHandler(se.getElementSet().getModel().getGroup().getName());
 			vsMapName = MdmiValueSetMap.getMapName(ber.getEnumValueSet(), se.getEnumValueSet());
 			srcDT = ber.getReferenceDatatype();
 			trgDT = se.getDatatype();
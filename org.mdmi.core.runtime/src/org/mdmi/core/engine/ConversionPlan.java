@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2012, 2017, 2018 MDIX Inc
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     MDIX Inc - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mdmi.ConversionRule;
+import org.mdmi.MDMIBusinessElementReference;
+import org.mdmi.MessageModel;
+import org.mdmi.SemanticElement;
+import org.mdmi.SemanticElementType;
+
+/**
+ * The parts of MdmiUow.processConversions that only depend on the source and target models, computed once per model
+ * pair and shared by all the transfers between them. Instances are immutable once built.
+ */
+final class ConversionPlan {
+
+	private static final SemanticElement[] NONE = new SemanticElement[0];
+
+	private static final Map<String, ConversionPlan> plans = new ConcurrentHashMap<>();
+
+	final MessageModel sourceModel;
+
+	final MessageModel targetModel;
+
+	/** Multiple instance target semantic elements, by business element id, in model order */
+	private final Map<String, SemanticElement[]> targetsByBusinessElement;
+
+	/** For each multiple instance target semantic element, the business element ids of its mapped containers */
+	private final Map<SemanticElement, String[][]> containment;
+
+	/** Single instance target semantic elements */
+	final SemanticElement[] singles;
+
+	/** The NORMAL container of each single, or null */
+	final SemanticElement[] singleParents;
+
+	final boolean skipContainmentCheck;
+
+	final boolean manyToOneGlobals;
+
+	/**
+	 * Get the plan for the given models, building it if needed. A plan built for models that were since reloaded is
+	 * replaced. If 'mdmi.conversion.plans' is false, a new plan is built each time.
+	 */
+	static ConversionPlan get(MessageModel sourceModel, MessageModel targetModel) {
+		if (!Boolean.parseBoolean(System.getProperty(MdmiUow.PARAM_PLANS, "true"))) {
+			return new ConversionPlan(sourceModel, targetModel);
+		}
+		String key = sourceModel.getGroup().getName() + "." + sourceModel.getMessageModelName() + "->" +
+				targetModel.getGroup().getName() + "." + targetModel.getMessageModelName();
+		ConversionPlan plan = plans.get(key);
+		if (plan == null || plan.sourceModel != sourceModel || plan.targetModel != targetModel) {
+			plan = new ConversionPlan(sourceModel, targetModel);
+			plans.put(key, plan);
+		}
+		return plan;
+	}
+
+	private ConversionPlan(MessageModel sourceModel, MessageModel targetModel) {
+		this.sourceModel = sourceModel;
+		this.targetModel = targetModel;
+
+		Map<String, List<SemanticElement>> byBusinessElement = new HashMap<>();
+		Map<SemanticElement, String[][]> stacks = new IdentityHashMap<>();
+		List<SemanticElement> singleList = new ArrayList<>();
+		for (SemanticElement se : targetModel.getElementSet().getSemanticElements()) {
+			if (!se.isMultipleInstances()) {
+				singleList.add(se);
+				continue;
+			}
+			for (ConversionRule rule : se.getMapFromMdmi()) {
+				if (rule.getBusinessElement() != null) {
+					byBusinessElement.computeIfAbsent(
+						rule.getBusinessElement().getUniqueIdentifier(), k -> new ArrayList<>()).add(se);
+				}
+			}
+			stacks.put(se, mappedStack(se));
+		}
+
+		Map<String, SemanticElement[]> targets = new HashMap<>();
+		for (Map.Entry<String, List<SemanticElement>> entry : byBusinessElement.entrySet()) {
+			targets.put(entry.getKey(), entry.getValue().toArray(NONE));
+		}
+		targetsByBusinessElement = targets;
+		containment = stacks;
+
+		singles = singleList.toArray(NONE);
+		singleParents = new SemanticElement[singles.length];
+		for (int i = 0; i < singles.length; i++) {
+			SemanticElement parent = singles[i].getParent();
+			while (parent != null && !parent.getSemanticElementType().equals(SemanticElementType.NORMAL)) {
+				parent = parent.getParent();
+			}
+			singleParents[i] = parent;
+		}
+
+		skipContainmentCheck = "SKIPCONTAINMENT".equals(targetModel.getGroup().getDescription());
+		manyToOneGlobals = MdmiUow.isManyToOneGlobals(sourceModel.getGroup(), targetModel.getGroup());
+	}
+
+	// same order as popping the stack built by MdmiUow.getMappedStack, outermost container first
+	private static String[][] mappedStack(SemanticElement se) {
+		List<String[]> stack = new ArrayList<>();
+		for (SemanticElement current = se; current != null; current = current.getParent()) {
+			if (current.getSemanticElementType().equals(SemanticElementType.NORMAL) &&
+					!current.getMapFromMdmi().isEmpty()) {
+				List<String> ids = new ArrayList<>();
+				for (ConversionRule rule : current.getMapFromMdmi()) {
+					if (rule.getBusinessElement() != null) {
+						ids.add(rule.getBusinessElement().getUniqueIdentifier());
+					}
+				}
+				stack.add(ids.toArray(new String[0]));
+			}
+		}
+		Collections.reverse(stack);
+		return stack.toArray(new String[0][]);
+	}
+
+	/**
+	 * @return the multiple instance target semantic elements mapped from the business element, never null
+	 */
+	SemanticElement[] getTargets(String businessElementId) {
+		SemanticElement[] targets = targetsByBusinessElement.get(businessElementId);
+		return targets != null
+				? targets
+				: NONE;
+	}
+
+	/**
+	 * @return true if every mapped container of the target semantic element is mapped from one of the matched business
+	 *         elements
+	 */
+	boolean isContainmentEstablished(SemanticElement target, Map<String, ?> matches) {
+		if (skipContainmentCheck) {
+			return true;
+		}
+		String[][] stack = containment.get(target);
+		if (stack == null) {
+			return true;
+		}
+		for (String[] ids : stack) {
+			boolean mapped = false;
+			for (String id : ids) {
+				if (matches.containsKey(id)) {
+					mapped = true;
+					break;
+				}
+			}
+			if (!mapped) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the ids of the business elements to transfer.
+	 */
+	static Set<String> getTargetElementIds(List<MDMIBusinessElementReference> elements) {
+		Set<String> ids = new HashSet<>();
+		if (elements != null) {
+			for (MDMIBusinessElementReference ber : elements) {
+				ids.add(ber.getUniqueIdentifier());
+			}
+		}
+		return ids;
+	}
+
+} // ConversionPlan
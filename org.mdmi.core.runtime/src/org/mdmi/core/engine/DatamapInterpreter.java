@@ -14,14 +14,13 @@ package org.mdmi.core.engine;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
-import javax.script.Invocable;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
 import org.apache.commons.lang3.StringUtils;
@@ -30,16 +29,11 @@ import org.mdmi.DatatypeMap;
 import org.mdmi.MessageGroup;
 import org.mdmi.MessageModel;
 import org.mdmi.SemanticElement;
+import org.mdmi.SemanticElementRelationship;
+import org.mdmi.core.engine.IScriptBackend.ScriptFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.javascript.jscomp.CompilationLevel;
-import com.google.javascript.jscomp.Compiler;
-import com.google.javascript.jscomp.CompilerOptions;
-import com.google.javascript.jscomp.Result;
-import com.google.javascript.jscomp.SourceFile;
-import com.google.javascript.rhino.StaticSourceFile.SourceKind;
-
 /**
  * @author seanmuir
  *
@@ -58,26 +52,36 @@ public class DatamapInterpreter {
 
 	private static Logger logger = LoggerFactory.getLogger(DatamapInterpreter.class);
 
-	ScriptEngineManager manager;
-
-	ScriptEngine engine;
+	IScriptBackend.Script inv;
 
-	Invocable inv;
+	// the source of the script, the Java rule functions are only bound to the functions it defines as they expect
+	private String source;
 
 	public HashMap<String, Exception> exceptions = new HashMap<>();
 
+	/** The DATATYPEMAP function of each conversion rule */
+	private final Map<ConversionRule, ScriptFunction> rules = new ConcurrentHashMap<>();
+
+	/** The QUALIFIER function of each semantic element */
+	private final Map<SemanticElement, ScriptFunction> qualifiers = new ConcurrentHashMap<>();
+
+	/** The functions called by name */
+	private final Map<String, ScriptFunction> functions = new ConcurrentHashMap<>();
+
 	/**
 	 * @param messageGropu
 	 * @param target
 	 */
 	public DatamapInterpreter(MessageGroup messageGropu) {
-		manager = new ScriptEngineManager();
-		engine = manager.getEngineByName("JavaScript");
-
-		if (engine == null) {
-			throw new RuntimeException("Unable to Load Script");
-		}
+		this(messageGropu, ScriptCache.backend());
+	}
 
+	/**
+	 * @param messageGropu
+	 * @param backend
+	 *            The script backend to run the datatype maps with.
+	 */
+	DatamapInterpreter(MessageGroup messageGropu, IScriptBackend backend) {
 		/**
 		 * Make sure no overlap of datatype maps - relying on name might have to rely on function name
 		 *
@@ -127,57 +131,151 @@ public class DatamapInterpreter {
 					// e.printStackTrace();
 				}
 			}
-			engine.eval(compile(sb.toString()));
-		} catch (ScriptException e) {
+			source = sb.toString();
+			inv = ScriptCache.load(source, backend);
+		} catch (IScriptBackend.EvalException e) {
 			logger.error("INVALID JAVA SCRIPT", e.getMessage());
+			source = null;
+			inv = e.getScript();
+		} catch (ScriptException e) {
+			throw new RuntimeException("Unable to Load Script", e);
 		}
 
-		inv = (Invocable) engine;
+		prepare(messageGropu);
 	}
 
 	/**
 	 * @param datatypemappings
 	 */
 	public DatamapInterpreter(String datatypemappings) {
-
-		manager = new ScriptEngineManager();
-		engine = manager.getEngineByName("JavaScript");
-
-		if (engine == null) {
-			throw new RuntimeException("Unable to Load Script");
+		try {
+			source = datatypemappings;
+			inv = ScriptCache.load(datatypemappings);
+		} catch (IScriptBackend.EvalException e) {
+			logger.error("INVALID JAVA SCRIPT", e.getMessage());
+			source = null;
+			inv = e.getScript();
+		} catch (ScriptException e) {
+			throw new RuntimeException("Unable to Load Script", e);
 		}
+	}
 
-		try {
+	/**
+	 * @param datatypemappings
+	 * @param messageGroup
+	 *            The group the datatype mappings are for, its functions are resolved up front.
+	 */
+	public DatamapInterpreter(String datatypemappings, MessageGroup messageGroup) {
+		this(datatypemappings);
+		prepare(messageGroup);
+	}
 
-			engine.eval(compile(datatypemappings.toString()));
-		} catch (ScriptException e) {
-			logger.error("INVALID JAVA SCRIPT", e.getMessage());
+	/**
+	 * @param inv
+	 *            The already loaded script.
+	 */
+	DatamapInterpreter(IScriptBackend.Script inv) {
+		this.inv = inv;
+	}
+
+	// resolve the DATATYPEMAP and QUALIFIER functions of the group once, so the calls do no string work
+	private void prepare(MessageGroup messageGroup) {
+		for (MessageModel mm : messageGroup.getModels()) {
+			for (SemanticElement se : mm.getElementSet().getSemanticElements()) {
+				prepare(se.getMapToMdmi());
+				prepare(se.getMapFromMdmi());
+				SemanticElementRelationship qualifier = se.getRelationshipByName("QUALIFIER");
+				if (qualifier != null && !StringUtils.isEmpty(qualifier.getRule())) {
+					qualifiers.put(se, function("is" + se.getName()));
+				}
+			}
 		}
+		function("sourceCheckFilter");
+		function("targetCheckFilter");
+	}
 
-		inv = (Invocable) engine;
+	private void prepare(List<ConversionRule> conversionRules) {
+		for (ConversionRule conversionRule : conversionRules) {
+			if (conversionRule.getRule() != null && conversionRule.getRule().startsWith("DATATYPEMAP:")) {
+				rules.put(conversionRule, function(functionName(conversionRule.getRule())));
+			}
+		}
 	}
 
 	/**
-	 * @param code
-	 *            JavaScript source code to compile.
-	 * @return The compiled version of the code.
+	 * @return the function name of a 'DATATYPEMAP:function' rule
 	 */
-	private static String compile(String code) {
-		Compiler compiler = new Compiler();
+	static String functionName(String rule) {
+		String[] content = rule.split(":");
 
-		CompilerOptions options = new CompilerOptions();
-		// Advanced mode is used here, but additional options could be set, too.
-		CompilationLevel.ADVANCED_OPTIMIZATIONS.setOptionsForCompilationLevel(options);
+		if (content.length == 2) {
+			return content[1];
+		} else {
+			return "invalidfunctionmapping";
+		}
+	}
 
-		SourceFile sf;
-		sf = SourceFile.fromCode("mappings.js", code, SourceKind.STRONG);
-		ArrayList<SourceFile> inputFiles = new ArrayList<>();
-		inputFiles.add(sf);
+	private ScriptFunction function(String name) {
+		/*
+		 * @TODO Fix Editor Whitespace
+		 * Editor is adding on white space chars causing issues with method invocation
+		 */
+		return functions.computeIfAbsent(
+			name, n -> RuleFunctions.resolve(inv, source, n.replaceAll("\\s+", "")));
+	}
 
-		Result result = compiler.compile(new ArrayList<SourceFile>(), inputFiles, options);
+	/**
+	 * Run the DATATYPEMAP function of the conversion rule.
+	 */
+	public boolean execute(ConversionRule conversionRule, Object source, Object target, Properties properties) {
+		ScriptFunction function = rules.get(conversionRule);
+		if (function == null) {
+			function = function(functionName(conversionRule.getRule()));
+			rules.put(conversionRule, function);
+		}
+		try {
+			function.call(source, target, properties, conversionRule);
+			return true;
+		} catch (Exception e) {
+			String name = functionName(conversionRule.getRule());
+			exceptions.put(name, e);
+			logger.error("Failed executing function " + name + " := " + e.getMessage());
+			return false;
+		}
+	}
 
-		return compiler.toSource();
+	/**
+	 * Run the QUALIFIER function of the semantic element.
+	 */
+	Boolean qualify(SemanticElement semanticElement, Object target, Properties properties) {
+		ScriptFunction function = qualifiers.get(semanticElement);
+		if (function == null) {
+			function = function("is" + semanticElement.getName());
+			qualifiers.put(semanticElement, function);
+		}
+		try {
+			return (Boolean) function.call(target, properties);
+		} catch (Exception e) {
+			return failed("is" + semanticElement.getName(), e);
+		}
+	}
+
+	/**
+	 * Run the value set filter of the target values.
+	 */
+	Boolean targetCheckFilter(Object target, Properties properties) {
+		try {
+			return (Boolean) function("targetCheckFilter").call(target, properties);
+		} catch (Exception e) {
+			return failed("targetCheckFilter", e);
+		}
+	}
 
+	private Boolean failed(String function, Exception e) {
+		exceptions.put(function, e);
+		logger.error("Failed executing Executing " + function + " := " + e.getMessage());
+		logger.error(e.getMessage(), e);
+		return false;
 	}
 
 	public boolean execute(String function, Object source, Object target, Properties properties,
@@ -185,12 +283,8 @@ public class DatamapInterpreter {
 
 		// synchronized (inv) {
 		try {
-			/*
-			 * @TODO Fix Editor Whitespace
-			 * Editor is adding on white space chars causing issues with method invocation
-			 */
 			logger.trace("Executing Method " + function);
-			inv.invokeFunction(function.replaceAll("\\s+", ""), source, target, properties, conversionRule);
+			function(function).call(source, target, properties, conversionRule);
 
 			return true;
 			// compare(function, source, target);
@@ -208,7 +302,7 @@ public class DatamapInterpreter {
 		// synchronized (inv) {
 		try {
 			logger.trace("Executing Method " + function);
-			return (Boolean) inv.invokeFunction(function.replaceAll("\\s+", ""), target, properties);
+			return (Boolean) function(function).call(target, properties);
 		} catch (Exception e) {
 			exceptions.put(function, e);
 			logger.error("Failed executing Executing " + function + " := " + e.getMessage());
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.mdmi.MessageGroup;
+import org.mdmi.core.MdmiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of the datatype map interpreters of one map. A script context must not be used by two threads at once, so each
+ * transfer borrows its own interpreter and returns it when done.
+ *
+ * Interpreters are created on demand, up to 'mdmi.datamap.pool.size' (defaults to the number of processors). When all
+ * of them are in use, borrow waits for one to be released, up to 'mdmi.datamap.pool.wait.ms' (defaults to 30000).
+ *
+ * The pool is held by its message group, as an adapter, so a map that was reloaded keeps its pool for the transfers
+ * still running on it, and the pool goes away with the map.
+ */
+final class DatamapInterpreterPool extends AdapterImpl {
+
+	private static Logger logger = LoggerFactory.getLogger(DatamapInterpreterPool.class);
+
+	public static final String PARAM_POOL_SIZE = "mdmi.datamap.pool.size";
+
+	public static final String PARAM_POOL_WAIT = "mdmi.datamap.pool.wait.ms";
+
+	private final Supplier<DatamapInterpreter> factory;
+
+	private final ConcurrentLinkedQueue<DatamapInterpreter> idle = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger created = new AtomicInteger();
+
+	private final int size;
+
+	/** One permit for each interpreter not borrowed, created or not */
+	private final Semaphore permits;
+
+	private final long wait;
+
+	DatamapInterpreterPool(Supplier<DatamapInterpreter> factory) {
+		this.factory = factory;
+		this.size = Math.max(1, intProperty(PARAM_POOL_SIZE, Runtime.getRuntime().availableProcessors()));
+		this.permits = new Semaphore(size);
+		this.wait = Math.max(0, intProperty(PARAM_POOL_WAIT, 30000));
+	}
+
+	/**
+	 * @param factory
+	 *            Creates the interpreters of the group, used if the group has no pool yet.
+	 * @return the pool of the message group
+	 */
+	static DatamapInterpreterPool of(MessageGroup messageGroup, Supplier<DatamapInterpreter> factory) {
+		synchronized (messageGroup) {
+			DatamapInterpreterPool pool = (DatamapInterpreterPool) EcoreUtil.getExistingAdapter(
+				messageGroup, DatamapInterpreterPool.class);
+			if (pool == null) {
+				pool = new DatamapInterpreterPool(factory);
+				messageGroup.eAdapters().add(pool);
+			}
+			return pool;
+		}
+	}
+
+	@Override
+	public boolean isAdapterForType(Object type) {
+		return type == DatamapInterpreterPool.class;
+	}
+
+	/**
+	 * Borrow an interpreter; it must be given back with {@link #release(DatamapInterpreter)}.
+	 *
+	 * @return an interpreter used by no other thread
+	 * @throws MdmiException
+	 *             if no interpreter was released in time
+	 */
+	DatamapInterpreter borrow() {
+		try {
+			if (!permits.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+				throw new MdmiException(
+					"All the " + size + " datatype map interpreters of " + name() + " stayed in use for " + wait +
+							" ms, see " + PARAM_POOL_SIZE + " and " + PARAM_POOL_WAIT);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new MdmiException("Interrupted waiting for a datatype map interpreter of " + name());
+		}
+		DatamapInterpreter interpreter = idle.poll();
+		if (interpreter != null) {
+			interpreter.exceptions.clear();
+			return interpreter;
+		}
+		try {
+			logger.debug("Creating datatype map interpreter " + created.incrementAndGet() + " of " + size);
+			return factory.get();
+		} catch (RuntimeException ex) {
+			created.decrementAndGet();
+			permits.release();
+			throw ex;
+		}
+	}
+
+	/**
+	 * @param interpreter
+	 *            An interpreter obtained from {@link #borrow()}, may be null.
+	 */
+	void release(DatamapInterpreter interpreter) {
+		if (interpreter != null) {
+			idle.offer(interpreter);
+			permits.release();
+		}
+	}
+
+	private String name() {
+		return getTarget() instanceof MessageGroup
+				? ((MessageGroup) getTarget()).getName()
+				: "the map";
+	}
+
+	private static int intProperty(String name, int defaultValue) {
+		String value = System.getProperty(name);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException ex) {
+				logger.warn("Invalid " + name + " " + value + ", using " + defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+} // DatamapInterpreterPool
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.script.ScriptException;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+
+/**
+ * Script backend on GraalJS.
+ *
+ * Each script gets one polyglot Engine, shared by all the contexts that run it, so the script is parsed and compiled
+ * once. Each load evaluates the script in a context of its own, used by one thread at a time. The contexts run with
+ * Nashorn compatibility on, for the load("nashorn:mozilla_compat.js") and importPackage of the generated scripts.
+ *
+ * The context of a loaded script is closed once it is no longer reachable, when the interpreter holding it is dropped,
+ * and the engine once no loaded script uses it.
+ */
+final class GraalScriptBackend implements IScriptBackend {
+
+	static final String NAME = "graal";
+
+	/** The engine and source of a script, shared by all its contexts */
+	private static final class Compiled {
+		final Engine engine;
+
+		final Source source;
+
+		/** The loaded scripts using the engine, guarded by the scripts map */
+		int users;
+
+		Compiled(Engine engine, Source source) {
+			this.engine = engine;
+			this.source = source;
+		}
+	}
+
+	private final Map<String, Compiled> scripts = new ConcurrentHashMap<>();
+
+	/**
+	 * @return true if the GraalJS polyglot API is on the class path
+	 */
+	static boolean isAvailable() {
+		try {
+			Class.forName("org.graalvm.polyglot.Context", false, GraalScriptBackend.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public Script load(String key, String script) throws ScriptException {
+		Compiled compiled = scripts.compute(key, (k, current) -> {
+			Compiled c = current != null
+					? current
+					: new Compiled(
+						Engine.newBuilder().option("engine.WarnInterpreterOnly", "false").build(),
+						Source.newBuilder("js", script, k + ".js").cached(true).buildLiteral());
+			c.users++;
+			return c;
+		});
+		Context context;
+		try {
+			context = Context.newBuilder("js").engine(compiled.engine).allowHostAccess(
+				HostAccess.ALL).allowHostClassLookup(className -> true).allowExperimentalOptions(true).option(
+					"js.nashorn-compat", "true").build();
+		} catch (RuntimeException e) {
+			release(key, compiled, null);
+			throw e;
+		}
+		ContextScript loaded = new ContextScript(context);
+		ScriptCache.cleaner.register(loaded, () -> release(key, compiled, context));
+		try {
+			context.eval(compiled.source);
+		} catch (PolyglotException e) {
+			throw new EvalException(e.getMessage(), loaded);
+		}
+		return loaded;
+	}
+
+	// close the context of a loaded script that is no longer used, and the engine if it was the last one on it
+	private void release(String key, Compiled compiled, Context context) {
+		if (context != null) {
+			try {
+				context.close();
+			} catch (IllegalStateException e) {
+				// still running, closed with the engine
+			}
+		}
+		boolean[] unused = new boolean[1];
+		scripts.computeIfPresent(key, (k, current) -> {
+			if (current == compiled && --current.users == 0) {
+				unused[0] = true;
+				return null;
+			}
+			return current;
+		});
+		if (unused[0]) {
+			compiled.engine.close();
+		}
+	}
+
+	private static Object invoke(Value function, String name, Object[] args)
+			throws ScriptException, NoSuchMethodException {
+		if (function == null || !function.canExecute()) {
+			throw new NoSuchMethodException(name);
+		}
+		try {
+			Value result = function.execute(args);
+			if (result.isNull()) {
+				return null;
+			}
+			return result.isHostObject()
+					? result.asHostObject()
+					: result.as(Object.class);
+		} catch (PolyglotException e) {
+			throw new ScriptException(e.getMessage());
+		}
+	}
+
+	/**
+	 * The functions of a script, in its context.
+	 */
+	private static final class ContextScript implements Script {
+
+		private final Context context;
+
+		private final Value bindings;
+
+		ContextScript(Context context) {
+			this.context = context;
+			this.bindings = context.getBindings("js");
+		}
+
+		private Value get(String name) {
+			return bindings.hasMember(name)
+					? bindings.getMember(name)
+					: null;
+		}
+
+		@Override
+		public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
+			return invoke(get(name), name, args);
+		}
+
+		@Override
+		public Object invokeMethod(Object thiz, String name, Object... args)
+				throws ScriptException, NoSuchMethodException {
+			return invoke(context.asValue(thiz).getMember(name), name, args);
+		}
+
+		@Override
+		public ScriptFunction getFunction(String name) {
+			Value function = get(name);
+			return args -> invoke(function, name, args);
+		}
+	}
+
+} // GraalScriptBackend
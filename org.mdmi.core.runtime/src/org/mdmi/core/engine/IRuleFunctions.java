@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine;
+
+import java.util.Map;
+
+import org.mdmi.core.engine.IScriptBackend.ScriptFunction;
+
+/**
+ * Java implementations of map rule functions, found with java.util.ServiceLoader.
+ *
+ * Each implementation stands for a given script function. Unless 'mdmi.rulefunctions.java' is false, a map whose script
+ * defines that function, with the same source, has it called in Java instead of in the script engine. The arguments
+ * are the ones of the script function: (source, target, properties, conversionRule) for a DATATYPEMAP, (value) for a
+ * computed value, and so on. Other functions, and the ones a map defines differently, still run in the script.
+ *
+ * @author seanmuir
+ *
+ */
+public interface IRuleFunctions {
+
+	/**
+	 * @return the functions, by rule function name
+	 */
+	Map<String, ScriptFunction> getFunctions();
+
+	/**
+	 * @param name
+	 *            The name of one of the functions.
+	 * @return the script function the Java implementation does the same as, white space aside
+	 */
+	String getScript(String name);
+
+}
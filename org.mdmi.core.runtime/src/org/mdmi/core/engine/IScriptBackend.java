@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine;
+
+import java.lang.reflect.Proxy;
+
+import javax.script.Invocable;
+import javax.script.ScriptException;
+
+/**
+ * Runs the scripts of the datatype maps and semantic rollups.
+ *
+ * The backend is selected with 'mdmi.script.backend': 'jsr223' (javax.script), 'graal' (GraalJS polyglot) or the
+ * class name of an implementation with a public no argument constructor. By default jsr223 is used when a JavaScript
+ * script engine is installed, graal otherwise.
+ *
+ * @author seanmuir
+ *
+ */
+public interface IScriptBackend {
+
+	/**
+	 * @return the name of the backend, for logging
+	 */
+	String getName();
+
+	/**
+	 * Load a script, evaluated in a context of its own. The same key is always given with the same script, so whatever
+	 * is derived from the script can be cached by key, shared by the contexts, and released once no script loaded with
+	 * the key is reachable.
+	 *
+	 * The returned script is not thread safe: it is used by one thread at a time, as the interpreter pools lend each
+	 * interpreter to a single transfer.
+	 *
+	 * @param key
+	 *            The content hash of the script.
+	 * @param script
+	 *            The script, already compiled by Closure.
+	 * @return the loaded script
+	 * @throws EvalException
+	 *             if the script does not evaluate, the exception holds the script with what it defined before the error
+	 * @throws ScriptException
+	 *             if no context can be created for the script
+	 */
+	Script load(String key, String script) throws ScriptException;
+
+	/**
+	 * Thrown when a script does not evaluate. As with a javax.script engine, the functions the script defined before
+	 * the error can still be called.
+	 */
+	class EvalException extends ScriptException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Script script;
+
+		public EvalException(String message, Script script) {
+			super(message);
+			this.script = script;
+		}
+
+		/**
+		 * @return the script, with what it defined before the error
+		 */
+		public Script getScript() {
+			return script;
+		}
+	}
+
+	/**
+	 * A loaded script.
+	 */
+	interface Script extends Invocable {
+
+		/**
+		 * Resolve a function of the script. The handle does no lookup by name once it was called.
+		 *
+		 * @param name
+		 *            The function name.
+		 * @return the handle on the function
+		 */
+		ScriptFunction getFunction(String name);
+
+		@Override
+		default <T> T getInterface(Class<T> clasz) {
+			return getInterface(null, clasz);
+		}
+
+		/**
+		 * The methods of the interface call the functions of the same name, of the script or of the given object.
+		 */
+		@Override
+		default <T> T getInterface(Object thiz, Class<T> clasz) {
+			if (clasz == null || !clasz.isInterface()) {
+				throw new IllegalArgumentException("interface Class expected");
+			}
+			Class<?>[] interfaces = { clasz };
+			return clasz.cast(Proxy.newProxyInstance(clasz.getClassLoader(), interfaces, (proxy, method, args) -> {
+				if (method.getDeclaringClass() == Object.class) {
+					switch (method.getName()) {
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						default:
+							return "Script " + clasz.getName();
+					}
+				}
+				Object[] arguments = args != null
+						? args
+						: new Object[0];
+				return thiz == null
+						? invokeFunction(method.getName(), arguments)
+						: invokeMethod(thiz, method.getName(), arguments);
+			}));
+		}
+	}
+
+	/**
+	 * A function of a loaded script.
+	 */
+	@FunctionalInterface
+	interface ScriptFunction {
+
+		Object call(Object... args) throws ScriptException, NoSuchMethodException;
+	}
+
+}
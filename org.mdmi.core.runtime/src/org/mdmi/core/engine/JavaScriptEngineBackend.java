@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+/**
+ * Script backend on the javax.script 'JavaScript' engine (Nashorn).
+ *
+ * When the engine is Compilable the scripts are compiled once on a shared engine, and each load evaluates the script
+ * in a script context of its own; functions are called through small precompiled call scripts, Invocable only works on
+ * the default context of an engine. Otherwise each load gets its own engine. A compiled script is dropped once no
+ * script loaded from it is reachable, when the interpreters of a replaced map are dropped.
+ */
+final class JavaScriptEngineBackend implements IScriptBackend {
+
+	static final String NAME = "jsr223";
+
+	private static final String[] ARGUMENTS = { "__mdmi_0", "__mdmi_1", "__mdmi_2", "__mdmi_3", "__mdmi_4", "__mdmi_5" };
+
+	private final ScriptEngine sharedEngine;
+
+	private final Map<String, Compiled> scripts = new ConcurrentHashMap<>();
+
+	/** A script compiled on the shared engine */
+	private static final class Compiled {
+		final CompiledScript script;
+
+		/** The loaded scripts using it, guarded by the scripts map */
+		int users;
+
+		Compiled(CompiledScript script) {
+			this.script = script;
+		}
+	}
+
+	private final CompiledScript[] invokers;
+
+	JavaScriptEngineBackend() throws ScriptException {
+		sharedEngine = newEngine();
+		if (sharedEngine instanceof Compilable) {
+			invokers = new CompiledScript[ARGUMENTS.length + 1];
+			for (int i = 0; i < invokers.length; i++) {
+				// calls __mdmi_name on __mdmi_this (the global object if null) with i arguments
+				StringBuilder sb = new StringBuilder("(__mdmi_this == null ? this : __mdmi_this)[__mdmi_name](");
+				for (int j = 0; j < i; j++) {
+					sb.append(j > 0
+							? ", "
+							: "").append(ARGUMENTS[j]);
+				}
+				invokers[i] = ((Compilable) sharedEngine).compile(sb.append(")").toString());
+			}
+		} else {
+			invokers = null;
+		}
+	}
+
+	/**
+	 * @return true if a JavaScript script engine is installed
+	 */
+	static boolean isAvailable() {
+		return new ScriptEngineManager().getEngineByName("JavaScript") != null;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public Script load(String key, String script) throws ScriptException {
+		if (invokers == null) {
+			ScriptEngine own = newEngine();
+			EngineScript loaded = new EngineScript((Invocable) own);
+			try {
+				own.eval(script);
+			} catch (ScriptException e) {
+				throw new EvalException(e.getMessage(), loaded);
+			}
+			return loaded;
+		}
+
+		Compiled cached = scripts.get(key);
+		CompiledScript compiled;
+		try {
+			compiled = cached != null
+					? cached.script
+					: ((Compilable) sharedEngine).compile(script);
+		} catch (ScriptException e) {
+			// nothing is defined by a script that does not compile
+			throw new EvalException(e.getMessage(), new CompiledInvocable(newContext()));
+		}
+		Compiled shared = scripts.compute(key, (k, current) -> {
+			Compiled c = current != null
+					? current
+					: new Compiled(compiled);
+			c.users++;
+			return c;
+		});
+		CompiledInvocable loaded = new CompiledInvocable(newContext());
+		ScriptCache.cleaner.register(loaded, () -> release(key, shared));
+		try {
+			shared.script.eval(loaded.context);
+		} catch (ScriptException e) {
+			throw new EvalException(e.getMessage(), loaded);
+		}
+		return loaded;
+	}
+
+	private ScriptContext newContext() {
+		ScriptContext context = new SimpleScriptContext();
+		context.setBindings(sharedEngine.createBindings(), ScriptContext.ENGINE_SCOPE);
+		return context;
+	}
+
+	// drop the compiled script once no loaded script uses it
+	private void release(String key, Compiled compiled) {
+		scripts.computeIfPresent(
+			key, (k, current) -> current == compiled && --current.users == 0
+					? null
+					: current);
+	}
+
+	// a call of the named function with the given number of arguments
+	private CompiledScript compileCall(String name, int arity) throws ScriptException {
+		if (arity > ARGUMENTS.length) {
+			throw new ScriptException("Too many arguments calling " + name);
+		}
+		StringBuilder sb = new StringBuilder(name).append('(');
+		for (int j = 0; j < arity; j++) {
+			sb.append(j > 0
+					? ", "
+					: "").append(ARGUMENTS[j]);
+		}
+		return ((Compilable) sharedEngine).compile(sb.append(')').toString());
+	}
+
+	private static ScriptEngine newEngine() {
+		ScriptEngine engine = new ScriptEngineManager().getEngineByName("JavaScript");
+		if (engine == null) {
+			throw new RuntimeException("Unable to Load Script");
+		}
+		return engine;
+	}
+
+	/**
+	 * A shared compiled script, evaluated in a script context of its own.
+	 */
+	private final class CompiledInvocable implements Script {
+
+		private final ScriptContext context;
+
+		CompiledInvocable(ScriptContext context) {
+			this.context = context;
+		}
+
+		@Override
+		public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
+			return invoke(null, name, args);
+		}
+
+		@Override
+		public Object invokeMethod(Object thiz, String name, Object... args)
+				throws ScriptException, NoSuchMethodException {
+			return invoke(thiz, name, args);
+		}
+
+		private Object invoke(Object thiz, String name, Object[] args) throws ScriptException {
+			if (args.length >= invokers.length) {
+				throw new ScriptException("Too many arguments calling " + name);
+			}
+			Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+			bindings.put("__mdmi_this", thiz);
+			bindings.put("__mdmi_name", name);
+			for (int i = 0; i < args.length; i++) {
+				bindings.put(ARGUMENTS[i], args[i]);
+			}
+			return invokers[args.length].eval(context);
+		}
+
+		@Override
+		public ScriptFunction getFunction(String name) {
+			// the call scripts are compiled on first use, one per number of arguments
+			CompiledScript[] calls = new CompiledScript[ARGUMENTS.length + 1];
+			return args -> {
+				if (args.length >= calls.length) {
+					throw new ScriptException("Too many arguments calling " + name);
+				}
+				CompiledScript call = calls[args.length];
+				if (call == null) {
+					call = compileCall(name, args.length);
+					calls[args.length] = call;
+				}
+				Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+				for (int i = 0; i < args.length; i++) {
+					bindings.put(ARGUMENTS[i], args[i]);
+				}
+				return call.eval(context);
+			};
+		}
+	}
+
+	/**
+	 * A script evaluated in its own engine, functions are called by name.
+	 */
+	private static final class EngineScript implements Script {
+
+		private final Invocable inv;
+
+		EngineScript(Invocable inv) {
+			this.inv = inv;
+		}
+
+		@Override
+		public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
+			return inv.invokeFunction(name, args);
+		}
+
+		@Override
+		public Object invokeMethod(Object thiz, String name, Object... args)
+				throws ScriptException, NoSuchMethodException {
+			return inv.invokeMethod(thiz, name, args);
+		}
+
+		@Override
+		public ScriptFunction getFunction(String name) {
+			return args -> inv.invokeFunction(name, args);
+		}
+
+		@Override
+		public <T> T getInterface(Class<T> clasz) {
+			return inv.getInterface(clasz);
+		}
+
+		@Override
+		public <T> T getInterface(Object thiz, Class<T> clasz) {
+			return inv.getInterface(thiz, clasz);
+		}
+	}
+
+} // JavaScriptEngineBackend
@@ -45,31 +45,34 @@ public final class MdmiEngine {
 		return m_owner;
 	}
 
-	ISyntaxNode sourceSyntaxModel;
-
 	/**
-	 * @return the sourceSyntaxModel
+	 * The syntax models were read after the unit of work was cleaned, this always returned null; the engine is shared
+	 * by all the threads and does not keep them.
+	 *
+	 * @return null
+	 * @deprecated use MdmiUow.getSrcSyntaxModel() of the unit of work that executed the transfer
 	 */
+	@Deprecated
 	public ISyntaxNode getSourceSyntaxModel() {
-		return sourceSyntaxModel;
+		return null;
 	}
 
 	/**
-	 * @return the targetSyntaxModel
+	 * The syntax models were read after the unit of work was cleaned, this always returned null; the engine is shared
+	 * by all the threads and does not keep them.
+	 *
+	 * @return null
+	 * @deprecated use MdmiUow.getTrgSyntaxModel() of the unit of work that executed the transfer
 	 */
+	@Deprecated
 	public ISyntaxNode getTargetSyntaxModel() {
-		return targetSyntaxModel;
+		return null;
 	}
 
-	ISyntaxNode targetSyntaxModel;
-
 	public void executeTransfer(MdmiTransferInfo transferInfo) {
 		MdmiUow uow = new MdmiUow(this, transferInfo);
 		uow.run();
 		uow.clean();
-		sourceSyntaxModel = uow.getSrcSyntaxModel();
-		targetSyntaxModel = uow.getTrgSyntaxModel();
-
 	}
 
 	/**
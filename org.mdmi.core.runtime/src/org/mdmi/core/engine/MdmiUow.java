@@ -24,12 +24,12 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
-import org.eclipse.emf.common.util.EList;
 import org.mdmi.Bag;
 import org.mdmi.ConversionRule;
 import org.mdmi.DTCStructured;
@@ -53,7 +53,8 @@ import org.mdmi.core.MdmiMessage;
 import org.mdmi.core.MdmiModelRef;
 import org.mdmi.core.MdmiResolver;
 import org.mdmi.core.MdmiTransferInfo;
-import org.mdmi.core.engine.javascript.Utils;
+import org.mdmi.core.engine.javascript.CodeMaps;
+import org.mdmi.core.engine.terminology.FHIRTerminologyTransform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -109,6 +110,14 @@ public class MdmiUow implements Runnable {
 
 	ElementValueSet trgSemanticModel;
 
+	/**
+	 * If false, the conversion plan of the source and target models is built for each transfer instead of being kept.
+	 */
+	public static final String PARAM_PLANS = "mdmi.conversion.plans";
+
+	/** The ids of the business elements to transfer, built once for the transfer */
+	private Set<String> targetElementIds;
+
 	/**
 	 * serializeSemanticModel is temporary approach to suppress serialize semantic model within web container
 	 *
@@ -355,14 +364,14 @@ public class MdmiUow implements Runnable {
 	}
 
 	boolean hasTarget(MDMIBusinessElementReference e) {
+		return getTargetElementIds().contains(e.getUniqueIdentifier());
+	}
 
-		for (MDMIBusinessElementReference mber : transferInfo.targetElements) {
-			if (mber.getUniqueIdentifier().equals(e.getUniqueIdentifier())) {
-				return true;
-			}
+	private Set<String> getTargetElementIds() {
+		if (targetElementIds == null) {
+			targetElementIds = ConversionPlan.getTargetElementIds(transferInfo.targetElements);
 		}
-
-		return false;
+		return targetElementIds;
 	}
 
 	void findTargetSemanticElements() {
@@ -403,7 +412,7 @@ public class MdmiUow implements Runnable {
 	 * Else reverse mappings might not work
 	 */
 
-	private boolean isManyToOneGlobals(MessageGroup sourceMessageGroup, MessageGroup targetMessageGroup) {
+	static boolean isManyToOneGlobals(MessageGroup sourceMessageGroup, MessageGroup targetMessageGroup) {
 
 		// this.transferInfo
 		if (sourceMessageGroup.getName().toUpperCase().startsWith("FHIR") &&
@@ -414,19 +423,34 @@ public class MdmiUow implements Runnable {
 	}
 
 	void processConversions() {
+		ConversionImpl impl = new ConversionImpl();
+		try {
+			processConversions(impl);
+		} finally {
+			impl.releaseDI();
+		}
+	}
+
+	private void processConversions(ConversionImpl impl) {
 
 		StopWatch watch = new StopWatch();
 		watch.start();
 
 		// 3. execute the data conversions
 
+		ConversionPlan plan = ConversionPlan.get(transferInfo.sourceModel.getModel(), transferInfo.targetModel.getModel());
+		Set<String> targetElementIds = getTargetElementIds();
+
+		watch.split();
+		logger.trace("plan : " + watch.toSplitString());
+
 		Set<IElementValue> whattotransfer = new LinkedHashSet<>();
 		HashMap<String, MDMIBusinessElementReference> matches = new HashMap<>();
 		for (IElementValue iev : srcSemanticModel.getAllElementValues()) {
 			logger.trace("Source Semantic Element " + iev.getSemanticElement().getName());
 			boolean isMatched = false;
 			for (ConversionRule tme : iev.getSemanticElement().getMapToMdmi()) {
-				if (hasTarget(tme.getBusinessElement())) {
+				if (targetElementIds.contains(tme.getBusinessElement().getUniqueIdentifier())) {
 					logger.debug("Matching Busines Element " + tme.getBusinessElement().getName());
 					whattotransfer.add(iev);
 					matches.put(tme.getBusinessElement().getUniqueIdentifier(), tme.getBusinessElement());
@@ -442,7 +466,7 @@ public class MdmiUow implements Runnable {
 					SemanticElement targetSemanticParent = targetSemanticRelationship.getRelatedSemanticElement();
 					if (targetSemanticParent != null) {
 						for (ConversionRule tme : targetSemanticParent.getMapToMdmi()) {
-							if (hasTarget(tme.getBusinessElement())) {
+							if (targetElementIds.contains(tme.getBusinessElement().getUniqueIdentifier())) {
 								logger.trace("Matching SINGLE Busines Element " + tme.getBusinessElement().getName());
 								whattotransfer.add(iev);
 								matches.put(tme.getBusinessElement().getUniqueIdentifier(), tme.getBusinessElement());
@@ -458,42 +482,23 @@ public class MdmiUow implements Runnable {
 		watch.split();
 		logger.trace("match : " + watch.toSplitString());
 
-		ConversionImpl impl = new ConversionImpl();
-
 		impl.initializeDI(
-			transferInfo.sourceModel.getGroup(), transferInfo.targetModel.getGroup(), transferInfo.sourceProperties,
-			transferInfo.targetProperties);
+			transferInfo.getMaps(), transferInfo.sourceModel.getGroup(), transferInfo.targetModel.getGroup(),
+			transferInfo.sourceProperties, transferInfo.targetProperties);
 
 		watch.split();
 		logger.trace("impl.initializeDI " + watch.getTime());
 
+		// the codes of the converted values are translated together once they are all known
+		boolean batchTerminology = FHIRTerminologyTransform.processTerminology &&
+				FHIRTerminologyTransform.batchTerminology;
+		if (batchTerminology) {
+			impl.deferConversions();
+		}
+
 		HashMap<IElementValue, ArrayList<IElementValue>> sourcetotarget = new HashMap<>();
 		HashMap<IElementValue, IElementValue> targettosource = new HashMap<>();
 
-		boolean skipContainmentCheck = "SKIPCONTAINMENT".equals(transferInfo.targetModel.getGroup().getDescription());
-
-		EList<SemanticElement> l = transferInfo.targetModel.getModel().getElementSet().getSemanticElements();
-
-		HashMap<String, ArrayList<SemanticElement>> targetSementicElementsByBER = new HashMap<>();
-
-		for (SemanticElement targetSementicElement : l) {
-			if (!targetSementicElement.isMultipleInstances()) {
-				continue;
-			}
-			for (ConversionRule tme : targetSementicElement.getMapFromMdmi()) {
-				if (tme.getBusinessElement() != null) {
-					if (!targetSementicElementsByBER.containsKey(tme.getBusinessElement().getUniqueIdentifier())) {
-						targetSementicElementsByBER.put(
-							tme.getBusinessElement().getUniqueIdentifier(), new ArrayList<SemanticElement>());
-
-					}
-					targetSementicElementsByBER.get(tme.getBusinessElement().getUniqueIdentifier()).add(
-						targetSementicElement);
-				}
-			}
-
-		}
-
 		HashMap<String, Boolean> filtered = new HashMap<>();
 		for (IElementValue sourceElementValue : whattotransfer) {
 
@@ -501,13 +506,12 @@ public class MdmiUow implements Runnable {
 
 			for (ConversionRule tme : sourceElementValue.getSemanticElement().getMapToMdmi()) {
 
-				if ((tme.getBusinessElement() == null) ||
-						!targetSementicElementsByBER.containsKey(tme.getBusinessElement().getUniqueIdentifier())) {
+				if (tme.getBusinessElement() == null) {
 					continue;
 				}
 
 				// Create list of target semantic elements based on the source RI
-				for (SemanticElement targetSementicElement : targetSementicElementsByBER.get(
+				for (SemanticElement targetSementicElement : plan.getTargets(
 					tme.getBusinessElement().getUniqueIdentifier())) {
 
 					if (sourceFilter) {
@@ -554,27 +558,7 @@ public class MdmiUow implements Runnable {
 							continue;
 						}
 						logger.trace("CREATE CORRESPONDNG ELEMENT " + targetSementicElement.getName());
-						Stack<SemanticElement> mappedParentStack = new Stack<>();
-						getMappedStack(targetSementicElement, mappedParentStack);
-
-						boolean wholeStackMapped = true;
-
-						if (!skipContainmentCheck) {
-							while (!mappedParentStack.isEmpty()) {
-								SemanticElement mp1 = mappedParentStack.pop();
-								boolean isMP1Mapped = false;
-								for (ConversionRule lll : mp1.getMapFromMdmi()) {
-									if (matches.containsKey(lll.getBusinessElement().getUniqueIdentifier())) {
-										isMP1Mapped = true;
-										break;
-									}
-								}
-								wholeStackMapped = isMP1Mapped;
-								if (!wholeStackMapped) {
-									break;
-								}
-							}
-						}
+						boolean wholeStackMapped = plan.isContainmentEstablished(targetSementicElement, matches);
 
 						if (wholeStackMapped) {
 							logger.trace("CREATING TARGET ELEMENT " + targetSementicElement.getName());
@@ -634,13 +618,7 @@ public class MdmiUow implements Runnable {
 		watch.split();
 		logger.trace("what to transfer : " + watch.toSplitString());
 
-		ArrayList<SemanticElement> singles = new ArrayList<>();
-
-		for (SemanticElement semanticElement : transferInfo.targetModel.getModel().getElementSet().getSemanticElements()) {
-			if (!semanticElement.isMultipleInstances()) {
-				singles.add(semanticElement);
-			}
-		}
+		SemanticElement[] singles = plan.singles;
 
 		if (logger.isTraceEnabled()) {
 			for (SemanticElement s : singles) {
@@ -654,17 +632,9 @@ public class MdmiUow implements Runnable {
 		 * If the single parent has content - populate the appropriate single instances per container
 		 *
 		 */
-		for (SemanticElement single : singles) {
-
-			SemanticElement theSingleParent = single.getParent();
-			while (theSingleParent != null) {
-				if (theSingleParent.getSemanticElementType().equals(SemanticElementType.NORMAL)) {
-					break;
-				} else {
-					theSingleParent = theSingleParent.getParent();
-				}
-
-			}
+		for (int s = 0; s < singles.length; s++) {
+			SemanticElement single = singles[s];
+			SemanticElement theSingleParent = plan.singleParents[s];
 
 			if (theSingleParent != null) {
 
@@ -701,10 +671,7 @@ public class MdmiUow implements Runnable {
 											elementValue.getSemanticElement());
 
 								// If isManyToOneGlobals - populate target only when it source is also global
-								if (isManyToOneGlobals(
-									this.transferInfo.getSourceMessageGroup(),
-									this.transferInfo.getTargetMessageGroup()) &&
-										elementValue.getSemanticElement().isMultipleInstances()) {
+								if (plan.manyToOneGlobals && elementValue.getSemanticElement().isMultipleInstances()) {
 									continue;
 								}
 
@@ -741,6 +708,12 @@ public class MdmiUow implements Runnable {
 
 		watch.split();
 		logger.trace("singles : " + watch.toSplitString());
+
+		if (batchTerminology) {
+			impl.completeConversions();
+			watch.split();
+			logger.trace("batch terminology : " + watch.toSplitString());
+		}
 		/*
 		 * Loop over and set semantic containers
 		 */
@@ -830,7 +803,7 @@ public class MdmiUow implements Runnable {
 						for (IElementValue child : targetElementValue.getChildren()) {
 							if (child.getSemanticElement().getName().equals(
 								ser.getRelatedSemanticElement().getName())) {
-								String qualifierFunction = "is" + se.getName();
+								boolean valueSetFilter = false;
 								impl.targetProperties.remove("VALUESET");
 								hasFilterTarget = true;
 								/*
@@ -838,10 +811,10 @@ public class MdmiUow implements Runnable {
 								 */
 								if (!StringUtils.isEmpty(ser.getDescription())) {
 
-									if (Utils.mapOfTransforms.containsKey(ser.getDescription())) {
-										qualifierFunction = "targetCheckFilter";
-										impl.targetProperties.put(
-											"VALUESET", Utils.mapOfTransforms.get(ser.getDescription()));
+									Map<String, String> valueSet = CodeMaps.get(ser.getDescription());
+									if (valueSet != null) {
+										valueSetFilter = true;
+										impl.targetProperties.put("VALUESET", valueSet);
 									} else {
 										impl.targetProperties.put("VALUESET", Collections.EMPTY_SET);
 									}
@@ -849,8 +822,9 @@ public class MdmiUow implements Runnable {
 								} else {
 									impl.targetProperties.put("VALUESET", Collections.EMPTY_SET);
 								}
-								if (!impl.targetDatamapInterpreter.execute(
-									qualifierFunction, child, impl.targetProperties)) {
+								if (!(valueSetFilter
+										? impl.targetDatamapInterpreter.targetCheckFilter(child, impl.targetProperties)
+										: impl.targetDatamapInterpreter.qualify(se, child, impl.targetProperties))) {
 									tobedeleted.add(targetElementValue);
 									tobedeleted.addAll(targetElementValue.getChildren());
 								}
@@ -866,8 +840,7 @@ public class MdmiUow implements Runnable {
 							for (IElementValue child : targetElementValue.getParent().getChildren()) {
 								if (child.getSemanticElement().getName().equals(
 									ser.getRelatedSemanticElement().getName())) {
-									if (!impl.targetDatamapInterpreter.execute(
-										"is" + se.getName(), child, impl.targetProperties)) {
+									if (!impl.targetDatamapInterpreter.qualify(se, child, impl.targetProperties)) {
 										tobedeleted.add(targetElementValue);
 									}
 
@@ -943,7 +916,8 @@ public class MdmiUow implements Runnable {
 			return false;
 		}
 
-		if (Utils.mapOfTransforms.containsKey(ser.getDescription())) {
+		Map<String, String> valueSet = CodeMaps.get(ser.getDescription());
+		if (valueSet != null) {
 
 			XValue xvalue = (XValue) sourceFilterValue.getXValue();
 
@@ -951,7 +925,7 @@ public class MdmiUow implements Runnable {
 
 			XDataStruct xvalue3 = (XDataStruct) xvalue2.getValue("code");
 
-			return Utils.mapOfTransforms.get(ser.getDescription()).containsKey(xvalue3.getValue("value"));
+			return valueSet.containsKey(xvalue3.getValue("value"));
 
 		}
 
@@ -959,9 +933,9 @@ public class MdmiUow implements Runnable {
 		//
 		// Properties theProperties = new Properties();
 		// if (!StringUtils.isEmpty(ser.getDescription())) {
-		// if (Utils.mapOfTransforms.containsKey(ser.getDescription())) {
+		// if (CodeMaps.get(ser.getDescription()) != null) {
 		// qualifierFunction = "sourceCheckFilter";
-		// theProperties.put("VALUESET", Utils.mapOfTransforms.get(ser.getDescription()));
+		// theProperties.put("VALUESET", CodeMaps.get(ser.getDescription()));
 		// } else {
 		// theProperties.put("VALUESET", Collections.EMPTY_SET);
 		// }
@@ -1088,7 +1062,8 @@ public class MdmiUow implements Runnable {
 
 		if (!messageGroup.getModels().isEmpty()) {
 			return resolver().getSyntacticParser(
-				messageGroup.getName(), messageGroup.getModels().get(0).getMessageModelName());
+				transferInfo.getMaps(), messageGroup.getName(),
+				messageGroup.getModels().get(0).getMessageModelName());
 		}
 		// for (MessageModel s : messageGroup.getModels()) {
 		// return resolver().getSyntacticParser(messageGroup.getName(), s.getMessageModelName());
@@ -1099,7 +1074,7 @@ public class MdmiUow implements Runnable {
 
 	private ISemanticParser getSemanticProvider(MessageGroup messageGroup) {
 		for (MessageModel s : messageGroup.getModels()) {
-			return resolver().getSemanticParser(messageGroup.getName(), s.getMessageModelName());
+			return resolver().getSemanticParser(transferInfo.getMaps(), messageGroup.getName(), s.getMessageModelName());
 		}
 		return null;
 
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.mdmi.core.engine.IScriptBackend.ScriptFunction;
+import org.mdmi.core.engine.javascript.BuiltinRuleFunctions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binds rule functions to their Java implementation, or to the script when there is none.
+ *
+ * The Java implementations are used unless 'mdmi.rulefunctions.java' is false. The built in functions are registered
+ * first, then the IRuleFunctions services, which can replace them. A function is bound to Java for a map only if the
+ * script of the map defines it once, with the source of the implementation, see {@link IRuleFunctions#getScript};
+ * or, whatever its name, if it only wraps a call of Utils.FormatDate or Utils.transform, see
+ * {@link BuiltinRuleFunctions#bind(String)}.
+ *
+ * The calls that still go to the script engine are counted by function name, see {@link #getScriptEngineCalls()}.
+ */
+public final class RuleFunctions {
+
+	private static Logger logger = LoggerFactory.getLogger(RuleFunctions.class);
+
+	public static final String PARAM_JAVA_FUNCTIONS = "mdmi.rulefunctions.java";
+
+	/** A Java implementation and the script function it replaces */
+	private static final class JavaFunction {
+		final ScriptFunction function;
+
+		final String script;
+
+		JavaFunction(ScriptFunction function, String script) {
+			this.function = function;
+			this.script = script;
+		}
+	}
+
+	private static volatile Map<String, JavaFunction> javaFunctions;
+
+	private static final Map<String, LongAdder> scriptCalls = new ConcurrentHashMap<>();
+
+	private RuleFunctions() {
+	}
+
+	/**
+	 * @param script
+	 *            The script of the map, used when there is no Java implementation.
+	 * @param source
+	 *            The source of the script, may be null.
+	 * @param name
+	 *            The function name.
+	 * @return the Java implementation of the function, or the script function
+	 */
+	static ScriptFunction resolve(IScriptBackend.Script script, String source, String name) {
+		String defined = source != null && isEnabled()
+				? functionSource(source, name)
+				: null;
+		if (defined != null) {
+			JavaFunction java = javaFunctions().get(name);
+			if (java != null && normalize(defined).equals(java.script)) {
+				logger.debug("Binding rule function " + name + " to Java");
+				return java.function;
+			}
+			ScriptFunction call = BuiltinRuleFunctions.bind(defined);
+			if (call != null) {
+				logger.debug("Binding rule function " + name + " to the Java call it wraps");
+				return call;
+			}
+			if (java != null) {
+				logger.debug("Not binding rule function " + name + " to Java, the map defines it differently");
+			}
+		}
+		ScriptFunction scriptFunction = script.getFunction(name);
+		LongAdder calls = scriptCalls.computeIfAbsent(name, n -> new LongAdder());
+		return args -> {
+			calls.increment();
+			return scriptFunction.call(args);
+		};
+	}
+
+	/**
+	 * @return the names of the functions bound to Java, besides those wrapping a call of Utils
+	 */
+	public static List<String> getJavaFunctions() {
+		if (!isEnabled()) {
+			return Collections.emptyList();
+		}
+		List<String> names = new ArrayList<>(javaFunctions().keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * @return the number of calls of each function that ran in the script engine, most called first
+	 */
+	public static Map<String, Long> getScriptEngineCalls() {
+		List<Map.Entry<String, Long>> entries = new ArrayList<>();
+		for (Map.Entry<String, LongAdder> entry : scriptCalls.entrySet()) {
+			entries.add(new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().sum()));
+		}
+		entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+		Map<String, Long> report = new LinkedHashMap<>();
+		for (Map.Entry<String, Long> entry : entries) {
+			report.put(entry.getKey(), entry.getValue());
+		}
+		return report;
+	}
+
+	/**
+	 * @return a printable report of the functions that ran in the script engine
+	 */
+	public static String report() {
+		StringBuilder sb = new StringBuilder("Rule functions run in the script engine:");
+		for (Map.Entry<String, Long> entry : getScriptEngineCalls().entrySet()) {
+			sb.append(System.lineSeparator()).append(String.format("%12d  %s", entry.getValue(), entry.getKey()));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the source of the function declared with the name, null if the script does not declare it exactly once
+	 */
+	static String functionSource(String source, String name) {
+		Matcher matcher = Pattern.compile("\\bfunction\\s+" + Pattern.quote(name) + "\\s*\\(").matcher(source);
+		if (!matcher.find()) {
+			return null;
+		}
+		int start = matcher.start();
+		int open = source.indexOf('{', matcher.end());
+		if (matcher.find()) {
+			return null;
+		}
+		int depth = 0;
+		for (int i = open; i > -1 && i < source.length(); i++) {
+			char c = source.charAt(i);
+			if (c == '"' || c == '\'') {
+				// skip the string literal
+				for (i++; i < source.length() && source.charAt(i) != c; i++) {
+					if (source.charAt(i) == '\\') {
+						i++;
+					}
+				}
+			} else if (c == '/' && i + 1 < source.length() && source.charAt(i + 1) == '/') {
+				i = source.indexOf('\n', i);
+				if (i < 0) {
+					return null;
+				}
+			} else if (c == '/' && i + 1 < source.length() && source.charAt(i + 1) == '*') {
+				i = source.indexOf("*/", i + 2);
+				if (i < 0) {
+					return null;
+				}
+				i++;
+			} else if (c == '{') {
+				depth++;
+			} else if (c == '}' && --depth == 0) {
+				return source.substring(start, i + 1);
+			}
+		}
+		return null;
+	}
+
+	// the source without the white space that does not separate words
+	static String normalize(String source) {
+		return source.trim().replaceAll("\\s+", " ").replaceAll(" ?([^\\w\\s$]) ?", "$1");
+	}
+
+	private static Map<String, JavaFunction> javaFunctions() {
+		Map<String, JavaFunction> functions = javaFunctions;
+		if (functions == null) {
+			synchronized (RuleFunctions.class) {
+				functions = javaFunctions;
+				if (functions == null) {
+					functions = load();
+					javaFunctions = functions;
+				}
+			}
+		}
+		return functions;
+	}
+
+	private static boolean isEnabled() {
+		return Boolean.parseBoolean(System.getProperty(PARAM_JAVA_FUNCTIONS, "true"));
+	}
+
+	private static Map<String, JavaFunction> load() {
+		Map<String, JavaFunction> functions = new HashMap<>();
+		add(functions, new BuiltinRuleFunctions());
+		try {
+			for (IRuleFunctions provider : ServiceLoader.load(
+				IRuleFunctions.class, RuleFunctions.class.getClassLoader())) {
+				logger.info("Loading rule functions " + provider.getClass().getName());
+				add(functions, provider);
+			}
+		} catch (ServiceConfigurationError e) {
+			logger.error("Unable to load rule functions", e);
+		}
+		return Collections.unmodifiableMap(functions);
+	}
+
+	private static void add(Map<String, JavaFunction> functions, IRuleFunctions provider) {
+		for (Map.Entry<String, ScriptFunction> entry : provider.getFunctions().entrySet()) {
+			String script = provider.getScript(entry.getKey());
+			if (script == null) {
+				logger.warn(
+					"Rule function " + entry.getKey() + " of " + provider.getClass().getName() + " has no script");
+				continue;
+			}
+			functions.put(entry.getKey(), new JavaFunction(entry.getValue(), normalize(script)));
+		}
+	}
+
+} // RuleFunctions
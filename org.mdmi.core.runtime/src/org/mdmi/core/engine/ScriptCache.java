@@ -0,0 +1,338 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.script.ScriptException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.javascript.jscomp.CompilationLevel;
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.Result;
+import com.google.javascript.jscomp.SourceFile;
+import com.google.javascript.rhino.StaticSourceFile.SourceKind;
+
+/**
+ * Cache of the scripts generated from the maps, keyed by the SHA-256 of their source.
+ *
+ * The Closure output of the last 'mdmi.script.cache.size' scripts used (defaults to 64) is kept in memory, and all of
+ * it in 'mdmi.script.cache.dir' (defaults to .mdmi/script-cache in the home directory, an empty value turns the disk
+ * cache off), so a map is only run through Closure the first time it is seen.
+ * The output is then handed to the {@link IScriptBackend}, which keeps what it parsed under the same key.
+ *
+ * The cached scripts are run with Java access, so the directory is created readable by its owner only, and is not used
+ * if others can write to it. Each file starts with the SHA-256 of the script, checked before the script is used.
+ */
+final class ScriptCache {
+
+	private static Logger logger = LoggerFactory.getLogger(ScriptCache.class);
+
+	public static final String PARAM_CACHE_DIR = "mdmi.script.cache.dir";
+
+	public static final String PARAM_BACKEND = "mdmi.script.backend";
+
+	public static final String PARAM_CACHE_SIZE = "mdmi.script.cache.size";
+
+	private static final int CACHE_SIZE = Integer.getInteger(PARAM_CACHE_SIZE, 64);
+
+	/**
+	 * The Closure output of the recently used scripts, the least recently used one is evicted when full so the
+	 * scripts of the map versions no longer loaded do not stay in memory
+	 */
+	private static final Map<String, String> sources = new LinkedHashMap<String, String>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private static final Map<String, IScriptBackend> backends = new ConcurrentHashMap<>();
+
+	private static volatile IScriptBackend backend;
+
+	/** Releases what the backends keep for a loaded script once it is no longer reachable */
+	static final Cleaner cleaner = Cleaner.create();
+
+	// the directories checked, and whether they can be used
+	private static final Map<Path, Boolean> directories = new ConcurrentHashMap<>();
+
+	private static final String HEADER = "// sha256:";
+
+	private static final String COMPILER = compilerVersion();
+
+	private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+	private ScriptCache() {
+	}
+
+	/**
+	 * Load the script with the configured backend.
+	 *
+	 * @param code
+	 *            JavaScript source code, before Closure.
+	 * @return the loaded script
+	 * @throws ScriptException
+	 *             if the script does not evaluate, see {@link IScriptBackend#load(String, String)}
+	 */
+	static IScriptBackend.Script load(String code) throws ScriptException {
+		return load(code, backend());
+	}
+
+	/**
+	 * Load the script with the given backend.
+	 */
+	static IScriptBackend.Script load(String code, IScriptBackend backend) throws ScriptException {
+		String key = hash(code);
+		return backend.load(key, compile(key, code));
+	}
+
+	/**
+	 * @return the backend selected by 'mdmi.script.backend'
+	 */
+	static IScriptBackend backend() {
+		IScriptBackend current = backend;
+		if (current == null) {
+			String name = System.getProperty(PARAM_BACKEND);
+			if (name == null || name.trim().isEmpty()) {
+				name = JavaScriptEngineBackend.isAvailable() || !GraalScriptBackend.isAvailable()
+						? JavaScriptEngineBackend.NAME
+						: GraalScriptBackend.NAME;
+			}
+			current = backend(name.trim());
+			logger.info("Using script backend " + current.getName());
+			backend = current;
+		}
+		return current;
+	}
+
+	/**
+	 * @param name
+	 *            'jsr223', 'graal' or the class name of an IScriptBackend.
+	 * @return the backend, created on first use
+	 */
+	static IScriptBackend backend(String name) {
+		return backends.computeIfAbsent(name, n -> {
+			try {
+				if (JavaScriptEngineBackend.NAME.equals(n)) {
+					return new JavaScriptEngineBackend();
+				}
+				if (GraalScriptBackend.NAME.equals(n)) {
+					return new GraalScriptBackend();
+				}
+				return (IScriptBackend) Class.forName(n).getDeclaredConstructor().newInstance();
+			} catch (Exception | LinkageError e) {
+				throw new RuntimeException("Unable to create script backend " + n, e);
+			}
+		});
+	}
+
+	/**
+	 * @return the Closure output for the code, from memory, from disk, or compiled now
+	 */
+	private static String compile(String key, String code) {
+		String compiled;
+		synchronized (sources) {
+			compiled = sources.get(key);
+		}
+		if (compiled != null) {
+			return compiled;
+		}
+
+		Path file = cacheFile(key);
+		if (file != null && Files.isRegularFile(file)) {
+			compiled = read(file);
+		}
+
+		if (compiled == null) {
+			long start = System.nanoTime();
+			compiled = closure(code);
+			logger.info("Compiled script " + key + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+			if (file != null) {
+				write(file, compiled);
+			}
+		}
+
+		synchronized (sources) {
+			sources.put(key, compiled);
+		}
+		return compiled;
+	}
+
+	/**
+	 * @return the number of scripts kept in memory
+	 */
+	static int size() {
+		synchronized (sources) {
+			return sources.size();
+		}
+	}
+
+	private static String closure(String code) {
+		Compiler compiler = new Compiler();
+
+		CompilerOptions options = new CompilerOptions();
+		// Advanced mode is used here, but additional options could be set, too.
+		CompilationLevel.ADVANCED_OPTIMIZATIONS.setOptionsForCompilationLevel(options);
+
+		SourceFile sf = SourceFile.fromCode("mappings.js", code, SourceKind.STRONG);
+		ArrayList<SourceFile> inputFiles = new ArrayList<>();
+		inputFiles.add(sf);
+
+		Result result = compiler.compile(new ArrayList<SourceFile>(), inputFiles, options);
+		if (!result.success) {
+			logger.warn("Unable to compile script, " + result.errors.size() + " error(s), using the source as is");
+			for (int i = 0; i < result.errors.size(); i++) {
+				logger.debug(String.valueOf(result.errors.get(i)));
+			}
+			return code;
+		}
+
+		return compiler.toSource();
+	}
+
+	/**
+	 * @return the script of the file, null if it cannot be read or its hash does not match
+	 */
+	static String read(Path file) {
+		try {
+			String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			int eol = content.indexOf('\n');
+			if (content.startsWith(HEADER) && eol > 0) {
+				String script = content.substring(eol + 1);
+				if (content.substring(HEADER.length(), eol).equals(sha256(script))) {
+					logger.debug("Loaded compiled script " + file);
+					return script;
+				}
+			}
+			logger.warn("Ignoring compiled script " + file + ", its hash does not match");
+		} catch (IOException e) {
+			logger.debug("Unable to read compiled script " + file, e);
+		}
+		return null;
+	}
+
+	// write to a temporary file first so a concurrent reader never sees a partial script
+	static void write(Path file, String compiled) {
+		try {
+			Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp", ownerOnly(false));
+			Files.write(tmp, (HEADER + sha256(compiled) + "\n" + compiled).getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.debug("Unable to write compiled script " + file, e);
+		}
+	}
+
+	/**
+	 * @return the file of the script in the cache directory, null if there is no usable directory
+	 */
+	static Path cacheFile(String key) {
+		String dir = System.getProperty(
+			PARAM_CACHE_DIR, Paths.get(System.getProperty("user.home"), ".mdmi", "script-cache").toString());
+		if (dir.trim().isEmpty()) {
+			return null;
+		}
+		Path path = Paths.get(dir.trim()).toAbsolutePath();
+		return directories.computeIfAbsent(path, ScriptCache::isPrivate)
+				? path.resolve(key + ".js")
+				: null;
+	}
+
+	// create the directory for its owner only, or check an existing one is not writable by others
+	private static boolean isPrivate(Path dir) {
+		try {
+			if (!Files.isDirectory(dir)) {
+				Files.createDirectories(dir, ownerOnly(true));
+			}
+			if (POSIX) {
+				Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(dir);
+				if (permissions.contains(PosixFilePermission.GROUP_WRITE) ||
+						permissions.contains(PosixFilePermission.OTHERS_WRITE) ||
+						!Files.getOwner(dir).getName().equals(System.getProperty("user.name"))) {
+					logger.warn("Not caching compiled scripts in " + dir + ", it is not private to " +
+							System.getProperty("user.name"));
+					return false;
+				}
+			}
+			return true;
+		} catch (IOException | UnsupportedOperationException e) {
+			logger.warn("Not caching compiled scripts in " + dir + ", " + e.getMessage());
+			return false;
+		}
+	}
+
+	private static FileAttribute<?>[] ownerOnly(boolean directory) {
+		if (!POSIX) {
+			return new FileAttribute<?>[0];
+		}
+		return new FileAttribute<?>[] {
+				PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(directory
+						? "rwx------"
+						: "rw-------")) };
+	}
+
+	// the Closure compiler is part of the key, a new compiler may produce a different output
+	private static String hash(String code) {
+		return sha256(COMPILER + "\n" + code);
+	}
+
+	private static String sha256(String text) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(text.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest.digest()) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// Closure has no release number at runtime, the location of its classes names the jar or bundle they come from
+	private static String compilerVersion() {
+		try {
+			CodeSource source = Compiler.class.getProtectionDomain().getCodeSource();
+			return source != null && source.getLocation() != null
+					? source.getLocation().toString()
+					: "";
+		} catch (SecurityException e) {
+			return "";
+		}
+	}
+
+} // ScriptCache
@@ -15,28 +15,25 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
-import javax.script.Invocable;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.mdmi.MessageGroup;
 import org.mdmi.MessageModel;
 import org.mdmi.SemanticElement;
 import org.mdmi.SemanticElementRelationship;
+import org.mdmi.core.engine.IScriptBackend.ScriptFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.javascript.jscomp.CompilationLevel;
-import com.google.javascript.jscomp.Compiler;
-import com.google.javascript.jscomp.CompilerOptions;
-import com.google.javascript.jscomp.Result;
-import com.google.javascript.jscomp.SourceFile;
-import com.google.javascript.rhino.StaticSourceFile.SourceKind;
 
 /**
  * @author seanmuir
@@ -46,14 +43,46 @@ public class SemanticInterpreter {
 
 	private static Logger logger = LoggerFactory.getLogger(SemanticInterpreter.class);
 
-	ScriptEngineManager manager;
+	IScriptBackend.Script inv;
 
-	ScriptEngine engine;
+	// the source of the script, the Java rule functions are only bound to the functions it defines as they expect
+	private String source;
 
-	Invocable inv;
+	// the group the functions were generated from
+	final MessageGroup messageGroup;
 
+	// shared by the transfers running the map, synchronize on it to use it
 	public HashMap<String, Exception> exceptions = new HashMap<>();
 
+	/**
+	 * The functions generated for the semantic elements, named prefix + element name + suffix.
+	 */
+	public enum Kind {
+		COMPUTED("", "_COMPUTED"), UPDATEVALUE("", "_UPDATEVALUE"), COMPUTEDIN("", "_COMPUTEDIN"),
+		COMPUTEDOUT("", "_COMPUTEDOUT"), NULLFLAVOR("setNullFlavorFor", "");
+
+		private final String prefix;
+
+		private final String suffix;
+
+		Kind(String prefix, String suffix) {
+			this.prefix = prefix;
+			this.suffix = suffix;
+		}
+
+		String functionName(String elementName) {
+			return prefix + elementName + suffix;
+		}
+	}
+
+	/** The functions of each kind, by element name */
+	private final Map<Kind, Map<String, ScriptFunction>> elementFunctions = new EnumMap<>(Kind.class);
+
+	/** The rollup functions, by target then source semantic element */
+	private final Map<SemanticElement, Map<SemanticElement, ScriptFunction>> rollups = new ConcurrentHashMap<>();
+
+	private final Map<String, ScriptFunction> functions = new ConcurrentHashMap<>();
+
 	public static String getFunctionName(SemanticElement from, SemanticElement to) {
 		return from.getName() + "_to_" + to.getName() + "RollUp";
 	}
@@ -63,12 +92,16 @@ public class SemanticInterpreter {
 	 */
 	public SemanticInterpreter(MessageGroup messgaeGroup) {
 		super();
+		this.messageGroup = messgaeGroup;
 		// date.js
-		manager = new ScriptEngineManager();
-		engine = manager.getEngineByName("JavaScript");
-
 		boolean createdNullFlavor = false;
 
+		for (Kind kind : Kind.values()) {
+			elementFunctions.put(kind, new ConcurrentHashMap<>());
+		}
+		List<Pair<Kind, String>> generated = new ArrayList<>();
+		List<Pair<SemanticElement, SemanticElement>> generatedRollups = new ArrayList<>();
+
 		StringBuffer sb = new StringBuffer();
 
 		sb.append("try {\n load(\"nashorn:mozilla_compat.js\");\n} \ncatch (e) \n{ \n}\n");
@@ -106,6 +139,7 @@ public class SemanticInterpreter {
 								function.append(rollupRule.replace("'<<LOCALSEMANTICVALUE>>>'", "param1"));
 								function.append("}");
 								sb.append(function.toString());
+								generatedRollups.add(Pair.of(relationship.getRelatedSemanticElement(), semanticElement));
 							}
 						}
 					} else if (rule.startsWith("UPDATEVALUE:")) {
@@ -117,6 +151,7 @@ public class SemanticInterpreter {
 						function.append(rule.replace("UPDATEVALUE:", ""));
 						function.append("}");
 						sb.append(function.toString());
+						generated.add(Pair.of(Kind.UPDATEVALUE, semanticElement.getName()));
 					} else {
 
 						StringBuffer function = new StringBuffer();
@@ -126,6 +161,7 @@ public class SemanticInterpreter {
 						function.append(rule);
 						function.append("}");
 						sb.append(function.toString());
+						generated.add(Pair.of(Kind.COMPUTED, semanticElement.getName()));
 					}
 
 				} else if (semanticElement.isNullFlavor()) {
@@ -136,6 +172,7 @@ public class SemanticInterpreter {
 						function.append(computedInExpression);
 						function.append("}");
 						sb.append(function.toString());
+						generated.add(Pair.of(Kind.NULLFLAVOR, semanticElement.getName()));
 					}
 
 				} else if (semanticElement.isComputedIn()) {
@@ -150,6 +187,7 @@ public class SemanticInterpreter {
 						function.append(computedInExpression);
 						function.append("}");
 						sb.append(function.toString());
+						generated.add(Pair.of(Kind.COMPUTEDIN, semanticElement.getName()));
 					}
 
 				} else if (semanticElement.isComputedOut()) {
@@ -164,6 +202,7 @@ public class SemanticInterpreter {
 						function.append(computedOutExpression);
 						function.append("}");
 						sb.append(function.toString());
+						generated.add(Pair.of(Kind.COMPUTEDOUT, semanticElement.getName()));
 					}
 
 				}
@@ -182,12 +221,92 @@ public class SemanticInterpreter {
 
 			}
 
-			engine.eval(compile(sb.toString()));
-		} catch (ScriptException e) {
+			source = sb.toString();
+			inv = ScriptCache.load(source);
+		} catch (IScriptBackend.EvalException e) {
 			logger.error(e.getLocalizedMessage());
+			source = null;
+			inv = e.getScript();
+		} catch (ScriptException e) {
+			throw new RuntimeException("Unable to Load Script", e);
+		}
+
+		// resolve the generated functions once, so the calls do no string work
+		for (Pair<Kind, String> function : generated) {
+			function(function.getLeft(), function.getRight());
+		}
+		for (Pair<SemanticElement, SemanticElement> rollup : generatedRollups) {
+			rollup(rollup.getLeft(), rollup.getRight());
+		}
+	}
+
+	private ScriptFunction function(String name) {
+		/*
+		 * @TODO Fix Editor Whitespace
+		 * Editor is adding on white space chars causing issues with method invocation
+		 */
+		return functions.computeIfAbsent(
+			name, n -> RuleFunctions.resolve(inv, source, n.replaceAll("\\s+", "")));
+	}
+
+	// the script has one context, the transfers running the map take turns on it
+	private synchronized Object call(ScriptFunction function, Object... args)
+			throws ScriptException, NoSuchMethodException {
+		return function.call(args);
+	}
+
+	private ScriptFunction function(Kind kind, String elementName) {
+		return elementFunctions.get(kind).computeIfAbsent(elementName, n -> function(kind.functionName(n)));
+	}
+
+	private ScriptFunction rollup(SemanticElement from, SemanticElement to) {
+		return rollups.computeIfAbsent(to, k -> new ConcurrentHashMap<>()).computeIfAbsent(
+			from, k -> function(getFunctionName(from, to)));
+	}
+
+	/**
+	 * Run the rollup function from the semantic element to the other.
+	 */
+	public boolean rollup(SemanticElement from, SemanticElement to, Object value, Object param1) {
+		try {
+			call(rollup(from, to), value, param1);
+			return true;
+		} catch (Exception e) {
+			String function = getFunctionName(from, to);
+			failed(function, e);
+			logger.error("Failed executing function " + function + " := " + e.getMessage());
+			return false;
 		}
+	}
 
-		inv = (Invocable) engine;
+	/**
+	 * Run the function of the given kind for the semantic element, on a value.
+	 */
+	public boolean update(Kind kind, String elementName, Object value) {
+		try {
+			call(function(kind, elementName), value);
+			return true;
+		} catch (Exception e) {
+			String function = kind.functionName(elementName);
+			failed(function, e);
+			logger.error("Failed executing function " + function + " := " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Run the function of the given kind for the semantic element, on a target with properties.
+	 */
+	Boolean execute(Kind kind, String elementName, Object target, Properties properties) {
+		try {
+			return (Boolean) call(function(kind, elementName), target, properties);
+		} catch (Exception e) {
+			String function = kind.functionName(elementName);
+			failed(function, e);
+			logger.error("Failed executing Executing " + function + " := " + e.getMessage());
+			logger.error(e.getMessage(), e);
+			return false;
+		}
 	}
 
 	void trace(String context, Object object) {
@@ -206,41 +325,6 @@ public class SemanticInterpreter {
 
 	}
 
-	/**
-	 * @param code
-	 *            JavaScript source code to compile.
-	 * @return The compiled version of the code.
-	 */
-	private static String compile(String code) {
-		Compiler compiler = new Compiler();
-
-		CompilerOptions options = new CompilerOptions();
-		// Advanced mode is used here, but additional options could be set, too.
-		CompilationLevel.ADVANCED_OPTIMIZATIONS.setOptionsForCompilationLevel(options);
-
-		SourceFile sf;
-		// try {
-		sf = SourceFile.fromCode("mappings.js", code, SourceKind.STRONG);
-		// sf = SourceFile.fromInputStream(
-		// "mappings.js", new ByteArrayInputStream(code.getBytes()), StandardCharsets.UTF_8);
-		ArrayList<SourceFile> inputFiles = new ArrayList<>();
-		inputFiles.add(sf);
-
-		Result result = compiler.compile(new ArrayList<SourceFile>(), inputFiles, options);
-
-		if (!result.success) {
-			// throw new ProcessException("Failure when processing javascript files!");
-		}
-
-		return compiler.toSource();
-		// } catch (IOException e) {
-		// // TODO Auto-generated catch block
-		//
-		// }
-		//
-		// return code;
-	}
-
 	void compare(String function, Object source, Object target) {
 
 		if (source instanceof XDataStruct) {
@@ -300,10 +384,10 @@ public class SemanticInterpreter {
 			 */
 			logger.trace("Executing Method with Param " + function);
 
-			inv.invokeFunction(function.replaceAll("\\s+", ""), value, param1);
+			call(function(function), value, param1);
 			return true;
 		} catch (Exception e) {
-			exceptions.put(function, e);
+			failed(function, e);
 			logger.error("Failed executing function " + function + " := " + e.getMessage());
 			return false;
 		}
@@ -320,11 +404,11 @@ public class SemanticInterpreter {
 			 */
 			logger.trace("Executing update Method " + function);
 
-			inv.invokeFunction(function.replaceAll("\\s+", ""), value);
+			call(function(function), value);
 			return true;
 			// compare(function, source, target);
 		} catch (Exception e) {
-			exceptions.put(function, e);
+			failed(function, e);
 			logger.error("Failed executing function " + function + " := " + e.getMessage());
 			// logger.error(e.getMessage(), e);
 			return false;
@@ -335,9 +419,9 @@ public class SemanticInterpreter {
 	Boolean execute(String function, Object target, Properties properties) {
 		try {
 			logger.trace("Executing Method with properties " + function);
-			return (Boolean) inv.invokeFunction(function.replaceAll("\\s+", ""), target, properties);
+			return (Boolean) call(function(function), target, properties);
 		} catch (Exception e) {
-			exceptions.put(function, e);
+			failed(function, e);
 			logger.error("Failed executing Executing " + function + " := " + e.getMessage());
 			logger.error(e.getMessage(), e);
 			return false;
@@ -345,4 +429,10 @@ public class SemanticInterpreter {
 		// }
 	}
 
+	private void failed(String function, Exception e) {
+		synchronized (exceptions) {
+			exceptions.put(function, e);
+		}
+	}
+
 }
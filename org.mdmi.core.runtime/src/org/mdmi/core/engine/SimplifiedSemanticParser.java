@@ -30,6 +30,7 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -69,7 +70,7 @@ public class SimplifiedSemanticParser implements ISemanticParser {
 
 	private static Logger logger = LoggerFactory.getLogger(SimplifiedSemanticParser.class);
 
-	private static Map<String, SemanticInterpreter> semanticRollupInterpreters = new HashMap<>();
+	private static Map<String, SemanticInterpreter> semanticRollupInterpreters = new ConcurrentHashMap<>();
 
 	private static String parseFunctionName(String rule) {
 
@@ -465,11 +466,15 @@ public class SimplifiedSemanticParser implements ISemanticParser {
 	private SemanticInterpreter getSemanticInterpreter() {
 		String key = sourceMessageGroup.getName() + "__SEMANTICINTERPRETER__" +
 				sourceMessageGroup.getModels().get(0).getMessageModelName();
-		if (!semanticRollupInterpreters.containsKey(key)) {
-			semanticRollupInterpreters.put(key, new SemanticInterpreter(sourceMessageGroup));
-		}
-
-		return semanticRollupInterpreters.get(key);
+		// a new interpreter if the map was reloaded, so the script of the previous one is released
+		SemanticInterpreter interpreter = semanticRollupInterpreters.get(key);
+		if (interpreter == null || interpreter.messageGroup != sourceMessageGroup) {
+			interpreter = semanticRollupInterpreters.compute(
+				key, (k, current) -> current != null && current.messageGroup == sourceMessageGroup
+						? current
+						: new SemanticInterpreter(sourceMessageGroup));
+		}
+		return interpreter;
 	}
 
 	// a leaf mapped to a simple type (must be simple)
@@ -966,7 +971,7 @@ public class SimplifiedSemanticParser implements ISemanticParser {
 			parent.addChild(xe);
 		}
 
-		getSemanticInterpreter().update(se.getName() + "_COMPUTEDOUT", xe);
+		getSemanticInterpreter().update(SemanticInterpreter.Kind.COMPUTEDOUT, se.getName(), xe);
 
 	}
 
@@ -1126,9 +1131,9 @@ public class SimplifiedSemanticParser implements ISemanticParser {
 
 								} else {
 
-									getSemanticInterpreter().execute(
-										SemanticInterpreter.getFunctionName(rollupValue.getSemanticElement(), se),
-										computedInElement, rollupValue.getXValue().getValue());
+									getSemanticInterpreter().rollup(
+										rollupValue.getSemanticElement(), se, computedInElement,
+										rollupValue.getXValue().getValue());
 
 								}
 							}
@@ -1161,7 +1166,8 @@ public class SimplifiedSemanticParser implements ISemanticParser {
 			if (rule.startsWith("UPDATEVALUE:")) {
 				if (elementValueSet.hasElementValuesByName(se)) {
 					for (IElementValue value : elementValueSet.getElementValuesByName(se)) {
-						getSemanticInterpreter().update(se.getName() + "_UPDATEVALUE", value);
+						getSemanticInterpreter().update(
+							SemanticInterpreter.Kind.UPDATEVALUE, se.getName(), value);
 					}
 				}
 			} else {
@@ -1174,7 +1180,8 @@ public class SimplifiedSemanticParser implements ISemanticParser {
 							XElementValue computedInElement = new XElementValue(se, elementValueSet);
 							computedInElement.setParent(element);
 							element.addChild(computedInElement);
-							getSemanticInterpreter().update(se.getName() + "_COMPUTED", computedInElement);
+							getSemanticInterpreter().update(
+								SemanticInterpreter.Kind.COMPUTED, se.getName(), computedInElement);
 						}
 					}
 				}
@@ -1720,7 +1727,8 @@ public class SimplifiedSemanticParser implements ISemanticParser {
 									logger.trace("Process computedin rule " + rule);
 
 									this.getSemanticInterpreter().execute(
-										child.getName() + "_COMPUTEDIN", computedInElement, properties);
+										SemanticInterpreter.Kind.COMPUTEDIN, child.getName(), computedInElement,
+										properties);
 
 									// evalRule(lang, rule, computedInElement, properties);
 								}
@@ -1751,7 +1759,7 @@ public class SimplifiedSemanticParser implements ISemanticParser {
 					logger.trace("Process computedin rule " + rule);
 
 					this.getSemanticInterpreter().execute(
-						child.getName() + "_COMPUTEDIN", computedInElement, properties);
+						SemanticInterpreter.Kind.COMPUTEDIN, child.getName(), computedInElement, properties);
 
 				}
 
@@ -1929,7 +1937,7 @@ public class SimplifiedSemanticParser implements ISemanticParser {
 				logger.trace("Running Null Flavor " + ser.getRelatedSemanticElement().getName());
 				XElementValue nullFlavor = new XElementValue(ser.getRelatedSemanticElement(), elementValueSet);
 				this.getSemanticInterpreter().execute(
-					"setNullFlavorFor" + nullFlavorToRun.getRight().getName(), nullFlavor, properties);
+					SemanticInterpreter.Kind.NULLFLAVOR, nullFlavorToRun.getRight().getName(), nullFlavor, properties);
 				nullFlavorToRun.getLeft().addChild(nullFlavor);
 				nullFlavor.setParent(nullFlavorToRun.getLeft());
 
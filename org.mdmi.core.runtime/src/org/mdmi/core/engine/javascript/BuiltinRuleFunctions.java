@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2017,2018 MDIX.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir(MDIX) - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.javascript;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.mdmi.core.engine.IRuleFunctions;
+import org.mdmi.core.engine.IScriptBackend.ScriptFunction;
+import org.mdmi.core.engine.XElementValue;
+import org.mdmi.core.engine.XValue;
+
+/**
+ * Java versions of the datatype map functions that only wrap {@link Utils}. They take the datatype map arguments
+ * (source, target, properties, conversionRule), and are bound for the maps that define them as in {@link #SCRIPTS}.
+ *
+ * <ul>
+ * <li>CopyValue: sets the source value on the target</li>
+ * <li>StringToPatientName, StringToAddress: see {@link Utils}</li>
+ * </ul>
+ *
+ * The datatype maps that only set on the target what {@link Utils#FormatDate} or {@link Utils#transform} return for
+ * the source, their other arguments string literals, have a Java version whatever their name, see {@link #bind}.
+ *
+ * @author seanmuir
+ *
+ */
+public class BuiltinRuleFunctions implements IRuleFunctions {
+
+	/** The script functions these stand for */
+	static final Map<String, String> SCRIPTS = new HashMap<>();
+
+	static {
+		SCRIPTS.put(
+			"CopyValue", "function CopyValue(source, target) {\n\ttarget.setValue(source.getValue());\n}");
+		SCRIPTS.put(
+			"StringToPatientName",
+			"function StringToPatientName(source, target) {\n" +
+					"\tUtils.StringToPatientName(source.getValue(), target);\n}");
+		SCRIPTS.put(
+			"StringToAddress",
+			"function StringToAddress(source, target) {\n\tUtils.StringToAddress(source.getValue(), target);\n}");
+	}
+
+	/**
+	 * function name(source, target) { target.setValue(Utils.call(arguments)); }, with the source or its getValue() or
+	 * value() and string literals as arguments
+	 */
+	private static final Pattern UTILS_CALL = Pattern.compile(
+		"\\s*function\\s+[\\w$]+\\s*\\(\\s*([\\w$]+)\\s*,\\s*([\\w$]+)\\s*(?:,\\s*[\\w$]+\\s*)*\\)\\s*\\{" +
+				"\\s*\\2\\s*\\.\\s*setValue\\s*\\(" +
+				"\\s*Utils\\s*\\.\\s*(FormatDate|transform)\\s*\\((.*)\\)\\s*\\)\\s*;?\\s*\\}\\s*",
+		Pattern.DOTALL);
+
+	/** An argument of the call, a string literal or the source */
+	private static final Pattern ARGUMENT = Pattern.compile(
+		"\\s*(?:'((?:[^'\\\\]|\\\\.)*)'|\"((?:[^\"\\\\]|\\\\.)*)\"|" +
+				"([\\w$]+)(?:\\s*\\.\\s*(getValue|value)\\s*\\(\\s*\\))?)\\s*(,|$)");
+
+	/**
+	 * @param script
+	 *            The source of a script function.
+	 * @return the Java version of the function if it only sets on the target what {@link Utils#FormatDate} or
+	 *         {@link Utils#transform} return, null otherwise
+	 */
+	public static ScriptFunction bind(String script) {
+		Matcher call = UTILS_CALL.matcher(script);
+		if (!call.matches()) {
+			return null;
+		}
+		String source = call.group(1);
+		List<Function<Object, String>> arguments = new ArrayList<>();
+		Matcher argument = ARGUMENT.matcher(call.group(4));
+		int end = 0;
+		while (end < call.group(4).length() && argument.find(end) && argument.start() == end) {
+			if (argument.group(3) == null) {
+				String literal = unescape(argument.group(1) != null
+						? argument.group(1)
+						: argument.group(2));
+				arguments.add(value -> literal);
+			} else if (argument.group(3).equals(source)) {
+				String accessor = argument.group(4);
+				arguments.add(value -> string(accessor != null
+						? accessor(value, accessor)
+						: value));
+			} else {
+				return null;
+			}
+			end = argument.end();
+		}
+		if (end < call.group(4).length()) {
+			return null;
+		}
+		if ("FormatDate".equals(call.group(3)) && arguments.size() == 3) {
+			return args -> {
+				set(args[1], Utils.FormatDate(
+					arguments.get(0).apply(args[0]), arguments.get(1).apply(args[0]),
+					arguments.get(2).apply(args[0])));
+				return null;
+			};
+		}
+		if ("transform".equals(call.group(3)) && arguments.size() == 2) {
+			return args -> {
+				set(args[1], Utils.transform(arguments.get(0).apply(args[0]), arguments.get(1).apply(args[0])));
+				return null;
+			};
+		}
+		return null;
+	}
+
+	@Override
+	public Map<String, ScriptFunction> getFunctions() {
+		Map<String, ScriptFunction> functions = new HashMap<>();
+		functions.put("CopyValue", args -> {
+			set(args[1], value(args[0]));
+			return null;
+		});
+		functions.put("StringToPatientName", args -> {
+			Utils.StringToPatientName(string(args[0]), args[1]);
+			return null;
+		});
+		functions.put("StringToAddress", args -> {
+			Utils.StringToAddress(string(args[0]), args[1]);
+			return null;
+		});
+		return functions;
+	}
+
+	@Override
+	public String getScript(String name) {
+		return SCRIPTS.get(name);
+	}
+
+	private static Object value(Object source) {
+		return source instanceof XValue
+				? ((XValue) source).getValue()
+				: source;
+	}
+
+	private static String string(Object source) {
+		Object value = value(source);
+		return value != null
+				? value.toString()
+				: null;
+	}
+
+	// the source with the getValue() or value() of the script called on it
+	private static Object accessor(Object source, String accessor) {
+		if ("getValue".equals(accessor) && source instanceof XValue) {
+			return ((XValue) source).getValue();
+		}
+		if ("value".equals(accessor) && source instanceof XElementValue) {
+			return ((XElementValue) source).value();
+		}
+		throw new IllegalArgumentException(
+			"Unsupported source " + (source != null
+					? source.getClass().getName()
+					: null) + " for " + accessor + "()");
+	}
+
+	private static String unescape(String literal) {
+		return literal.replaceAll("\\\\(.)", "$1");
+	}
+
+	private static void set(Object target, Object value) {
+		if (target instanceof XValue) {
+			((XValue) target).setValue(value);
+		} else if (target instanceof XElementValue) {
+			((XElementValue) target).setValue(value);
+		} else {
+			throw new IllegalArgumentException(
+				"Unsupported target " + (target != null
+						? target.getClass().getName()
+						: null));
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2017,2018 MDIX.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir(MDIX) - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.javascript;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Command line converter of .properties code maps to the memory mapped .codemap format.
+ *
+ * <pre>
+ * CodeMapConverter &lt;name&gt;.properties [&lt;name&gt;.codemap]
+ * </pre>
+ *
+ * The output defaults to the input with the .codemap extension. Put the .codemap next to, or instead of, the
+ * .properties; {@link CodeMaps} uses the .codemap when there are both.
+ *
+ * @author seanmuir
+ *
+ */
+public class CodeMapConverter {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: CodeMapConverter <name>.properties [<name>.codemap]");
+			System.exit(1);
+		}
+
+		Path in = Paths.get(args[0]);
+		Path out = args.length > 1
+				? Paths.get(args[1])
+				: in.resolveSibling(in.getFileName().toString().replaceFirst("\\.properties$", "") +
+						MappedCodeMap.EXTENSION);
+
+		long start = System.nanoTime();
+		Properties properties = new Properties();
+		try (InputStream stream = Files.newInputStream(in)) {
+			properties.load(stream);
+		}
+		Map<String, String> codes = new HashMap<>();
+		for (String code : properties.stringPropertyNames()) {
+			codes.put(code, properties.getProperty(code));
+		}
+		MappedCodeMap.write(codes, out);
+
+		MappedCodeMap written = MappedCodeMap.map(out);
+		for (Map.Entry<String, String> entry : codes.entrySet()) {
+			if (!entry.getValue().equals(written.get(entry.getKey()))) {
+				throw new IllegalStateException("Code " + entry.getKey() + " did not convert");
+			}
+		}
+		System.out.println(
+			"Converted " + codes.size() + " codes to " + out + ", " + Files.size(in) / 1024 + " KB to " +
+					Files.size(out) / 1024 + " KB in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2017,2018 MDIX.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir(MDIX) - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.javascript;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.mdmi.MessageGroup;
+import org.mdmi.MessageModel;
+import org.mdmi.SemanticElement;
+import org.mdmi.SemanticElementRelationship;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the code maps, the &lt;name&gt;.properties or .codemap resources that map source codes to target codes.
+ *
+ * A code map is read once, into an immutable map shared by all threads, so translating a code is a hash lookup. The
+ * maps a message group refers to, with a 'CODESYSTEM=' property qualifier or as the description of a relationship, are
+ * read when the group is registered; others the first time they are asked for. A map is only read again when its
+ * resource changed, which is checked when a group is registered and on {@link #refresh()}.
+ *
+ * A large code map can be converted to a &lt;name&gt;.codemap with {@link CodeMapConverter}; it is then memory mapped
+ * instead of read on the heap, see {@link MappedCodeMap}. Code maps are looked up in the 'mdmi.codemaps.dir'
+ * directory, if set, then on the class path, the .codemap before the .properties.
+ *
+ * @author seanmuir
+ *
+ */
+public final class CodeMaps {
+
+	private static Logger logger = LoggerFactory.getLogger(CodeMaps.class);
+
+	public static final String CODESYSTEM = "CODESYSTEM=";
+
+	public static final String PARAM_DIR = "mdmi.codemaps.dir";
+
+	private static final String PROPERTIES = ".properties";
+
+	/** A code map and the resource it was read from; codes is null if there is no such resource */
+	private static final class CodeMap {
+		final Map<String, String> codes;
+
+		final URL url;
+
+		final long lastModified;
+
+		CodeMap(Map<String, String> codes, URL url, long lastModified) {
+			this.codes = codes;
+			this.url = url;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private static final Map<String, CodeMap> maps = new ConcurrentHashMap<>();
+
+	private CodeMaps() {
+	}
+
+	/**
+	 * @param name
+	 *            The code map name.
+	 * @return the immutable code map, or null if there is no code map with that name
+	 */
+	public static Map<String, String> get(String name) {
+		if (name == null) {
+			return null;
+		}
+		CodeMap codeMap = maps.get(name);
+		if (codeMap == null) {
+			codeMap = maps.computeIfAbsent(name, CodeMaps::load);
+		}
+		return codeMap.codes;
+	}
+
+	/**
+	 * @param code
+	 *            The source code.
+	 * @param name
+	 *            The code map name.
+	 * @return the target code, or null if the code map or the code is unknown
+	 */
+	public static String transform(String code, String name) {
+		Map<String, String> codes = get(name);
+		return codes != null && code != null
+				? codes.get(code)
+				: null;
+	}
+
+	/**
+	 * Read the code maps the message group refers to, and read again the ones that changed.
+	 *
+	 * @param messageGroup
+	 *            The message group being registered.
+	 */
+	public static void preload(MessageGroup messageGroup) {
+		Set<String> names = new LinkedHashSet<>();
+		for (MessageModel messageModel : messageGroup.getModels()) {
+			if (messageModel.getElementSet() == null) {
+				continue;
+			}
+			for (SemanticElement semanticElement : messageModel.getElementSet().getSemanticElements()) {
+				for (String propertyQualifier : semanticElement.getPropertyQualifier()) {
+					if (propertyQualifier.startsWith(CODESYSTEM)) {
+						names.add(propertyQualifier.substring(CODESYSTEM.length()));
+					}
+				}
+				for (SemanticElementRelationship relationship : semanticElement.getRelationships()) {
+					if (!StringUtils.isEmpty(relationship.getDescription())) {
+						names.add(relationship.getDescription());
+					}
+				}
+			}
+		}
+		int count = 0;
+		for (String name : names) {
+			if (refresh(name) && maps.get(name).codes != null) {
+				count++;
+			}
+		}
+		logger.debug("Loaded " + count + " code map(s) for " + messageGroup.getName());
+	}
+
+	/**
+	 * Read again the code maps whose resource changed.
+	 *
+	 * @return the number of code maps read again
+	 */
+	public static int refresh() {
+		int count = 0;
+		for (String name : maps.keySet()) {
+			if (refresh(name)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// read the code map if it is new or its resource changed, returns true if it was read
+	private static boolean refresh(String name) {
+		CodeMap known = maps.get(name);
+		if (known != null) {
+			URL url = resource(name);
+			if (url == null
+					? known.url == null
+					: url.equals(known.url) && lastModified(url) == known.lastModified) {
+				return false;
+			}
+		}
+		CodeMap codeMap = load(name);
+		maps.put(name, codeMap);
+		if (known != null) {
+			logger.info("Reloaded code map " + name);
+		}
+		return true;
+	}
+
+	private static CodeMap load(String name) {
+		URL url = resource(name);
+		if (url == null) {
+			logger.debug("No code map " + name);
+			return new CodeMap(null, null, 0);
+		}
+		long lastModified = lastModified(url);
+		if (url.getPath().endsWith(MappedCodeMap.EXTENSION)) {
+			try {
+				return new CodeMap(MappedCodeMap.open(url), url, lastModified);
+			} catch (Exception e) {
+				logger.error("Unable to read code map " + name + " " + e.getMessage());
+				return new CodeMap(Collections.<String, String> emptyMap(), url, lastModified);
+			}
+		}
+		Properties properties = new Properties();
+		try (InputStream in = url.openStream()) {
+			properties.load(in);
+		} catch (Exception e) {
+			logger.error("Unable to read code map " + name + " " + e.getMessage());
+		}
+		Map<String, String> codes = new HashMap<>();
+		for (String code : properties.stringPropertyNames()) {
+			codes.put(code, properties.getProperty(code));
+		}
+		return new CodeMap(Collections.unmodifiableMap(codes), url, lastModified);
+	}
+
+	private static URL resource(String name) {
+		String dir = System.getProperty(PARAM_DIR);
+		if (!StringUtils.isEmpty(dir)) {
+			for (String extension : new String[] { MappedCodeMap.EXTENSION, PROPERTIES }) {
+				File file = new File(dir, name + extension);
+				if (file.isFile()) {
+					try {
+						return file.toURI().toURL();
+					} catch (MalformedURLException e) {
+						logger.error("Invalid code map file " + file);
+					}
+				}
+			}
+		}
+		URL url = CodeMaps.class.getClassLoader().getResource(name + MappedCodeMap.EXTENSION);
+		return url != null
+				? url
+				: CodeMaps.class.getClassLoader().getResource(name + PROPERTIES);
+	}
+
+	private static long lastModified(URL url) {
+		try {
+			URLConnection connection = url.openConnection();
+			try {
+				return connection.getLastModified();
+			} finally {
+				connection.getInputStream().close();
+			}
+		} catch (Exception e) {
+			return 0;
+		}
+	}
+
+} // CodeMaps
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2017,2018 MDIX.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir(MDIX) - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.javascript;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The shape of the dates a DateTimeFormatter pattern can parse: the digit runs, separators and offsets, in order.
+ *
+ * Checking a date against the shape is cheap and never throws, so Utils.FormatDate only calls the formatter, which
+ * reports a mismatch with an exception, for the patterns the date fits. The check is loose, a date that fits may still
+ * not parse, but a date that does not fit never parses. Whether a date fits only depends on its {@link #classOf class},
+ * so the patterns are checked once for each class of dates.
+ *
+ * @author seanmuir
+ *
+ */
+final class DateShape {
+
+	private static final int DIGITS = 0;
+
+	private static final int LITERAL = 1;
+
+	private static final int OFFSET = 2;
+
+	private static final int ZONE = 3;
+
+	private static final int MAX_DIGITS = 19;
+
+	private final int[] kinds;
+
+	private final int[] min;
+
+	private final int[] max;
+
+	private final char[] literals;
+
+	private DateShape(int[] kinds, int[] min, int[] max, char[] literals) {
+		this.kinds = kinds;
+		this.min = min;
+		this.max = max;
+		this.literals = literals;
+	}
+
+	/**
+	 * @param pattern
+	 *            A DateTimeFormatter pattern.
+	 * @return the shape of the pattern, or null if the pattern uses letters this does not know about
+	 */
+	static DateShape of(String pattern) {
+		List<int[]> tokens = new ArrayList<>();
+		int i = 0;
+		while (i < pattern.length()) {
+			char c = pattern.charAt(i);
+			int count = 1;
+			while (i + count < pattern.length() && pattern.charAt(i + count) == c) {
+				count++;
+			}
+			switch (c) {
+				case 'y':
+				case 'u':
+					// two letters is a reduced two digit year, otherwise at least count digits and maybe a sign
+					tokens.add(
+						count == 2
+								? new int[] { DIGITS, 2, 2 }
+								: new int[] { DIGITS, count, MAX_DIGITS, 1 });
+					break;
+				case 'M':
+				case 'd':
+				case 'H':
+				case 'h':
+				case 'm':
+				case 's':
+					tokens.add(
+						count == 1
+								? new int[] { DIGITS, 1, MAX_DIGITS }
+								: new int[] { DIGITS, count, count });
+					break;
+				case 'S':
+					tokens.add(new int[] { DIGITS, count, count });
+					break;
+				case 'Z':
+				case 'x':
+				case 'X':
+					tokens.add(new int[] { OFFSET, 0, 0 });
+					break;
+				case 'z':
+				case 'V':
+					tokens.add(new int[] { ZONE, 0, 0 });
+					break;
+				case '\'':
+					int end = pattern.indexOf('\'', i + 1);
+					if (end < 0) {
+						return null;
+					}
+					for (int j = i + 1; j < end; j++) {
+						if (isDigit(pattern.charAt(j))) {
+							// dates of a class would not all fit
+							return null;
+						}
+						tokens.add(new int[] { LITERAL, pattern.charAt(j), 0 });
+					}
+					i = end + 1;
+					continue;
+				default:
+					if (Character.isLetter(c) || isDigit(c)) {
+						return null;
+					}
+					for (int j = 0; j < count; j++) {
+						tokens.add(new int[] { LITERAL, c, 0 });
+					}
+			}
+			i += count;
+		}
+
+		int[] kinds = new int[tokens.size()];
+		int[] min = new int[tokens.size()];
+		int[] max = new int[tokens.size()];
+		char[] literals = new char[tokens.size()];
+		for (int t = 0; t < tokens.size(); t++) {
+			int[] token = tokens.get(t);
+			kinds[t] = token[0];
+			if (token[0] == LITERAL) {
+				literals[t] = (char) token[1];
+			} else {
+				min[t] = token[1];
+				max[t] = token[2];
+				// a signed year is flagged with a negative minimum
+				if (token.length > 3) {
+					min[t] = -min[t];
+				}
+			}
+		}
+		return new DateShape(kinds, min, max, literals);
+	}
+
+	/**
+	 * @return the class of the date, its digits replaced with '0'; the dates of a class fit the same shapes
+	 */
+	static String classOf(String date) {
+		char[] chars = date.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			if (isDigit(chars[i])) {
+				chars[i] = '0';
+			}
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @return false if the date can not be parsed with the pattern of this shape
+	 */
+	boolean matches(String date) {
+		return matches(date, 0, 0);
+	}
+
+	private boolean matches(String date, int position, int token) {
+		if (token == kinds.length) {
+			return position == date.length();
+		}
+		int length = date.length();
+		switch (kinds[token]) {
+			case LITERAL:
+				return position < length && date.charAt(position) == literals[token] &&
+						matches(date, position + 1, token + 1);
+			case DIGITS: {
+				int start = position;
+				int least = min[token];
+				if (least < 0) {
+					least = -least;
+					if (start < length && (date.charAt(start) == '+' || date.charAt(start) == '-')) {
+						start++;
+					}
+				}
+				int digits = 0;
+				while (start + digits < length && digits < max[token] && isDigit(date.charAt(start + digits))) {
+					digits++;
+				}
+				for (int n = digits; n >= least; n--) {
+					if (matches(date, start + n, token + 1)) {
+						return true;
+					}
+				}
+				return false;
+			}
+			case OFFSET: {
+				if (position < length && date.charAt(position) == 'Z' && matches(date, position + 1, token + 1)) {
+					return true;
+				}
+				if (position >= length || (date.charAt(position) != '+' && date.charAt(position) != '-')) {
+					return false;
+				}
+				int n = 0;
+				while (position + 1 + n < length && n < 8 &&
+						(isDigit(date.charAt(position + 1 + n)) || date.charAt(position + 1 + n) == ':')) {
+					n++;
+				}
+				for (; n >= 1; n--) {
+					if (matches(date, position + 1 + n, token + 1)) {
+						return true;
+					}
+				}
+				return false;
+			}
+			default:
+				// zone names are too varied to check, anything non empty will do
+				for (int end = length; end > position; end--) {
+					if (matches(date, end, token + 1)) {
+						return true;
+					}
+				}
+				return false;
+		}
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+}
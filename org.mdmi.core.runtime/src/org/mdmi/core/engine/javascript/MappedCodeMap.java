@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2017,2018 MDIX.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir(MDIX) - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.javascript;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read only code map over a .codemap file, for code maps too large to hold in a HashMap.
+ *
+ * The file is memory mapped, so the entries stay off the heap and the pages are shared, through the page cache, by
+ * every process that maps the same file. A lookup is a binary search that compares the key with the bytes of the file
+ * in place; only the value found is decoded. Code map resources that are not files (in a jar) are read into a single
+ * buffer instead.
+ *
+ * <pre>
+ * "MDMICMAP"  magic
+ * int         version, 1
+ * int         number of entries
+ * int[]       offset of each entry, in key order
+ * entries     unsigned short key length, UTF-8 key, unsigned short value length, UTF-8 value
+ * </pre>
+ *
+ * Keys are sorted by their UTF-8 bytes, unsigned. See {@link CodeMapConverter} to create the file from a
+ * .properties code map.
+ *
+ * @author seanmuir
+ *
+ */
+final class MappedCodeMap extends AbstractMap<String, String> {
+
+	static final String EXTENSION = ".codemap";
+
+	private static final byte[] MAGIC = "MDMICMAP".getBytes(StandardCharsets.US_ASCII);
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER = MAGIC.length + 8;
+
+	private static final int MAX_LENGTH = 0xFFFF;
+
+	private final ByteBuffer buffer;
+
+	private final int count;
+
+	private MappedCodeMap(ByteBuffer buffer) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		if (buffer.capacity() < HEADER) {
+			throw new IOException("Not a code map");
+		}
+		for (int i = 0; i < magic.length; i++) {
+			magic[i] = buffer.get(i);
+		}
+		if (!Arrays.equals(MAGIC, magic)) {
+			throw new IOException("Not a code map");
+		}
+		if (buffer.getInt(MAGIC.length) != VERSION) {
+			throw new IOException("Unsupported code map version " + buffer.getInt(MAGIC.length));
+		}
+		this.buffer = buffer;
+		this.count = buffer.getInt(MAGIC.length + 4);
+	}
+
+	/**
+	 * @param url
+	 *            A .codemap resource.
+	 * @return the code map, mapped if the resource is a file
+	 */
+	static MappedCodeMap open(URL url) throws IOException {
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return map(Paths.get(url.toURI()));
+			} catch (URISyntaxException e) {
+				throw new IOException(e);
+			}
+		}
+		try (InputStream in = url.openStream()) {
+			return new MappedCodeMap(ByteBuffer.wrap(in.readAllBytes()));
+		}
+	}
+
+	/**
+	 * @param file
+	 *            A .codemap file.
+	 * @return the memory mapped code map
+	 */
+	static MappedCodeMap map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Code map " + file + " is larger than 2GB");
+			}
+			// the mapping stays valid once the channel is closed
+			return new MappedCodeMap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Write the codes as a .codemap file. The file is written aside and moved in place, so processes that have the
+	 * previous file mapped keep reading it.
+	 *
+	 * @param codes
+	 *            The codes.
+	 * @param file
+	 *            The .codemap file.
+	 */
+	static void write(Map<String, String> codes, Path file) throws IOException {
+		int count = codes.size();
+		byte[][] keys = new byte[count][];
+		byte[][] values = new byte[count][];
+		Integer[] order = new Integer[count];
+		int i = 0;
+		long size = HEADER + 4L * count;
+		for (Map.Entry<String, String> entry : codes.entrySet()) {
+			keys[i] = bytes(entry.getKey());
+			values[i] = bytes(entry.getValue());
+			order[i] = i;
+			size += 4 + keys[i].length + values[i].length;
+			i++;
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Code map is larger than 2GB");
+		}
+		Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		buffer.put(MAGIC).putInt(VERSION).putInt(count);
+		int offset = HEADER + 4 * count;
+		for (int e : order) {
+			buffer.putInt(offset);
+			offset += 4 + keys[e].length + values[e].length;
+		}
+		for (int e : order) {
+			buffer.putShort((short) keys[e].length).put(keys[e]);
+			buffer.putShort((short) values[e].length).put(values[e]);
+		}
+		buffer.flip();
+
+		// not Files.createTempFile, other processes must be able to read the file
+		Path temp = file.resolveSibling(file.getFileName() + "." + System.nanoTime() + ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(
+				temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static byte[] bytes(String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_LENGTH) {
+			throw new IOException("Code map entry longer than " + MAX_LENGTH + " bytes " + s.substring(0, 40) + "...");
+		}
+		return bytes;
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String && find((String) key) >= 0;
+	}
+
+	@Override
+	public String get(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		int entry = find((String) key);
+		return entry >= 0
+				? value(entry)
+				: null;
+	}
+
+	// position of the entry with the key, or -1
+	private int find(String key) {
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int entry = buffer.getInt(HEADER + 4 * middle);
+			int compare = compare(entry, bytes);
+			if (compare < 0) {
+				low = middle + 1;
+			} else if (compare > 0) {
+				high = middle - 1;
+			} else {
+				return entry;
+			}
+		}
+		return -1;
+	}
+
+	// compares the key of the entry with the bytes, in place
+	private int compare(int entry, byte[] bytes) {
+		int length = buffer.getShort(entry) & MAX_LENGTH;
+		int n = Math.min(length, bytes.length);
+		for (int i = 0; i < n; i++) {
+			int c = (buffer.get(entry + 2 + i) & 0xFF) - (bytes[i] & 0xFF);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return length - bytes.length;
+	}
+
+	private String key(int entry) {
+		return string(entry + 2, buffer.getShort(entry) & MAX_LENGTH);
+	}
+
+	private String value(int entry) {
+		int value = entry + 2 + (buffer.getShort(entry) & MAX_LENGTH);
+		return string(value + 2, buffer.getShort(value) & MAX_LENGTH);
+	}
+
+	private String string(int position, int length) {
+		byte[] bytes = new byte[length];
+		buffer.get(position, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return new AbstractSet<Map.Entry<String, String>>() {
+
+			@Override
+			public int size() {
+				return count;
+			}
+
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new Iterator<Map.Entry<String, String>>() {
+					private int next;
+
+					@Override
+					public boolean hasNext() {
+						return next < count;
+					}
+
+					@Override
+					public Map.Entry<String, String> next() {
+						if (next >= count) {
+							throw new NoSuchElementException();
+						}
+						int entry = buffer.getInt(HEADER + 4 * next++);
+						return new SimpleImmutableEntry<>(key(entry), value(entry));
+					}
+				};
+			}
+		};
+	}
+
+} // MappedCodeMap
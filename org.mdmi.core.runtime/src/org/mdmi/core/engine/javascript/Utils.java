@@ -17,10 +17,17 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.TemporalAccessor;
 import java.time.temporal.UnsupportedTemporalTypeException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.mdmi.Bag;
@@ -77,6 +84,9 @@ public class Utils {
 
 		public boolean preferred;
 
+		/** The shape of the dates the input can parse, null to always try the input */
+		final DateShape shape;
+
 		public RuntimeDateFormat(String pattern, DateSegments significant, boolean preferred) {
 			super();
 
@@ -87,6 +97,7 @@ public class Utils {
 			this.segment = significant;
 			this.pattern = pattern;
 			this.preferred = preferred;
+			this.shape = DateShape.of(pattern);
 		}
 
 		public RuntimeDateFormat(String inpattern, String outpattern, DateSegments significant, boolean preferred) {
@@ -99,6 +110,33 @@ public class Utils {
 			this.segment = significant;
 			this.pattern = inpattern;
 			this.preferred = preferred;
+			this.shape = DateShape.of(inpattern);
+		}
+
+		/**
+		 * @return the parsed date, or null if the date does not have the input format
+		 */
+		TemporalAccessor parse(String date) {
+			return fits(date)
+					? parseFitting(date)
+					: null;
+		}
+
+		/**
+		 * @return false if the date can not have the input format
+		 */
+		boolean fits(String date) {
+			return shape == null || shape.matches(date);
+		}
+
+		// parse a date that fits the input format
+		private TemporalAccessor parseFitting(String date) {
+			try {
+				return input.parse(date);
+			} catch (DateTimeParseException ne) {
+				// fits the shape but not the values, for instance a thirteenth month
+				return null;
+			}
 		}
 	}
 
@@ -255,7 +293,81 @@ public class Utils {
 
 	}
 
+	public static final String PARAM_DATE_MEMO_SIZE = "mdmi.date.memo.size";
+
+	private static final int DATE_MEMO_SIZE = Integer.getInteger(PARAM_DATE_MEMO_SIZE, 4096);
+
+	private static final int DATE_MEMO_SEGMENTS = 16;
+
+	/**
+	 * The recent (from, to, date) results, shared by all the threads, a message repeats the same few dates in many
+	 * places. As the terminology cache, it is split in segments by key hash, each an access ordered LinkedHashMap under
+	 * its own lock that evicts its least recently used result when full.
+	 */
+	private static final List<Map<String, String>> DATE_MEMO = new ArrayList<>();
+
+	static {
+		int capacity = Math.max(1, (DATE_MEMO_SIZE + DATE_MEMO_SEGMENTS - 1) / DATE_MEMO_SEGMENTS);
+		for (int i = 0; i < DATE_MEMO_SEGMENTS; i++) {
+			DATE_MEMO.add(new LinkedHashMap<String, String>(16, 0.75f, true) {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+					return size() > capacity;
+				}
+			});
+		}
+	}
+
+	private static final int FITTING_SIZE = 1024;
+
+	/**
+	 * The from formats each class of dates fits, in order, by from format and class, see {@link DateShape#classOf}
+	 */
+	private static final Map<String, RuntimeDateFormat[]> FITTING = new ConcurrentHashMap<>();
+
+	// the from formats the date fits, they are matched once against each class of dates
+	private static RuntimeDateFormat[] fitting(String fromKey, String date) {
+		String key = fromKey + '\u0000' + DateShape.classOf(date);
+		RuntimeDateFormat[] formats = FITTING.get(key);
+		if (formats == null) {
+			List<RuntimeDateFormat> fit = new ArrayList<>();
+			for (RuntimeDateFormat format : FORMATS.get(fromKey)) {
+				if (format.fits(date)) {
+					fit.add(format);
+				}
+			}
+			formats = fit.toArray(new RuntimeDateFormat[0]);
+			if (FITTING.size() < FITTING_SIZE) {
+				FITTING.put(key, formats);
+			}
+		}
+		return formats;
+	}
+
 	public static String FormatDate(String from, String to, String date) {
+		if (DATE_MEMO_SIZE <= 0 || date == null || from == null || to == null) {
+			return formatDate(from, to, date);
+		}
+		String key = from + '\u0000' + to + '\u0000' + date;
+		int h = key.hashCode();
+		Map<String, String> memo = DATE_MEMO.get((h ^ (h >>> 16)) & (DATE_MEMO_SEGMENTS - 1));
+		String result;
+		synchronized (memo) {
+			result = memo.get(key);
+		}
+		if (result == null) {
+			result = formatDate(from, to, date);
+			synchronized (memo) {
+				memo.put(key, result);
+			}
+		}
+		return result;
+	}
+
+	private static String formatDate(String from, String to, String date) {
 
 		String fromKey = from.toUpperCase();
 		String toKey = to.toUpperCase();
@@ -274,11 +386,8 @@ public class Utils {
 
 		if (FORMATS.containsKey(toKey) && FORMATS.containsKey(fromKey)) {
 			TemporalAccessor fromDate = null;
-			for (RuntimeDateFormat fromFormat : FORMATS.get(fromKey)) {
-				try {
-					fromDate = fromFormat.input.parse(date);
-				} catch (DateTimeParseException ne) {
-				}
+			for (RuntimeDateFormat fromFormat : fitting(fromKey, date)) {
+				fromDate = fromFormat.parseFitting(date);
 				if (fromDate != null) {
 					significant = fromFormat.segment;
 					break;
@@ -292,11 +401,8 @@ public class Utils {
 
 				// date = date.replace("--", "-");
 				date = StringUtils.stripEnd(date, "-");
-				for (RuntimeDateFormat fromFormat : FORMATS.get(fromKey)) {
-					try {
-						fromDate = fromFormat.input.parse(date);
-					} catch (DateTimeParseException ne) {
-					}
+				for (RuntimeDateFormat fromFormat : fitting(fromKey, date)) {
+					fromDate = fromFormat.parseFitting(date);
 					if (fromDate != null) {
 						significant = fromFormat.segment;
 						break;
@@ -307,11 +413,8 @@ public class Utils {
 			if (fromDate == null && (date.contains("--"))) {
 				String[] splitresult = date.split("--");
 				date = splitresult[0];
-				for (RuntimeDateFormat fromFormat : FORMATS.get(fromKey)) {
-					try {
-						fromDate = fromFormat.input.parse(date);
-					} catch (DateTimeParseException ne) {
-					}
+				for (RuntimeDateFormat fromFormat : fitting(fromKey, date)) {
+					fromDate = fromFormat.parseFitting(date);
 					if (fromDate != null) {
 						significant = fromFormat.segment;
 						break;
@@ -473,28 +576,90 @@ public class Utils {
 		}
 	}
 
-	static public Map<String, Properties> mapOfTransforms = new HashMap<>();
+	/**
+	 * @deprecated use {@link CodeMaps}; this map reads the code maps from it, but cannot be iterated or changed
+	 */
+	@Deprecated
+	static public Map<String, Properties> mapOfTransforms = new CodeMapsView();
 
-	public static void loadMap(String targetSystem) {
-		if (!mapOfTransforms.containsKey(targetSystem)) {
-			mapOfTransforms.put(targetSystem, new Properties());
+	/**
+	 * The code maps of {@link CodeMaps} by name, each as read only Properties
+	 */
+	private static final class CodeMapsView extends AbstractMap<String, Properties> {
+
+		@Override
+		public Properties get(Object key) {
+			Map<String, String> codes = key instanceof String
+					? CodeMaps.get((String) key)
+					: null;
+			return codes != null
+					? new CodeMapProperties(codes)
+					: null;
 		}
-		try {
-			mapOfTransforms.get(targetSystem).load(
-				Utils.class.getClassLoader().getResourceAsStream(targetSystem + ".properties"));
-		} catch (Exception e1) {
-			logger.error(e1.getMessage());
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof String && CodeMaps.get((String) key) != null;
+		}
+
+		@Override
+		public Set<Map.Entry<String, Properties>> entrySet() {
+			return Collections.emptySet();
 		}
 	}
 
-	public static String transform(String sourceCode, String targetSystem) {
-		loadMap(targetSystem);
-		if (mapOfTransforms.containsKey(targetSystem)) {
-			return (String) mapOfTransforms.get(targetSystem).get(sourceCode);
-		} else {
-			return sourceCode;
+	/**
+	 * A code map as Properties, its codes are looked up in the map and not copied
+	 */
+	private static final class CodeMapProperties extends Properties {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Map<String, String> codes;
+
+		CodeMapProperties(Map<String, String> codes) {
+			this.codes = codes;
 		}
 
+		@Override
+		public Object get(Object key) {
+			return codes.get(key);
+		}
+
+		@Override
+		public String getProperty(String key) {
+			return codes.get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return codes.containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return codes.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return codes.isEmpty();
+		}
+	}
+
+	/**
+	 * @deprecated code maps are loaded once by {@link CodeMaps}
+	 */
+	@Deprecated
+	public static void loadMap(String targetSystem) {
+		CodeMaps.get(targetSystem);
+	}
+
+	/**
+	 * @return the code of the sourceCode in the targetSystem code map, see {@link CodeMaps#transform(String, String)}
+	 */
+	public static String transform(String sourceCode, String targetSystem) {
+		return CodeMaps.transform(sourceCode, targetSystem);
 	}
 
 	public static String getSemanticProperyQualifier(ConversionRule conversionRule, String prefix) {
@@ -17,7 +17,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Properties;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -35,7 +34,7 @@ import org.mdmi.core.engine.YBag;
 import org.mdmi.core.engine.YChoice;
 import org.mdmi.core.engine.YLeaf;
 import org.mdmi.core.engine.YNode;
-import org.mdmi.core.engine.javascript.Utils;
+import org.mdmi.core.engine.javascript.CodeMaps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -112,7 +111,7 @@ public class MLSyntacticParser implements ISyntacticParser {
 				for (SemanticElement seobservation : serow.getChildren()) {
 					if (seobservation.getRelationshipByName("QUALIFIER") != null) {
 
-						Properties qualifierset = Utils.mapOfTransforms.get(
+						Map<String, String> qualifierset = CodeMaps.get(
 							seobservation.getRelationshipByName("QUALIFIER").getDescription());
 						ArrayList<String> vscodes = new ArrayList<>();
 						if (qualifierset != null) {
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.terminology;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker of a terminology endpoint, so an unhealthy server does not hold up every conversion.
+ *
+ * The breaker keeps the outcome of the last 'mdmi.terminology.breaker.window' calls (default 20). Once it has at
+ * least half that many, it opens when 'mdmi.terminology.breaker.failure.rate' percent of them failed (default 50) or
+ * 'mdmi.terminology.breaker.slow.rate' percent took longer than 'mdmi.terminology.breaker.slow.ms' milliseconds
+ * (default 50 and 2000). While open, calls are refused at once. After 'mdmi.terminology.breaker.open.ms'
+ * milliseconds (default 30000) a single call is let through: the breaker closes if it succeeds fast enough, and opens
+ * again if not.
+ *
+ * There is one breaker per endpoint, the scheme, host and port of the server URL, see {@link #get(String)}.
+ */
+public final class CircuitBreaker {
+
+	private static Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	public static final String PARAM_WINDOW = "mdmi.terminology.breaker.window";
+
+	public static final String PARAM_FAILURE_RATE = "mdmi.terminology.breaker.failure.rate";
+
+	public static final String PARAM_SLOW_RATE = "mdmi.terminology.breaker.slow.rate";
+
+	public static final String PARAM_SLOW = "mdmi.terminology.breaker.slow.ms";
+
+	public static final String PARAM_OPEN = "mdmi.terminology.breaker.open.ms";
+
+	public enum State {
+		/** Calls go through */
+		CLOSED,
+		/** Calls are refused */
+		OPEN,
+		/** One call goes through to probe the endpoint */
+		HALF_OPEN
+	}
+
+	/**
+	 * Thrown instead of calling the endpoint when the breaker is open
+	 */
+	public static final class OpenException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		OpenException(CircuitBreaker breaker) {
+			super("Terminology endpoint " + breaker.endpoint + " circuit is open");
+		}
+	}
+
+	private static final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+	private final String endpoint;
+
+	private final boolean[] failures;
+
+	private final boolean[] slows;
+
+	private final int failureRate;
+
+	private final int slowRate;
+
+	private final long slow;
+
+	private final long open;
+
+	// position of the next outcome, and number of outcomes, in the ring
+	private int next;
+
+	private int calls;
+
+	private State state = State.CLOSED;
+
+	private long openedAt;
+
+	private boolean probing;
+
+	private long trips;
+
+	private long rejected;
+
+	/**
+	 * A breaker configured by the system properties
+	 */
+	CircuitBreaker(String endpoint) {
+		this(
+			endpoint, Integer.getInteger(PARAM_WINDOW, 20), Integer.getInteger(PARAM_FAILURE_RATE, 50),
+			Integer.getInteger(PARAM_SLOW_RATE, 50), Long.getLong(PARAM_SLOW, 2000), Long.getLong(PARAM_OPEN, 30000),
+			TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param endpoint
+	 *            The endpoint, for the log.
+	 * @param window
+	 *            The number of last calls looked at.
+	 * @param failureRate
+	 *            The percentage of failed calls that opens the breaker.
+	 * @param slowRate
+	 *            The percentage of slow calls that opens the breaker.
+	 * @param slow
+	 *            How long a call takes to be slow.
+	 * @param open
+	 *            How long the breaker stays open before it lets a call through.
+	 * @param unit
+	 *            The unit of slow and open.
+	 */
+	CircuitBreaker(String endpoint, int window, int failureRate, int slowRate, long slow, long open, TimeUnit unit) {
+		this.endpoint = endpoint;
+		this.failures = new boolean[Math.max(2, window)];
+		this.slows = new boolean[failures.length];
+		this.failureRate = failureRate;
+		this.slowRate = slowRate;
+		this.slow = unit.toNanos(slow);
+		this.open = unit.toNanos(open);
+	}
+
+	/**
+	 * @param url
+	 *            A server URL.
+	 * @return the breaker of the endpoint of the URL
+	 */
+	public static CircuitBreaker get(String url) {
+		String endpoint = endpoint(url);
+		CircuitBreaker breaker = breakers.get(endpoint);
+		return breaker != null
+				? breaker
+				: breakers.computeIfAbsent(endpoint, CircuitBreaker::new);
+	}
+
+	private static String endpoint(String url) {
+		try {
+			URI uri = URI.create(url);
+			if (uri.getScheme() != null && uri.getRawAuthority() != null) {
+				return uri.getScheme() + "://" + uri.getRawAuthority();
+			}
+		} catch (IllegalArgumentException e) {
+			// not a URI, the whole URL is the endpoint
+		}
+		return url;
+	}
+
+	/**
+	 * @return true if a call may go to the endpoint now; the caller then must {@link #record(boolean, long)} it
+	 */
+	public synchronized boolean allow() {
+		if (state == State.OPEN) {
+			if (System.nanoTime() - openedAt < open) {
+				rejected++;
+				return false;
+			}
+			state = State.HALF_OPEN;
+			probing = false;
+			logger.info("Terminology endpoint " + endpoint + " circuit half open");
+		}
+		if (state == State.HALF_OPEN) {
+			if (probing) {
+				rejected++;
+				return false;
+			}
+			probing = true;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if calls are refused
+	 */
+	public synchronized boolean isOpen() {
+		return state == State.OPEN && System.nanoTime() - openedAt < open;
+	}
+
+	/**
+	 * Record the outcome of a call the breaker allowed.
+	 *
+	 * @param success
+	 *            False if the call failed.
+	 * @param nanos
+	 *            How long the call took.
+	 */
+	public synchronized void record(boolean success, long nanos) {
+		boolean isSlow = nanos > slow;
+		if (state == State.HALF_OPEN) {
+			probing = false;
+			if (success && !isSlow) {
+				close();
+			} else {
+				trip("probe " + (success
+						? "slow"
+						: "failed"));
+			}
+			return;
+		}
+		if (state == State.OPEN) {
+			// a call that started before the breaker opened
+			return;
+		}
+		failures[next] = !success;
+		slows[next] = isSlow;
+		next = (next + 1) % failures.length;
+		calls = Math.min(calls + 1, failures.length);
+		if (calls * 2 < failures.length) {
+			return;
+		}
+		int failed = 0;
+		int slowed = 0;
+		for (int i = 0; i < calls; i++) {
+			failed += failures[i]
+					? 1
+					: 0;
+			slowed += slows[i]
+					? 1
+					: 0;
+		}
+		if (failed * 100 >= failureRate * calls) {
+			trip(failed + " of " + calls + " calls failed");
+		} else if (slowed * 100 >= slowRate * calls) {
+			trip(slowed + " of " + calls + " calls slow");
+		}
+	}
+
+	private void trip(String reason) {
+		state = State.OPEN;
+		openedAt = System.nanoTime();
+		trips++;
+		logger.warn(
+			"Terminology endpoint " + endpoint + " circuit open for " + TimeUnit.NANOSECONDS.toMillis(open) + " ms, " +
+					reason);
+	}
+
+	private void close() {
+		state = State.CLOSED;
+		calls = 0;
+		next = 0;
+		logger.info("Terminology endpoint " + endpoint + " circuit closed");
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * @return the number of times the breaker opened
+	 */
+	public synchronized long getTrips() {
+		return trips;
+	}
+
+	/**
+	 * @return the number of calls refused
+	 */
+	public synchronized long getRejected() {
+		return rejected;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "CircuitBreaker " + endpoint + " state=" + state + " trips=" + trips + " rejected=" + rejected;
+	}
+
+} // CircuitBreaker
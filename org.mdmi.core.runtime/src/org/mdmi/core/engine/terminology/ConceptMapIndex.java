@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.terminology;
+
+import java.io.File;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.mdmi.core.engine.ITerminologyTransform.TransformCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In memory index of local FHIR ConceptMap resources, so codes are translated without a terminology server.
+ *
+ * The ConceptMaps of a map group are the JSON files, each a ConceptMap or a Bundle of them, in the directory next to
+ * the map file named like it with the '.conceptmaps' extension (the ConceptMaps of 'CDA2FHIR.mdmi' are in
+ * 'CDA2FHIR.conceptmaps'); they only translate the codes of the transfers to or from the group. Those in the
+ * 'mdmi.terminology.conceptmaps.dir' directory, if set, translate the codes of all the groups. They are read when a
+ * group is registered.
+ *
+ * A code is indexed by the source and target of its group, the code systems, and by those of the ConceptMap, usually
+ * the value sets, so either can be used for the enumExtResolverUri and enumValueSet of a conversion. A code the
+ * ConceptMap lists with no usable target (unmatched or disjoint) translates to {@link FHIRTerminologyTransform#BLANK}.
+ * Codes the ConceptMaps do not have go to the terminology server, if there is one.
+ */
+public final class ConceptMapIndex {
+
+	private static Logger logger = LoggerFactory.getLogger(ConceptMapIndex.class);
+
+	public static final String PARAM_DIR = "mdmi.terminology.conceptmaps.dir";
+
+	public static final String EXTENSION = ".conceptmaps";
+
+	private static final Set<String> UNMATCHED = new LinkedHashSet<>(
+		Arrays.asList("unmatched", "disjoint", "not-related-to"));
+
+	// the translations of each group, keyed by FHIRTerminologyTransform.createKey
+	private static final Map<String, Map<String, TransformCode>> groups = new ConcurrentHashMap<>();
+
+	// the translations of the ConceptMaps in 'mdmi.terminology.conceptmaps.dir', for all the groups
+	private static volatile Map<String, TransformCode> shared = Collections.emptyMap();
+
+	private ConceptMapIndex() {
+	}
+
+	/**
+	 * @param groupNames
+	 *            The map groups of the transfer, their ConceptMaps are looked at in that order, then the shared ones.
+	 * @return the translation of the code, BLANK if a ConceptMap has the code but no translation, or null if no
+	 *         ConceptMap has it
+	 */
+	public static TransformCode get(Collection<String> groupNames, String source, String code, String target) {
+		if (code == null || (groups.isEmpty() && shared.isEmpty())) {
+			return null;
+		}
+		String key = FHIRTerminologyTransform.createKey(source, code, target);
+		for (String groupName : groupNames) {
+			Map<String, TransformCode> index = groups.get(groupName);
+			TransformCode translation = index != null
+					? index.get(key)
+					: null;
+			if (translation != null) {
+				return translation;
+			}
+		}
+		return shared.get(key);
+	}
+
+	/**
+	 * @return the number of indexed translations, of all the groups and the shared ones
+	 */
+	public static int size() {
+		int size = shared.size();
+		for (Map<String, TransformCode> index : groups.values()) {
+			size += index.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Read the ConceptMaps of the map group, replacing those read before for it, and the shared ConceptMaps.
+	 *
+	 * @param groupName
+	 *            The map group name.
+	 * @param mapFileName
+	 *            The map file the group was read from, or null.
+	 */
+	public static void preload(String groupName, String mapFileName) {
+		String dir = System.getProperty(PARAM_DIR);
+		List<File> sharedFiles = StringUtils.isEmpty(dir)
+				? Collections.emptyList()
+				: jsonFiles(new File(dir));
+		Map<String, TransformCode> sharedIndex = read(sharedFiles);
+		shared = Collections.unmodifiableMap(sharedIndex);
+		if (!sharedFiles.isEmpty()) {
+			logger.debug("Indexed " + sharedIndex.size() + " codes from " + sharedFiles.size() + " shared file(s)");
+		}
+
+		List<File> files = new ArrayList<>();
+		if (mapFileName != null) {
+			File mapFile = new File(mapFileName);
+			String name = mapFile.getName();
+			int dot = name.lastIndexOf('.');
+			files.addAll(jsonFiles(new File(mapFile.getAbsoluteFile().getParentFile(), (dot > 0
+					? name.substring(0, dot)
+					: name) + EXTENSION)));
+		}
+
+		Map<String, TransformCode> index = read(files);
+		if (index.isEmpty()) {
+			groups.remove(groupName);
+		} else {
+			groups.put(groupName, Collections.unmodifiableMap(index));
+			logger.debug("Indexed " + index.size() + " codes from " + files.size() + " file(s) for " + groupName);
+		}
+	}
+
+	private static Map<String, TransformCode> read(List<File> files) {
+		Map<String, TransformCode> index = new HashMap<>();
+		for (File file : files) {
+			try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+				index(index, (JSONObject) new JSONParser().parse(reader));
+			} catch (Exception e) {
+				logger.error("Unable to read ConceptMap " + file + " " + e.getMessage());
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Index the translations of a ConceptMap, or of the ConceptMaps of a Bundle.
+	 *
+	 * @param index
+	 *            The index to add to.
+	 * @param resource
+	 *            The parsed ConceptMap or Bundle.
+	 */
+	static void index(Map<String, TransformCode> index, JSONObject resource) {
+		if (resource == null) {
+			return;
+		}
+		if ("Bundle".equals(resource.get("resourceType"))) {
+			for (Object entry : array(resource, "entry")) {
+				index(index, (JSONObject) ((JSONObject) entry).get("resource"));
+			}
+			return;
+		}
+		if (!"ConceptMap".equals(resource.get("resourceType"))) {
+			return;
+		}
+		String mapSource = first(resource, "sourceUri", "sourceCanonical", "sourceScopeUri", "sourceScopeCanonical");
+		String mapTarget = first(resource, "targetUri", "targetCanonical", "targetScopeUri", "targetScopeCanonical");
+		for (Object g : array(resource, "group")) {
+			JSONObject group = (JSONObject) g;
+			String groupSource = (String) group.get("source");
+			String groupTarget = (String) group.get("target");
+			Set<String> sources = uris(groupSource, mapSource);
+			Set<String> targets = uris(groupTarget, mapTarget);
+			for (Object e : array(group, "element")) {
+				JSONObject element = (JSONObject) e;
+				String code = (String) element.get("code");
+				if (StringUtils.isEmpty(code)) {
+					continue;
+				}
+				TransformCode translation = FHIRTerminologyTransform.BLANK;
+				for (Object t : array(element, "target")) {
+					JSONObject target = (JSONObject) t;
+					String relationship = first(target, "equivalence", "relationship");
+					if (!StringUtils.isEmpty((String) target.get("code")) && !UNMATCHED.contains(relationship)) {
+						translation = new TransformCode(
+							(String) target.get("code"), groupTarget, (String) target.get("display"));
+						break;
+					}
+				}
+				for (String source : sources) {
+					for (String target : targets) {
+						index.putIfAbsent(FHIRTerminologyTransform.createKey(source, code, target), translation);
+					}
+				}
+			}
+		}
+	}
+
+	private static List<File> jsonFiles(File dir) {
+		File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
+		if (files == null) {
+			return Collections.emptyList();
+		}
+		Arrays.sort(files);
+		return Arrays.asList(files);
+	}
+
+	private static JSONArray array(JSONObject object, String name) {
+		Object value = object.get(name);
+		return value instanceof JSONArray
+				? (JSONArray) value
+				: new JSONArray();
+	}
+
+	private static String first(JSONObject object, String... names) {
+		for (String name : names) {
+			if (object.get(name) instanceof String) {
+				return (String) object.get(name);
+			}
+		}
+		return null;
+	}
+
+	private static Set<String> uris(String... uris) {
+		Set<String> set = new LinkedHashSet<>();
+		for (String uri : uris) {
+			if (!StringUtils.isEmpty(uri)) {
+				set.add(uri);
+			}
+		}
+		return set;
+	}
+
+} // ConceptMapIndex
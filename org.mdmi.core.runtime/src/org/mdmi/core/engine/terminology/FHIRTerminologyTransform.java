@@ -11,25 +11,36 @@
  *******************************************************************************/
 package org.mdmi.core.engine.terminology;
 
-import java.util.Base64;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.hc.client5.http.classic.methods.HttpPost;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.core5.http.ContentType;
-import org.apache.hc.core5.http.HttpHeaders;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
-import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import org.mdmi.core.engine.ITerminologyTransform;
+import org.mdmi.core.engine.terminology.TerminologyClient.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,6 +50,12 @@ import org.slf4j.LoggerFactory;
  */
 public class FHIRTerminologyTransform implements ITerminologyTransform {
 
+	public static TransformCode BLANK = new TransformCode("", "", "");
+
+	/**
+	 * @deprecated the transforms are kept in {@link FHIRTerminologyTransform#cache}, see {@link TerminologyCache}
+	 */
+	@Deprecated
 	public static class CodeHashMap extends LinkedHashMap<String, TransformCode> {
 
 		private static final int MAX_ENTRIES = 100000;
@@ -54,14 +71,126 @@ public class FHIRTerminologyTransform implements ITerminologyTransform {
 		 * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
 		 */
 		@Override
-		protected boolean removeEldestEntry(Entry eldest) {
+		protected boolean removeEldestEntry(Entry<String, TransformCode> eldest) {
 			return size() > MAX_ENTRIES;
 		}
 	}
 
-	public static TransformCode BLANK = new TransformCode("", "", "");
+	/**
+	 * {@link FHIRTerminologyTransform#cache} seen as a CodeHashMap, for the callers that fill or look up the
+	 * transforms by key; it cannot be iterated
+	 */
+	@SuppressWarnings("deprecation")
+	private static final class CacheView extends CodeHashMap {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public TransformCode get(Object key) {
+			return key instanceof String
+					? cache.get((String) key)
+					: null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof String && cache.containsKey((String) key);
+		}
+
+		@Override
+		public TransformCode put(String key, TransformCode value) {
+			return cache.put(key, value);
+		}
+
+		@Override
+		public void putAll(Map<? extends String, ? extends TransformCode> values) {
+			values.forEach(cache::put);
+		}
+
+		@Override
+		public TransformCode remove(Object key) {
+			return key instanceof String
+					? cache.remove((String) key)
+					: null;
+		}
+
+		@Override
+		public int size() {
+			return cache.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return cache.isEmpty();
+		}
+
+		@Override
+		public void clear() {
+			cache.clear();
+		}
+
+		@Override
+		public Set<String> keySet() {
+			throw new UnsupportedOperationException("The terminology cache cannot be iterated");
+		}
+
+		@Override
+		public Collection<TransformCode> values() {
+			throw new UnsupportedOperationException("The terminology cache cannot be iterated");
+		}
+
+		@Override
+		public Set<Entry<String, TransformCode>> entrySet() {
+			throw new UnsupportedOperationException("The terminology cache cannot be iterated");
+		}
+
+		@Override
+		public String toString() {
+			return cache.toString();
+		}
+	}
+
+	/**
+	 * The transforms, shared by all the instances, see {@link TerminologyCache} for the size and expiry settings
+	 */
+	public static final TerminologyCache cache = new TerminologyCache();
+
+	/**
+	 * @deprecated use {@link FHIRTerminologyTransform#cache}; this map reads and writes it, but cannot be iterated
+	 */
+	@Deprecated
+	public static final CodeHashMap codeValues = new CacheView();
+
+	/**
+	 * Translate the codes of a message up front, see {@link #prefetch(Collection)}
+	 */
+	public static final String PARAM_BATCH = "mdmi.terminology.batch";
+
+	/**
+	 * The most codes translated by one batch Bundle
+	 */
+	public static final String PARAM_BATCH_SIZE = "mdmi.terminology.batch.size";
+
+	/**
+	 * The most concurrent requests when the server does not take batch Bundles
+	 */
+	public static final String PARAM_BATCH_THREADS = "mdmi.terminology.batch.threads";
 
-	public static CodeHashMap codeValues = new CodeHashMap();
+	/**
+	 * What a lookup returns while the circuit breaker of the server is open, see {@link DegradedMode}
+	 */
+	public static final String PARAM_DEGRADED = "mdmi.terminology.degraded";
+
+	/**
+	 * How codes are converted while the terminology server is unhealthy, that is while its {@link CircuitBreaker} is
+	 * open; the lookups then return at once without asking the server, and their result is not cached
+	 */
+	public enum DegradedMode {
+		/** The value keeps its code, code system and display name, as the map has them */
+		PASSTHROUGH,
+		/** The value keeps its code but loses its code system and display name, as when a lookup fails */
+		FAILED
+	}
 
 	// public static String DEFALUTURL = "http://ec2-18-188-214-103.us-east-2.compute.amazonaws.com:8080/fhir";
 
@@ -73,14 +202,117 @@ public class FHIRTerminologyTransform implements ITerminologyTransform {
 
 	public static boolean processTerminology = false;
 
+	public static boolean batchTerminology = Boolean.getBoolean(PARAM_BATCH);
+
+	public static DegradedMode degradedMode = "failed".equalsIgnoreCase(System.getProperty(PARAM_DEGRADED))
+			? DegradedMode.FAILED
+			: DegradedMode.PASSTHROUGH;
+
+	private static final int batchSize = Math.max(1, Integer.getInteger(PARAM_BATCH_SIZE, 500));
+
+	// set when the server turned down a batch Bundle, the codes are then translated by concurrent requests
+	private static volatile boolean batchUnsupported = false;
+
+	private static ExecutorService executor;
+
+	/**
+	 * The lookups sent to the server and not answered yet; a thread that misses the cache on a code another thread is
+	 * already translating waits for that answer instead of asking again
+	 */
+	private static final Map<String, CompletableFuture<TransformCode>> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * Marks a lookup the circuit breaker refused, which is not cached; the threads waiting on it get the
+	 * {@link DegradedMode} result, while those waiting on a lookup that has no result, null, keep the code
+	 */
+	private static final TransformCode OPEN = new TransformCode("", "", "");
+
+	// closes the store open at exit, registered with the first store
+	private static Thread closeHook;
+
+	/**
+	 * The results kept on disk, if 'mdmi.terminology.cache.file' is set, see {@link TerminologyStore}
+	 */
+	private static volatile TerminologyStore store = openStore(System.getProperty(TerminologyStore.PARAM_FILE));
+
 	private static String userName = "";
 
+	/**
+	 * A code to translate from a code system to another
+	 */
+	public static final class Lookup {
+		public final String source;
+
+		public final String code;
+
+		public final String target;
+
+		public Lookup(String source, String code, String target) {
+			this.source = source;
+			this.code = code;
+			this.target = target;
+		}
+
+		String key() {
+			return createKey(source, code, target);
+		}
+	}
+
 	public static String createKey(String source, String code, String target) {
 		return source + "_X_" + code + "_Y_" + target + "_Z_";
 	}
 
 	public static void setFHIRTerminologyURL(String url) {
+		if (!Objects.equals(url, fhirTerminologyURL)) {
+			// the pooled connections are to the previous server
+			TerminologyClient.close();
+		}
 		fhirTerminologyURL = url;
+		batchUnsupported = false;
+	}
+
+	/**
+	 * @return the circuit breaker of the terminology server, null if there is no server
+	 */
+	public static CircuitBreaker getCircuitBreaker() {
+		return StringUtils.isEmpty(fhirTerminologyURL)
+				? null
+				: CircuitBreaker.get(fhirTerminologyURL);
+	}
+
+	/**
+	 * Keep the results in the file, and read those it has into the cache; the previous file is closed.
+	 *
+	 * @param file
+	 *            The store file, or null to not keep the results.
+	 */
+	public static synchronized void setCacheFile(String file) {
+		if (store != null) {
+			store.close();
+		}
+		store = openStore(file);
+	}
+
+	private static TerminologyStore openStore(String file) {
+		if (StringUtils.isEmpty(file)) {
+			return null;
+		}
+		try {
+			TerminologyStore opened = new TerminologyStore(Paths.get(file), cache);
+			if (closeHook == null) {
+				closeHook = new Thread(() -> {
+					TerminologyStore current = store;
+					if (current != null) {
+						current.close();
+					}
+				}, "mdmi-terminology-store-close");
+				Runtime.getRuntime().addShutdownHook(closeHook);
+			}
+			return opened;
+		} catch (Exception e) {
+			logger.error("Unable to open terminology store " + file + " " + e.getMessage());
+			return null;
+		}
 	}
 
 	/**
@@ -99,6 +331,9 @@ public class FHIRTerminologyTransform implements ITerminologyTransform {
 		FHIRTerminologyTransform.userName = userName;
 	}
 
+	// the map groups of the transfer, whose local ConceptMaps translate the codes
+	private List<String> groups = Collections.emptyList();
+
 	/**
 	*
 	*/
@@ -106,6 +341,15 @@ public class FHIRTerminologyTransform implements ITerminologyTransform {
 		super();
 	}
 
+	/**
+	 * @param groupNames
+	 *            The map groups of the transfer, the codes are translated with their ConceptMaps, see
+	 *            {@link ConceptMapIndex}.
+	 */
+	public void setGroups(String... groupNames) {
+		groups = Arrays.asList(groupNames);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -120,146 +364,412 @@ public class FHIRTerminologyTransform implements ITerminologyTransform {
 		}
 		logger.debug("Transform from " + code + " from " + source + " to " + target);
 
-		if (processTerminology && !StringUtils.isEmpty(target) && !StringUtils.isEmpty(code) &&
-				!StringUtils.isEmpty(source) && !StringUtils.isEmpty(fhirTerminologyURL)) {
-			try {
-				String key = createKey(source, code, target);
-				if (codeValues.containsKey(key)) {
-					return codeValues.get(key);
-				} else {
-					return translate(source, code, target);
-				}
-			} catch (Exception e) {
-				logger.error(e.getLocalizedMessage());
+		TransformCode mapped = ConceptMapIndex.get(groups, source, code, target);
+		if (mapped != null) {
+			return mapped;
+		}
 
+		if (isTranslated(source, code, target)) {
+			String key = createKey(source, code, target);
+			TransformCode cached = cache.get(key);
+			if (cached == TerminologyCache.FAILED) {
+				return new TransformCode(code, "", "");
+			}
+			if (cached != null) {
+				return cached;
+			}
+			CompletableFuture<TransformCode> flight = inFlight.putIfAbsent(key, new CompletableFuture<>());
+			TransformCode tc = flight != null
+					? await(flight, key)
+					: fetch(new Lookup(source, code, target));
+			if (tc == OPEN) {
+				// the circuit breaker refused the lookup, it did not wait on the server
+				return degraded(code);
 			}
+			if (tc != null && tc != TerminologyCache.FAILED) {
+				return tc;
+			}
+			return new TransformCode(code, "", "");
 		}
 
 		/**
 		 * Unfortunate hack to support terminology without a terminology server
 		 * if not processTerminology but cache has been populated - we are not using server
 		 */
-		if (!processTerminology && !codeValues.isEmpty()) {
-			String key = createKey(source, code, target);
-			if (codeValues.containsKey(key)) {
-				return codeValues.get(key);
-			} else {
-				return BLANK;
-			}
-
+		if (!processTerminology && !cache.isEmpty()) {
+			TransformCode cached = cache.get(createKey(source, code, target));
+			return cached != null
+					? cached
+					: BLANK;
 		}
 		return new TransformCode(code, "", "");
 
 	}
 
-	private TransformCode translate(String source, String code, String target) throws Exception {
+	// the lookup of another thread, as failed if it takes longer than a lookup may take
+	private static TransformCode await(CompletableFuture<TransformCode> flight, String key) {
+		try {
+			return flight.get(TerminologyClient.deadline, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			logger.warn("Terminology lookup " + key + " not answered in " + TerminologyClient.deadline + " ms");
+		}
+		return TerminologyCache.FAILED;
+	}
 
-		try (CloseableHttpClient httpclient = HttpClients.createDefault()) {
+	private static TransformCode degraded(String code) {
+		return degradedMode == DegradedMode.FAILED
+				? new TransformCode(code, "", "")
+				: BLANK;
+	}
 
-			logger.trace("Start translate " + source + "  " + code + "  to " + target);
+	// true if the code goes to the terminology server
+	private static boolean isTranslated(String source, String code, String target) {
+		return processTerminology && !StringUtils.isEmpty(target) && !StringUtils.isEmpty(code) &&
+				!StringUtils.isEmpty(source) && !StringUtils.isEmpty(fhirTerminologyURL);
+	}
 
-			if (StringUtils.isEmpty(source)) {
-				throw new Exception("SOURCE IS NULL");
+	/**
+	 * Translate the codes that are not cached yet, nor in the local ConceptMaps, so the transforms of a message do not
+	 * each wait on the server.
+	 *
+	 * The distinct codes go in FHIR batch Bundles of $translate requests, 'mdmi.terminology.batch.size' (default 500)
+	 * codes each; if the server does not take the Bundle, the codes are translated by at most
+	 * 'mdmi.terminology.batch.threads' (default 4) concurrent requests instead. The results are cached like those of
+	 * {@link #transform(String, String, String)}, which then finds them. Nothing is translated while the circuit
+	 * breaker of the server is open.
+	 *
+	 * @param lookups
+	 *            The codes to translate.
+	 * @return the number of codes translated
+	 */
+	public int prefetch(Collection<Lookup> lookups) {
+		if (StringUtils.isEmpty(fhirTerminologyURL) || CircuitBreaker.get(fhirTerminologyURL).isOpen()) {
+			return 0;
+		}
+		// the codes not cached, nor being translated by another thread, and the lookups claimed for them
+		Map<String, Lookup> misses = new LinkedHashMap<>();
+		Map<String, CompletableFuture<TransformCode>> claims = new HashMap<>();
+		for (Lookup lookup : lookups) {
+			String key = lookup.key();
+			// a code to the same code system is not translated, see transform
+			if (isTranslated(lookup.source, lookup.code, lookup.target) && !lookup.source.equals(lookup.target) &&
+					!misses.containsKey(key) && !cache.containsKey(key) &&
+					ConceptMapIndex.get(groups, lookup.source, lookup.code, lookup.target) == null) {
+				CompletableFuture<TransformCode> claim = new CompletableFuture<>();
+				if (inFlight.putIfAbsent(key, claim) == null) {
+					misses.put(key, lookup);
+					claims.put(key, claim);
+				}
 			}
-
-			if (StringUtils.isEmpty(target)) {
-				throw new Exception("TARGET IS NULL");
+		}
+		if (misses.isEmpty()) {
+			return 0;
+		}
+		try {
+			return prefetch(new ArrayList<>(misses.values()), lookups.size());
+		} finally {
+			// whatever was not translated, the threads waiting on it go on without it and keep the code; a lookup
+			// another thread claimed since is left to it
+			for (Entry<String, CompletableFuture<TransformCode>> claim : claims.entrySet()) {
+				if (inFlight.remove(claim.getKey(), claim.getValue())) {
+					claim.getValue().complete(null);
+				}
 			}
+		}
+	}
 
-			if (StringUtils.isEmpty(code)) {
-				throw new Exception("CODE IS NULL");
+	private int prefetch(List<Lookup> pending, int count) {
+		logger.debug("Prefetch " + pending.size() + " of " + count + " codes");
+
+		List<Lookup> failed = new ArrayList<>();
+		if (pending.size() == 1 || batchUnsupported) {
+			failed = pending;
+		} else {
+			List<List<Lookup>> batches = new ArrayList<>();
+			for (int i = 0; i < pending.size(); i += batchSize) {
+				batches.add(pending.subList(i, Math.min(pending.size(), i + batchSize)));
 			}
+			if (batches.size() == 1) {
+				failed.addAll(translateBatch(batches.get(0)));
+			} else {
+				List<Future<List<Lookup>>> results = new ArrayList<>();
+				for (List<Lookup> batch : batches) {
+					results.add(executor().submit(() -> translateBatch(batch)));
+				}
+				for (Future<List<Lookup>> result : results) {
+					try {
+						failed.addAll(result.get());
+					} catch (Exception e) {
+						logger.error(e.getLocalizedMessage());
+					}
+				}
+			}
+		}
 
-			String jsonInputString = "{\r\n" + "\"resourceType\": \"Parameters\",\r\n" + "\"id\": \"example\",\r\n" +
-					"\"parameter\": [\r\n" + "	{\r\n" + "		\"name\": \"source\",\r\n" + "		\"valueUri\": \"" +
-					source + "\"\r\n" + "	},\r\n" + "	{\r\n" + "		\"name\": \"target\",\r\n" +
-					"		\"valueUri\": \"" + target + "\"\r\n" + "	},\r\n" + "	{\r\n" +
-					"		\"name\": \"code\",\r\n" + "		\"valueString\": \"" + code + "\"\r\n" + "	}\r\n" +
-					"]\r\n" + "}";
+		// one request per code for what the batch did not translate
+		List<Future<?>> results = new ArrayList<>();
+		for (Lookup lookup : failed) {
+			results.add(executor().submit(() -> fetch(lookup)));
+		}
+		for (Future<?> result : results) {
+			try {
+				result.get();
+			} catch (Exception e) {
+				logger.error(e.getLocalizedMessage());
+			}
+		}
+		return pending.size();
+	}
 
-			StringEntity entity = new StringEntity(jsonInputString, ContentType.APPLICATION_JSON);
+	// daemon threads that end after a minute without a prefetch, so the pool needs no shut down
+	private static synchronized ExecutorService executor() {
+		if (executor == null) {
+			int threads = Math.max(1, Integer.getInteger(PARAM_BATCH_THREADS, 4));
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(
+				threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "mdmi-terminology");
+					thread.setDaemon(true);
+					return thread;
+				});
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+		}
+		return executor;
+	}
 
-			logger.trace("URL translate " + fhirTerminologyURL + "/ConceptMap/$translate");
-			HttpPost request = new HttpPost(fhirTerminologyURL + "/ConceptMap/$translate");
+	/**
+	 * Translate the codes with one batch Bundle.
+	 *
+	 * @return the codes the batch did not translate, all of them if the server did not take the Bundle
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Lookup> translateBatch(List<Lookup> lookups) {
+		JSONArray entries = new JSONArray();
+		for (Lookup lookup : lookups) {
+			JSONObject request = new JSONObject();
+			request.put("method", "POST");
+			request.put("url", "ConceptMap/$translate");
+			JSONObject entry = new JSONObject();
+			entry.put("resource", parameters(lookup.source, lookup.code, lookup.target));
+			entry.put("request", request);
+			entries.add(entry);
+		}
+		JSONObject bundle = new JSONObject();
+		bundle.put("resourceType", "Bundle");
+		bundle.put("type", "batch");
+		bundle.put("entry", entries);
+
+		JSONArray responses;
+		try {
+			logger.trace("URL batch " + fhirTerminologyURL);
+			Response response = TerminologyClient.post(fhirTerminologyURL, bundle.toJSONString(), userName, password);
+			if (response.code >= 300) {
+				if (response.code < 500) {
+					batchUnsupported = true;
+				}
+				throw new Exception(
+					"Terminology server " + response.code + " " + response.reasonPhrase + " for batch");
+			}
+			responses = (JSONArray) ((JSONObject) new JSONParser().parse(response.body)).get("entry");
+		} catch (Exception e) {
+			logger.warn("Batch translate failed, translating " + lookups.size() + " codes one by one " + e);
+			return lookups;
+		}
 
-			if (!StringUtils.isEmpty(userName) && !StringUtils.isEmpty(password)) {
-				String encoding = Base64.getEncoder().encodeToString((userName + ":" + password).getBytes());
-				request.setHeader(HttpHeaders.AUTHORIZATION, "Basic " + encoding);
+		// the response entries are in the order of the request entries
+		List<Lookup> failed = new ArrayList<>();
+		for (int i = 0; i < lookups.size(); i++) {
+			Lookup lookup = lookups.get(i);
+			JSONObject entry = responses != null && i < responses.size()
+					? (JSONObject) responses.get(i)
+					: null;
+			if (entry == null) {
+				failed.add(lookup);
+				continue;
+			}
+			JSONObject response = (JSONObject) entry.get("response");
+			String status = response != null
+					? (String) response.get("status")
+					: null;
+			if (status == null || !status.startsWith("2")) {
+				logger.error(
+					"Terminology server " + status + " for " + lookup.source + "::" + lookup.code + " to " +
+							lookup.target);
+				resolve(lookup.key(), TerminologyCache.FAILED);
+				continue;
 			}
+			resolve(lookup.key(), transformCode((JSONObject) entry.get("resource"), lookup.key()));
+		}
+		return failed;
+	}
 
-			request.setEntity(entity);
+	@SuppressWarnings("unchecked")
+	private static JSONObject parameters(String source, String code, String target) {
+		JSONArray parameter = new JSONArray();
+		String[][] values = { { "source", "valueUri", source }, { "target", "valueUri", target },
+				{ "code", "valueString", code } };
+		for (String[] value : values) {
+			JSONObject p = new JSONObject();
+			p.put("name", value[0]);
+			p.put(value[1], value[2]);
+			parameter.add(p);
+		}
+		JSONObject parameters = new JSONObject();
+		parameters.put("resourceType", "Parameters");
+		parameters.put("parameter", parameter);
+		return parameters;
+	}
 
-			logger.trace("httpclient execute request");
-			CloseableHttpResponse response = httpclient.execute(request);
+	/**
+	 * Translate the code this thread claimed in {@link #inFlight}, then cache and hand out the result.
+	 */
+	private TransformCode fetch(Lookup lookup) {
+		String key = lookup.key();
+		TransformCode tc;
+		if (cache.containsKey(key)) {
+			// translated by another thread since this one missed the cache
+			tc = cache.get(key);
+		} else {
+			try {
+				tc = translate(lookup.source, lookup.code, lookup.target);
+			} catch (CircuitBreaker.OpenException e) {
+				// not a failure of the code, it is asked again once the breaker closes
+				logger.debug(e.getMessage());
+				tc = OPEN;
+			} catch (Exception e) {
+				logger.error(e.getLocalizedMessage());
+				// do not ask again for every occurrence of the code while the server is failing
+				tc = TerminologyCache.FAILED;
+			}
+		}
+		resolve(key, tc);
+		return tc;
+	}
 
-			logger.trace("httpclient execute request " + response.getCode());
-			logger.trace("httpclient execute request " + response.getReasonPhrase());
+	// cache the result of a lookup, null if there is none, and wake the threads waiting on it
+	private static void resolve(String key, TransformCode tc) {
+		if (tc != null && tc != OPEN) {
+			cache.put(key, tc);
+			TerminologyStore current = store;
+			if (current != null) {
+				current.put(key, tc);
+			}
+		}
+		CompletableFuture<TransformCode> flight = inFlight.remove(key);
+		if (flight != null) {
+			flight.complete(tc);
+		}
+	}
 
-			String json = EntityUtils.toString(response.getEntity(), "UTF-8");
+	private TransformCode translate(String source, String code, String target) throws Exception {
 
-			JSONParser parser = new JSONParser();
-			String key = createKey(source, code, target);
-			try {
+		logger.trace("Start translate " + source + "  " + code + "  to " + target);
+
+		if (StringUtils.isEmpty(source)) {
+			throw new Exception("SOURCE IS NULL");
+		}
 
-				JSONObject jsonObject = (JSONObject) parser.parse(json);
+		if (StringUtils.isEmpty(target)) {
+			throw new Exception("TARGET IS NULL");
+		}
 
-				logger.trace("URL response " + jsonObject.toJSONString());
+		if (StringUtils.isEmpty(code)) {
+			throw new Exception("CODE IS NULL");
+		}
 
-				JSONArray msg = (JSONArray) jsonObject.get("parameter");
+		String jsonInputString = "{\r\n" + "\"resourceType\": \"Parameters\",\r\n" + "\"id\": \"example\",\r\n" +
+				"\"parameter\": [\r\n" + "	{\r\n" + "		\"name\": \"source\",\r\n" + "		\"valueUri\": \"" +
+				source + "\"\r\n" + "	},\r\n" + "	{\r\n" + "		\"name\": \"target\",\r\n" +
+				"		\"valueUri\": \"" + target + "\"\r\n" + "	},\r\n" + "	{\r\n" +
+				"		\"name\": \"code\",\r\n" + "		\"valueString\": \"" + code + "\"\r\n" + "	}\r\n" +
+				"]\r\n" + "}";
 
-				if (msg == null) {
-					logger.trace("Set Blank " + key);
-					codeValues.put(key, BLANK);
-					return BLANK;
-				}
+		logger.trace("URL translate " + fhirTerminologyURL + "/ConceptMap/$translate");
 
-				Iterator<JSONObject> iterator = msg.iterator();
-				while (iterator.hasNext()) {
-					JSONObject p = iterator.next();
-					String name = (String) p.get("name");
+		logger.trace("httpclient execute request");
+		Response response = TerminologyClient.post(
+			fhirTerminologyURL + "/ConceptMap/$translate", jsonInputString, userName, password);
 
-					switch (name) {
-						case "result":
-							Boolean result = (Boolean) p.get("valueBoolean");
+		logger.trace("httpclient execute request " + response.code);
+		logger.trace("httpclient execute request " + response.reasonPhrase);
 
-							if (!result) {
-								logger.trace("Unable to transform from " + source + "::" + code + " to " + target);
-							}
-							break;
-						case "match":
-							JSONArray partArray = (JSONArray) p.get("part");
-							Iterator<JSONObject> partIterator = partArray.iterator();
-							while (partIterator.hasNext()) {
-								JSONObject part = partIterator.next();
-								String partName = (String) part.get("name");
-								if ("concept".equals(partName)) {
-									JSONObject valueCoding = (JSONObject) part.get("valueCoding");
-									String translatedCode = (String) valueCoding.get("code");
-									if (!StringUtils.isEmpty(translatedCode)) {
-										String translatedSystem = (String) valueCoding.get("system");
-										String translatedDisplay = (String) valueCoding.get("display");
-										TransformCode tc = new TransformCode(
-											translatedCode, translatedSystem, translatedDisplay);
-										codeValues.put(key, tc);
-										logger.trace("Set value " + tc.code + " for " + key);
-										return tc;
-									}
-								}
-							}
-							break;
-					}
+		if (response.code >= 300) {
+			throw new Exception(
+				"Terminology server " + response.code + " " + response.reasonPhrase + " for " + source + "::" +
+						code + " to " + target);
+		}
 
-				}
+		JSONParser parser = new JSONParser();
+		String key = createKey(source, code, target);
+		TransformCode tc = BLANK;
+		try {
+			tc = transformCode((JSONObject) parser.parse(response.body), key);
+		} catch (ParseException e) {
+			logger.error(e.getMessage());
+		}
+		return tc;
+	}
 
-			} catch (ParseException e) {
-				logger.error(e.getMessage());
-			}
-			codeValues.put(key, BLANK);
+	/**
+	 * @return the translated code of the $translate response, or BLANK if there is none
+	 */
+	private static TransformCode transformCode(JSONObject jsonObject, String key) {
 
+		if (jsonObject == null) {
 			logger.trace("NO TRANSFORM VALUE " + key);
 			return BLANK;
 		}
 
+		logger.trace("URL response " + jsonObject.toJSONString());
+
+		JSONArray msg = (JSONArray) jsonObject.get("parameter");
+
+		if (msg == null) {
+			logger.trace("Set Blank " + key);
+			return BLANK;
+		}
+
+		Iterator<JSONObject> iterator = msg.iterator();
+		while (iterator.hasNext()) {
+			JSONObject p = iterator.next();
+			String name = (String) p.get("name");
+
+			switch (name) {
+				case "result":
+					Boolean result = (Boolean) p.get("valueBoolean");
+
+					if (!result) {
+						logger.trace("Unable to transform " + key);
+					}
+					break;
+				case "match":
+					JSONArray partArray = (JSONArray) p.get("part");
+					Iterator<JSONObject> partIterator = partArray.iterator();
+					while (partIterator.hasNext()) {
+						JSONObject part = partIterator.next();
+						String partName = (String) part.get("name");
+						if ("concept".equals(partName)) {
+							JSONObject valueCoding = (JSONObject) part.get("valueCoding");
+							String translatedCode = (String) valueCoding.get("code");
+							if (!StringUtils.isEmpty(translatedCode)) {
+								String translatedSystem = (String) valueCoding.get("system");
+								String translatedDisplay = (String) valueCoding.get("display");
+								TransformCode tc = new TransformCode(
+									translatedCode, translatedSystem, translatedDisplay);
+								logger.trace("Set value " + tc.code + " for " + key);
+								return tc;
+							}
+						}
+					}
+					break;
+			}
+
+		}
+
+		logger.trace("NO TRANSFORM VALUE " + key);
+		return BLANK;
 	}
 
 }
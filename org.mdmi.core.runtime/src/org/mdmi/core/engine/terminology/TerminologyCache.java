@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.terminology;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mdmi.core.engine.ITerminologyTransform.TransformCode;
+
+/**
+ * Thread safe LRU cache of the terminology transforms, with expiry.
+ *
+ * The cache is split in segments by key hash, each an access ordered LinkedHashMap under its own lock, so threads
+ * translating different codes rarely wait on each other, and each segment evicts its least recently used entry when
+ * full.
+ *
+ * Transforms expire after 'mdmi.terminology.cache.ttl' seconds (0, the default, keeps them until evicted). Negative
+ * results, codes the server has no translation for and failed lookups, are cached too, for the shorter
+ * 'mdmi.terminology.cache.negative.ttl' seconds (default 300), so an unmapped code does not go to the server on every
+ * occurrence. At most 'mdmi.terminology.cache.size' transforms (default 100000) are kept.
+ */
+public final class TerminologyCache {
+
+	public static final String PARAM_SIZE = "mdmi.terminology.cache.size";
+
+	public static final String PARAM_TTL = "mdmi.terminology.cache.ttl";
+
+	public static final String PARAM_NEGATIVE_TTL = "mdmi.terminology.cache.negative.ttl";
+
+	private static final int SEGMENTS = 16;
+
+	/**
+	 * Marks a failed lookup; the caller falls back as if there were no server until it expires
+	 */
+	public static final TransformCode FAILED = new TransformCode("", "", "");
+
+	/**
+	 * A cached transform and when it expires, in System.nanoTime, or Long.MAX_VALUE
+	 */
+	private static final class Entry {
+		final TransformCode code;
+
+		final long expires;
+
+		Entry(TransformCode code, long expires) {
+			this.code = code;
+			this.expires = expires;
+		}
+	}
+
+	private final class Segment extends LinkedHashMap<String, Entry> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			if (size() > capacity) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	private final long ttl;
+
+	private final long negativeTtl;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder negativeHits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	private final LongAdder expirations = new LongAdder();
+
+	/**
+	 * A cache configured by the system properties
+	 */
+	public TerminologyCache() {
+		this(
+			Integer.getInteger(PARAM_SIZE, 100000), Long.getLong(PARAM_TTL, 0),
+			Long.getLong(PARAM_NEGATIVE_TTL, 300), TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @param size
+	 *            The most transforms kept.
+	 * @param ttl
+	 *            How long transforms are kept, 0 for as long as they are not evicted.
+	 * @param negativeTtl
+	 *            How long negative results are kept, 0 for as long as they are not evicted.
+	 * @param unit
+	 *            The unit of ttl and negativeTtl.
+	 */
+	public TerminologyCache(int size, long ttl, long negativeTtl, TimeUnit unit) {
+		int capacity = Math.max(1, (size + SEGMENTS - 1) / SEGMENTS);
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(capacity);
+		}
+		this.ttl = unit.toNanos(ttl);
+		this.negativeTtl = unit.toNanos(negativeTtl);
+	}
+
+	private Segment segment(String key) {
+		int h = key.hashCode();
+		return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+	}
+
+	/**
+	 * @return the cached transform, {@link FHIRTerminologyTransform#BLANK} if there is none, {@link #FAILED} if the
+	 *         lookup failed, or null if the key is not cached or expired
+	 */
+	public TransformCode get(String key) {
+		Segment segment = segment(key);
+		Entry entry;
+		synchronized (segment) {
+			entry = segment.get(key);
+			if (entry != null && entry.expires - System.nanoTime() < 0) {
+				segment.remove(key);
+				expirations.increment();
+				entry = null;
+			}
+		}
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+		if (isNegative(entry.code)) {
+			negativeHits.increment();
+		} else {
+			hits.increment();
+		}
+		return entry.code;
+	}
+
+	/**
+	 * @return true if the key is cached and did not expire; does not count as a hit or a miss
+	 */
+	public boolean containsKey(String key) {
+		Segment segment = segment(key);
+		synchronized (segment) {
+			Entry entry = segment.get(key);
+			return entry != null && entry.expires - System.nanoTime() >= 0;
+		}
+	}
+
+	/**
+	 * Cache the transform of the key. Negative results, {@link FHIRTerminologyTransform#BLANK} and {@link #FAILED},
+	 * expire sooner.
+	 *
+	 * @return the transform the key had, or null if it was not cached or expired
+	 */
+	public TransformCode put(String key, TransformCode code) {
+		long lifetime = lifetime(code);
+		return put(
+			key, code, lifetime > 0
+					? System.nanoTime() + lifetime
+					: Long.MAX_VALUE);
+	}
+
+	/**
+	 * Cache the transform of the key until the given System.nanoTime, or Long.MAX_VALUE
+	 */
+	TransformCode put(String key, TransformCode code, long expires) {
+		Segment segment = segment(key);
+		synchronized (segment) {
+			return live(segment.put(key, new Entry(code, expires)));
+		}
+	}
+
+	/**
+	 * @return the transform the key had, or null if it was not cached or expired
+	 */
+	public TransformCode remove(String key) {
+		Segment segment = segment(key);
+		synchronized (segment) {
+			return live(segment.remove(key));
+		}
+	}
+
+	private static TransformCode live(Entry entry) {
+		return entry != null && entry.expires - System.nanoTime() >= 0
+				? entry.code
+				: null;
+	}
+
+	/**
+	 * @return how long the transform is kept, in nanoseconds, 0 for as long as it is not evicted
+	 */
+	long lifetime(TransformCode code) {
+		return isNegative(code)
+				? negativeTtl
+				: ttl;
+	}
+
+	private static boolean isNegative(TransformCode code) {
+		return code == FHIRTerminologyTransform.BLANK || code == FAILED;
+	}
+
+	/**
+	 * @return the number of cached transforms, expired ones included until they are looked up
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getNegativeHits() {
+		return negativeHits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getExpirations() {
+		return expirations.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "TerminologyCache size=" + size() + " hits=" + getHits() + " negativeHits=" + getNegativeHits() +
+				" misses=" + getMisses() + " evictions=" + getEvictions() + " expirations=" + getExpirations();
+	}
+
+} // TerminologyCache
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.terminology;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The HTTP client of the terminology server, shared by all the lookups.
+ *
+ * The connections are pooled and kept alive, so a lookup does not pay for a new TCP and TLS handshake. At most
+ * 'mdmi.terminology.max.connections' (default 20) connections are open; a connection idle for 30 seconds is closed.
+ * A lookup gives up when the connection is not made in 'mdmi.terminology.connect.timeout' milliseconds (default
+ * 5000), when the server does not answer in 'mdmi.terminology.read.timeout' milliseconds (default 30000), and when no
+ * pooled connection is free in 'mdmi.terminology.request.timeout' milliseconds (default 10000). Whatever the server
+ * does, a lookup is cancelled after 'mdmi.terminology.deadline' milliseconds (default 15000).
+ *
+ * Each lookup goes through the {@link CircuitBreaker} of the endpoint; a lookup the breaker refuses fails at once with
+ * {@link CircuitBreaker.OpenException}. Failed lookups, server errors and lookups past the deadline count as failures.
+ */
+final class TerminologyClient {
+
+	private static Logger logger = LoggerFactory.getLogger(TerminologyClient.class);
+
+	static final String PARAM_MAX_CONNECTIONS = "mdmi.terminology.max.connections";
+
+	static final String PARAM_CONNECT_TIMEOUT = "mdmi.terminology.connect.timeout";
+
+	static final String PARAM_READ_TIMEOUT = "mdmi.terminology.read.timeout";
+
+	static final String PARAM_REQUEST_TIMEOUT = "mdmi.terminology.request.timeout";
+
+	static final String PARAM_DEADLINE = "mdmi.terminology.deadline";
+
+	// milliseconds a lookup may take, the threads waiting on another thread's lookup wait as long
+	static final long deadline = Long.getLong(PARAM_DEADLINE, 15000);
+
+	// cancels the lookups past their deadline
+	private static final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "mdmi-terminology-deadline");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static CloseableHttpClient httpClient;
+
+	/**
+	 * The status and body of a response, read in full so the connection goes back to the pool
+	 */
+	static final class Response {
+		final int code;
+
+		final String reasonPhrase;
+
+		final String body;
+
+		Response(int code, String reasonPhrase, String body) {
+			this.code = code;
+			this.reasonPhrase = reasonPhrase;
+			this.body = body;
+		}
+	}
+
+	private TerminologyClient() {
+	}
+
+	private static synchronized CloseableHttpClient client() {
+		if (httpClient == null) {
+			int maxConnections = Math.max(1, Integer.getInteger(PARAM_MAX_CONNECTIONS, 20));
+			Timeout readTimeout = Timeout.ofMilliseconds(Long.getLong(PARAM_READ_TIMEOUT, 30000));
+			ConnectionConfig connectionConfig = ConnectionConfig.custom()
+					.setConnectTimeout(Timeout.ofMilliseconds(Long.getLong(PARAM_CONNECT_TIMEOUT, 5000)))
+					.setSocketTimeout(readTimeout)
+					.setValidateAfterInactivity(TimeValue.ofSeconds(2))
+					.build();
+			PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+					.setMaxConnTotal(maxConnections)
+					.setMaxConnPerRoute(maxConnections)
+					.setDefaultConnectionConfig(connectionConfig)
+					.build();
+			RequestConfig requestConfig = RequestConfig.custom()
+					.setConnectionRequestTimeout(Timeout.ofMilliseconds(Long.getLong(PARAM_REQUEST_TIMEOUT, 10000)))
+					.setResponseTimeout(readTimeout)
+					.build();
+			httpClient = HttpClients.custom()
+					.setConnectionManager(connectionManager)
+					.setDefaultRequestConfig(requestConfig)
+					.evictExpiredConnections()
+					.evictIdleConnections(TimeValue.ofSeconds(30))
+					// a 503 is not retried a second later, it counts as a failure of the breaker
+					.disableAutomaticRetries()
+					.build();
+			logger.debug("Terminology client with " + maxConnections + " connections");
+		}
+		return httpClient;
+	}
+
+	/**
+	 * Post the JSON, with basic authentication if there is a user name and password.
+	 *
+	 * @return the response, whatever its status
+	 * @throws CircuitBreaker.OpenException
+	 *             if the breaker of the endpoint is open
+	 */
+	static Response post(String url, String json, String userName, String password) throws IOException {
+		CircuitBreaker breaker = CircuitBreaker.get(url);
+		if (!breaker.allow()) {
+			throw new CircuitBreaker.OpenException(breaker);
+		}
+		HttpPost request = new HttpPost(url);
+
+		if (!StringUtils.isEmpty(userName) && !StringUtils.isEmpty(password)) {
+			String encoding = Base64.getEncoder().encodeToString((userName + ":" + password).getBytes());
+			request.setHeader(HttpHeaders.AUTHORIZATION, "Basic " + encoding);
+		}
+
+		request.setEntity(new StringEntity(json, ContentType.APPLICATION_JSON));
+
+		long start = System.nanoTime();
+		boolean success = false;
+		ScheduledFuture<Boolean> cancel = deadlines.schedule(request::cancel, deadline, TimeUnit.MILLISECONDS);
+		try {
+			Response response = client().execute(
+				request, r -> new Response(r.getCode(), r.getReasonPhrase(), r.getEntity() != null
+						? EntityUtils.toString(r.getEntity(), StandardCharsets.UTF_8)
+						: ""));
+			success = response.code < 500;
+			return response;
+		} finally {
+			cancel.cancel(false);
+			if (request.isCancelled()) {
+				logger.warn("Terminology lookup " + url + " cancelled after " + deadline + " ms");
+			}
+			breaker.record(success, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Close the pooled connections; the next lookup opens new ones.
+	 */
+	static synchronized void close() {
+		if (httpClient != null) {
+			httpClient.close(CloseMode.GRACEFUL);
+			httpClient = null;
+		}
+	}
+
+} // TerminologyClient
@@ -0,0 +1,409 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.terminology;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.mdmi.core.engine.ITerminologyTransform.TransformCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Terminology results kept on disk, so a restarted JVM does not ask the server again for every code.
+ *
+ * The store is an append only log of the results; each record has the key, the time it was written, when it expires
+ * and the transform, with a CRC so a record torn by a crash is dropped. When the store is opened the results that did
+ * not expire are read into the {@link TerminologyCache}, the last record of a key winning, and the log is rewritten
+ * without the stale records when they are most of it. New results are queued and written by a background thread, so
+ * translating a code never waits on the disk; when the queue is full results are dropped, they are only asked again
+ * after a restart.
+ *
+ * Only one store writes a file, the one that holds the lock of its '.lock' file; others only read it.
+ */
+public final class TerminologyStore implements AutoCloseable {
+
+	private static Logger logger = LoggerFactory.getLogger(TerminologyStore.class);
+
+	/**
+	 * The store file; no store if not set
+	 */
+	public static final String PARAM_FILE = "mdmi.terminology.cache.file";
+
+	private static final byte[] MAGIC = { 'M', 'D', 'M', 'I', 'T', 'L', 'O', 'G' };
+
+	private static final int VERSION = 1;
+
+	private static final int QUEUE_SIZE = 10000;
+
+	private static final byte BLANK = 1;
+
+	private static final byte NO_SYSTEM = 2;
+
+	private static final byte NO_DISPLAY = 4;
+
+	/**
+	 * A result as written in the log
+	 */
+	private static final class Record {
+		final String key;
+
+		final TransformCode code;
+
+		final long written;
+
+		// epoch milliseconds, 0 if it does not expire
+		final long expires;
+
+		Record(String key, TransformCode code, long written, long expires) {
+			this.key = key;
+			this.code = code;
+			this.written = written;
+			this.expires = expires;
+		}
+	}
+
+	// marks the end of the queue
+	private static final Record CLOSE = new Record("", null, 0, 0);
+
+	private final Path file;
+
+	private final TerminologyCache cache;
+
+	private final FileChannel lockChannel;
+
+	private final FileLock lock;
+
+	private final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+	private final AtomicLong written = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private DataOutputStream out;
+
+	private volatile Thread writer;
+
+	private boolean closed;
+
+	// the number of records read, stale ones included, and of results that did not expire
+	private long count;
+
+	private int loaded;
+
+	/**
+	 * Open the store and read the results that did not expire into the cache.
+	 *
+	 * @param file
+	 *            The store file, created if it does not exist.
+	 * @param cache
+	 *            The cache to warm and write through.
+	 */
+	public TerminologyStore(Path file, TerminologyCache cache) throws IOException {
+		this.file = file;
+		this.cache = cache;
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		lockChannel = FileChannel.open(
+			file.resolveSibling(file.getFileName() + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		FileLock fileLock;
+		try {
+			fileLock = lockChannel.tryLock();
+		} catch (IOException | OverlappingFileLockException e) {
+			// locked by another store of this JVM
+			fileLock = null;
+		}
+		lock = fileLock;
+
+		Map<String, Record> records = new LinkedHashMap<>();
+		long end = read(records);
+		long now = System.currentTimeMillis();
+		records.values().removeIf(record -> record.expires != 0 && record.expires <= now);
+		for (Record record : records.values()) {
+			warm(record, now);
+		}
+		loaded = records.size();
+
+		if (lock == null) {
+			logger.warn("Terminology store " + file + " is locked by another store, it is read only");
+			return;
+		}
+		if (end < 0 || Files.size(file) > end || count > 1000 && loaded * 2L < count) {
+			// a new store, a torn record at the end, or mostly stale records
+			rewrite(records.values());
+		}
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+		writer = new Thread(this::write, "mdmi-terminology-store");
+		writer.setDaemon(true);
+		writer.start();
+		logger.info("Terminology store " + file + ", " + loaded + " results loaded");
+	}
+
+	/**
+	 * Read the records of the log, the last of each key.
+	 *
+	 * @return the end of the last valid record, or -1 if the store is new
+	 */
+	private long read(Map<String, Record> records) throws IOException {
+		if (!Files.exists(file) || Files.size(file) == 0) {
+			return -1;
+		}
+		try (InputStream stream = Files.newInputStream(file)) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(MAGIC, magic) || in.readInt() != VERSION) {
+				throw new IOException(file + " is not a terminology store");
+			}
+			long end = MAGIC.length + 4;
+			CRC32 crc = new CRC32();
+			while (true) {
+				byte[] payload;
+				try {
+					int length = in.readInt();
+					int checksum = in.readInt();
+					if (length <= 0 || length > 1 << 20) {
+						break;
+					}
+					payload = new byte[length];
+					in.readFully(payload);
+					crc.reset();
+					crc.update(payload);
+					if ((int) crc.getValue() != checksum) {
+						break;
+					}
+					end += 8 + length;
+				} catch (EOFException e) {
+					break;
+				}
+				Record record = decode(payload);
+				records.remove(record.key);
+				records.put(record.key, record);
+				count++;
+			}
+			return end;
+		} catch (EOFException e) {
+			// the header was not written in full
+			return -1;
+		}
+	}
+
+	private void warm(Record record, long now) {
+		long lifetime = cache.lifetime(record.code);
+		long expires = lifetime > 0
+				? System.nanoTime() + lifetime
+				: Long.MAX_VALUE;
+		if (record.expires != 0) {
+			expires = Math.min(expires, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(record.expires - now));
+		}
+		cache.put(record.key, record.code, expires);
+	}
+
+	// write the records in a new log and move it in place of the current one
+	private void rewrite(Iterable<Record> records) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + "." + System.nanoTime() + ".tmp");
+		try {
+			try (DataOutputStream rewritten = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW)))) {
+				rewritten.write(MAGIC);
+				rewritten.writeInt(VERSION);
+				for (Record record : records) {
+					append(rewritten, record);
+				}
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		logger.debug("Rewrote terminology store " + file + " from " + count + " to " + loaded + " results");
+	}
+
+	/**
+	 * Queue the result to be written; never blocks.
+	 */
+	public void put(String key, TransformCode code) {
+		if (writer == null || code == TerminologyCache.FAILED) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long lifetime = cache.lifetime(code);
+		Record record = new Record(
+			key, code, now, lifetime > 0
+					? now + TimeUnit.NANOSECONDS.toMillis(lifetime)
+					: 0);
+		if (!queue.offer(record)) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	private void write() {
+		try {
+			while (true) {
+				Record record = queue.take();
+				do {
+					if (record == CLOSE) {
+						out.close();
+						return;
+					}
+					append(out, record);
+					written.incrementAndGet();
+				} while ((record = queue.poll()) != null);
+				out.flush();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			logger.error("Unable to write terminology store " + file + " " + e.getMessage());
+		}
+	}
+
+	private static void append(DataOutputStream out, Record record) throws IOException {
+		byte[] payload = encode(record);
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		out.writeInt(payload.length);
+		out.writeInt((int) crc.getValue());
+		out.write(payload);
+	}
+
+	private static byte[] encode(Record record) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		try (DataOutputStream data = new DataOutputStream(bytes)) {
+			TransformCode code = record.code;
+			byte flags = 0;
+			if (code == FHIRTerminologyTransform.BLANK) {
+				flags |= BLANK;
+			} else {
+				if (code.system == null) {
+					flags |= NO_SYSTEM;
+				}
+				if (code.displayName == null) {
+					flags |= NO_DISPLAY;
+				}
+			}
+			data.writeLong(record.written);
+			data.writeLong(record.expires);
+			data.writeUTF(record.key);
+			data.writeByte(flags);
+			if ((flags & BLANK) == 0) {
+				data.writeUTF(code.code);
+				data.writeUTF(code.system != null
+						? code.system
+						: "");
+				data.writeUTF(code.displayName != null
+						? code.displayName
+						: "");
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Record decode(byte[] payload) throws IOException {
+		DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+		long written = data.readLong();
+		long expires = data.readLong();
+		String key = data.readUTF();
+		byte flags = data.readByte();
+		TransformCode code = FHIRTerminologyTransform.BLANK;
+		if ((flags & BLANK) == 0) {
+			String value = data.readUTF();
+			String system = data.readUTF();
+			String display = data.readUTF();
+			code = new TransformCode(
+				value, (flags & NO_SYSTEM) != 0
+						? null
+						: system,
+				(flags & NO_DISPLAY) != 0
+						? null
+						: display);
+		}
+		return new Record(key, code, written, expires);
+	}
+
+	/**
+	 * @return the number of results read when the store was opened
+	 */
+	public int getLoaded() {
+		return loaded;
+	}
+
+	public long getWritten() {
+		return written.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Write the queued results and close the store; waits at most 10 seconds for the writer, and not at all if it
+	 * stopped on an error.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (writer != null) {
+				long wait = TimeUnit.SECONDS.toMillis(10);
+				if (writer.isAlive() && queue.offer(CLOSE, wait, TimeUnit.MILLISECONDS)) {
+					writer.join(wait);
+				} else {
+					logger.warn("Terminology store " + file + " closed with " + queue.size() + " results not written");
+				}
+				writer = null;
+			}
+			if (lock != null) {
+				lock.release();
+			}
+			lockChannel.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			logger.error("Unable to close terminology store " + file + " " + e.getMessage());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "TerminologyStore " + file + " loaded=" + loaded + " written=" + getWritten() + " dropped=" +
+				getDropped();
+	}
+
+} // TerminologyStore
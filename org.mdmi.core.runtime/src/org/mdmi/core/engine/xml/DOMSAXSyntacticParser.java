@@ -23,16 +23,22 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
+import java.util.WeakHashMap;
 import java.util.regex.Pattern;
 
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
@@ -92,6 +98,19 @@ public class DOMSAXSyntacticParser implements ISyntacticParser {
 
 	private static Logger logger = LoggerFactory.getLogger(DOMSAXSyntacticParser.class);
 
+	/**
+	 * Parse the messages without building a DOM of them, see {@link StreamingTreeWalker}
+	 */
+	public static final String PARAM_STREAMING = "mdmi.xml.streaming";
+
+	public static boolean streaming = Boolean.getBoolean(PARAM_STREAMING);
+
+	// the names of the elements the predicates of a syntax model are on, keyed by the root node
+	private static final Map<Node, Set<String>> predicatedNames = Collections.synchronizedMap(new WeakHashMap<>());
+
+	// the syntax model has predicates that need the whole DOM
+	private static final Set<String> NOT_STREAMED = Collections.unmodifiableSet(new HashSet<>());
+
 	private class XPathExtractor extends XPathBaseListener {
 
 		private static final String DOTDOT = "..";
@@ -519,6 +538,21 @@ public class DOMSAXSyntacticParser implements ISyntacticParser {
 				}
 			}
 
+			/**
+			 * The child nodes of the bag matching the element, from the location matcher of the bag if it has one
+			 */
+			private Iterable<LocationMatcher.Candidate> candidates(Node bag, String qName, NodePredicate matches) {
+				LocationMatcher matcher = LocationMatcher.get(bag);
+				if (matcher != null) {
+					return Iterables.filter(
+						matcher.candidates(matches.sb.toString()),
+						candidate -> candidate.node.getSemanticElement() == null ||
+								!candidate.node.getSemanticElement().isComputedIn());
+				}
+				return Iterables.transform(
+					Iterables.filter(bag.getNodesByLocation(qName), matches), LocationMatcher.Candidate::new);
+			}
+
 			private List<Node> lookForMatch(final String qName) {
 
 				NodePredicate matches = null;
@@ -539,12 +573,7 @@ public class DOMSAXSyntacticParser implements ISyntacticParser {
 					}
 					// logger.trace("Try node " + matches);
 
-					Iterable<Node> matchingNodes = null;
-
-					matchingNodes = Iterables.filter(currentBag.getNodesByLocation(qName), matches);
-
-					// Iterable<Node>
-					Iterator<Node> iterator = matchingNodes.iterator();
+					Iterator<LocationMatcher.Candidate> iterator = candidates(currentBag, qName, matches).iterator();
 
 					while (iterator.hasNext()) {
 
@@ -552,7 +581,8 @@ public class DOMSAXSyntacticParser implements ISyntacticParser {
 							break;
 						}
 
-						Node node = iterator.next();
+						LocationMatcher.Candidate candidate = iterator.next();
+						Node node = candidate.node;
 
 						String expression = "";
 						try {
@@ -560,11 +590,20 @@ public class DOMSAXSyntacticParser implements ISyntacticParser {
 
 							logger.trace("path " + path);
 
-							int start = path.indexOf("[");
-							int end = node.getLocation().lastIndexOf("]");
-							if (start > -1 && end > -1) {
+							if (candidate.expression != null) {
+
+								expression = candidate.expression;
 
-								expression = path.substring(start + 1, end);
+								LocationPredicates.Predicate predicate = candidate.predicate;
+								if (predicate != null) {
+									if (predicate.test((Element) domNodes.peek())) {
+										results.add(node);
+										logger.trace(
+											depthCtr + " loop count  " + path + " Matched using " +
+													currentBag.getName());
+									}
+									continue;
+								}
 
 								if (xPath == null) {
 									xPath = XPathFactory.newInstance().newXPath();
@@ -1068,6 +1107,21 @@ public class DOMSAXSyntacticParser implements ISyntacticParser {
 		// df.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
 		DocumentBuilder b = df.newDocumentBuilder();
 
+		Set<String> predicated = streaming
+				? predicatedNames(yroot.getNode())
+				: NOT_STREAMED;
+		if (predicated != NOT_STREAMED) {
+			SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
+			StreamingTreeWalker walker = new StreamingTreeWalker(mdmiHandler, domNodes, predicated, b.newDocument());
+			parser.setProperty("http://xml.org/sax/properties/lexical-handler", walker);
+			try {
+				parser.parse(new ByteArrayInputStream(data), walker);
+			} catch (IOException ex) {
+
+			}
+			return;
+		}
+
 		org.w3c.dom.Document doc;
 		try {
 			doc = b.parse(new ByteArrayInputStream(data));
@@ -1081,6 +1135,45 @@ public class DOMSAXSyntacticParser implements ISyntacticParser {
 
 	}
 
+	/**
+	 * The names of the elements the location predicates of the syntax model are on, the elements the streaming parse
+	 * holds back until they end. The model is not streamed, NOT_STREAMED, if a predicate looks outside its element
+	 * with '..', or if there are MDMI location expressions, which are matched on other names.
+	 */
+	static Set<String> predicatedNames(Node root) {
+		Set<String> names = predicatedNames.get(root);
+		if (names == null) {
+			names = new HashSet<>();
+			List<Node> pending = new ArrayList<>();
+			pending.add(root);
+			while (!pending.isEmpty() && names != NOT_STREAMED) {
+				Node node = pending.remove(pending.size() - 1);
+				String location = node.getLocation();
+				if ("MDMI".equals(node.getLocationExpressionLanguage())) {
+					names = NOT_STREAMED;
+				} else if (location != null && location.contains("[")) {
+					int start = location.indexOf("[");
+					if (location.substring(start).contains("..")) {
+						names = NOT_STREAMED;
+					} else {
+						// the predicate is on the element of the last step of the path
+						names.add(location.substring(location.lastIndexOf('/', start) + 1, start));
+					}
+				}
+				if (node instanceof Bag) {
+					pending.addAll(((Bag) node).getNodes());
+				} else if (node instanceof Choice) {
+					pending.addAll(((Choice) node).getNodes());
+				}
+			}
+			if (names == NOT_STREAMED) {
+				logger.debug("Syntax model " + root.getName() + " is parsed with a DOM, its predicates need it");
+			}
+			predicatedNames.put(root, names);
+		}
+		return names;
+	}
+
 	public String getXPath(org.w3c.dom.Node node) {
 		return getXPath(node, "");
 	}
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2016 MDMIX Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     MDMIX Software, Inc - initial API and implementation
+ *
+ * Author:
+ *     Sean Muir
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.xml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.mdmi.Bag;
+import org.mdmi.Choice;
+import org.mdmi.MessageGroup;
+import org.mdmi.MessageModel;
+import org.mdmi.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The child nodes of a bag or choice, looked up by the path of an element relative to it.
+ *
+ * {@link DOMSAXSyntacticParser} matches an element to the child nodes whose location is the relative path of the
+ * element, the path up to '/@' or '[' included; the nodes the container lists for the name of the element, see
+ * {@link Node#getNodesByLocation(String)}. The matcher has each of those paths of the children, split when the map is
+ * loaded, with the predicate of the location compiled, see {@link LocationPredicates}; so the parser looks up the
+ * candidates of an element and only tests their predicates.
+ *
+ * Containers with MDMI location expressions, which are matched on patterns of names, have no matcher.
+ *
+ * The matcher is held by its container, as an adapter, so it goes away with the syntax model of the map.
+ */
+public final class LocationMatcher extends AdapterImpl {
+
+	private static Logger logger = LoggerFactory.getLogger(LocationMatcher.class);
+
+	/**
+	 * A child node matching a path
+	 */
+	static final class Candidate {
+		final Node node;
+
+		// the predicate of the location, null if it has none
+		final String expression;
+
+		// the compiled predicate, null if it is evaluated with XPath
+		final LocationPredicates.Predicate predicate;
+
+		Candidate(Node node) {
+			this.node = node;
+			this.expression = expression(node.getLocation());
+			this.predicate = expression != null
+					? LocationPredicates.get(expression)
+					: null;
+		}
+	}
+
+	// null for the containers without a matcher
+	private final Map<String, List<Candidate>> candidates;
+
+	private LocationMatcher(Map<String, List<Candidate>> candidates) {
+		this.candidates = candidates;
+	}
+
+	/**
+	 * Build the matchers of the bags and choices of the syntax models of the group.
+	 */
+	public static void preload(MessageGroup messageGroup) {
+		int containers = 0;
+		int compiled = 0;
+		int xpath = 0;
+		for (MessageModel messageModel : messageGroup.getModels()) {
+			if (messageModel.getSyntaxModel() == null || messageModel.getSyntaxModel().getRoot() == null) {
+				continue;
+			}
+			List<Node> pending = new ArrayList<>();
+			pending.add(messageModel.getSyntaxModel().getRoot());
+			while (!pending.isEmpty()) {
+				Node node = pending.remove(pending.size() - 1);
+				List<Node> children = children(node);
+				if (children == null) {
+					continue;
+				}
+				pending.addAll(children);
+				if (get(node) == null) {
+					continue;
+				}
+				containers++;
+				for (Node child : children) {
+					String expression = expression(child.getLocation());
+					if (expression == null) {
+						continue;
+					}
+					if (LocationPredicates.get(expression) != null) {
+						compiled++;
+					} else {
+						xpath++;
+					}
+				}
+			}
+		}
+		logger.debug(
+			"Built " + containers + " location matchers of " + messageGroup.getName() + ", " + compiled +
+					" predicates compiled, " + xpath + " evaluated with XPath");
+	}
+
+	/**
+	 * @param container
+	 *            A bag or choice.
+	 * @return the matcher of the container, or null if it has none
+	 */
+	static LocationMatcher get(Node container) {
+		LocationMatcher matcher;
+		synchronized (container) {
+			matcher = (LocationMatcher) EcoreUtil.getExistingAdapter(container, LocationMatcher.class);
+			if (matcher == null) {
+				matcher = build(container);
+				container.eAdapters().add(matcher);
+			}
+		}
+		return matcher.candidates != null
+				? matcher
+				: null;
+	}
+
+	@Override
+	public boolean isAdapterForType(Object type) {
+		return type == LocationMatcher.class;
+	}
+
+	/**
+	 * @param path
+	 *            The path of the element relative to the container, its name if it is a child of the container.
+	 * @return the child nodes matching the path, in the order of the container
+	 */
+	List<Candidate> candidates(String path) {
+		List<Candidate> matching = candidates.get(path);
+		return matching != null
+				? matching
+				: Collections.emptyList();
+	}
+
+	/**
+	 * @return what is between the first '[' and the last ']' of the location, or null if there is none
+	 */
+	static String expression(String location) {
+		int start = location.indexOf("[");
+		int end = location.lastIndexOf("]");
+		return start > -1 && end > start
+				? location.substring(start + 1, end)
+				: null;
+	}
+
+	private static List<Node> children(Node node) {
+		if (node instanceof Bag) {
+			return ((Bag) node).getNodes();
+		}
+		if (node instanceof Choice) {
+			return ((Choice) node).getNodes();
+		}
+		return null;
+	}
+
+	private static LocationMatcher build(Node container) {
+		List<Node> children = children(container);
+		if (children == null) {
+			return new LocationMatcher(null);
+		}
+		Map<String, List<Candidate>> candidates = new HashMap<>();
+		for (Node child : children) {
+			String location = child.getLocation();
+			if ("MDMI".equals(child.getLocationExpressionLanguage())) {
+				return new LocationMatcher(null);
+			}
+			if (location == null) {
+				continue;
+			}
+			// the names the container lists the child for
+			String name = location.split("\\[")[0];
+			Set<String> names = new LinkedHashSet<>();
+			if (container instanceof Bag) {
+				names.addAll(Arrays.asList(name.split("/")));
+			} else {
+				names.add(name);
+			}
+			// the relative paths matching the child
+			Set<String> paths = new LinkedHashSet<>();
+			paths.add(location);
+			if (location.startsWith("@")) {
+				paths.add(location.substring(1));
+			}
+			paths.add(location.split("/@")[0]);
+			paths.add(name);
+			Candidate candidate = new Candidate(child);
+			for (String path : paths) {
+				if (names.contains(path.substring(path.lastIndexOf('/') + 1))) {
+					candidates.computeIfAbsent(path, key -> new ArrayList<>(1)).add(candidate);
+				}
+			}
+		}
+		return new LocationMatcher(candidates);
+	}
+
+} // LocationMatcher
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2016 MDMIX Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     MDMIX Software, Inc - initial API and implementation
+ *
+ * Author:
+ *     Sean Muir
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+
+/**
+ * The location predicates of the syntax nodes, compiled to Java tests of the element being matched.
+ *
+ * The predicates are compiled when the map is loaded, see {@link LocationMatcher#preload}, and shared by all the
+ * parsers. A predicate is compiled when it is a test, or tests joined with 'and', of an attribute value
+ * (@root='2.16.840.1'), of an attribute value of a child (code/@code='48765-2'), of the value of a child
+ * (statusCode='completed') or of the presence of a child (act); or when it is a single xsi:type test
+ * (@xsi:type='CD'). These give what the XPath evaluation of {@link DOMSAXSyntacticParser} gives, without cloning nodes.
+ * Other predicates are still evaluated with XPath.
+ */
+public final class LocationPredicates {
+
+	/**
+	 * A compiled predicate
+	 */
+	public interface Predicate {
+		/**
+		 * @param element
+		 *            The element being matched.
+		 * @return true if the element satisfies the predicate
+		 */
+		boolean test(Element element);
+	}
+
+	private static final String NAME = "[A-Za-z_][A-Za-z0-9_.-]*";
+
+	private static final String LITERAL = "'[^']*'|\"[^\"]*\"";
+
+	// @attribute=literal, child, child=literal, child/@attribute, child/@attribute=literal
+	private static final Pattern TERM = Pattern.compile(
+		"\\s*(?:@(xsi:type|" + NAME + ")|(" + NAME + ")(?:/@(" + NAME + "))?)\\s*(?:=\\s*(" + LITERAL + "))?\\s*");
+
+	private static final Pattern AND = Pattern.compile("and\\s+");
+
+	// the predicates evaluated with XPath
+	private static final Predicate XPATH = element -> false;
+
+	private static final Map<String, Predicate> predicates = new ConcurrentHashMap<>();
+
+	/**
+	 * One test of a predicate
+	 */
+	private static final class Test {
+		// null for an attribute of the element
+		final String child;
+
+		// null for the value of the child
+		final String attribute;
+
+		// null for the presence of the child or attribute
+		final String value;
+
+		Test(String child, String attribute, String value) {
+			this.child = child;
+			this.attribute = attribute;
+			this.value = value;
+		}
+
+		boolean test(Element element) {
+			if (child == null) {
+				return test(element.getAttributeNode(attribute));
+			}
+			for (org.w3c.dom.Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+				if (node.getNodeType() == org.w3c.dom.Node.ELEMENT_NODE && child.equals(node.getNodeName())) {
+					if (attribute != null
+							? test(((Element) node).getAttributeNode(attribute))
+							: value == null || value.equals(node.getTextContent())) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		private boolean test(Attr attr) {
+			return attr != null && (value == null || value.equals(attr.getValue()));
+		}
+	}
+
+	private LocationPredicates() {
+	}
+
+	/**
+	 * @param expression
+	 *            The predicate of a location.
+	 * @return the compiled predicate, or null if it is evaluated with XPath
+	 */
+	public static Predicate get(String expression) {
+		Predicate predicate = predicates.get(expression);
+		if (predicate == null) {
+			predicate = predicates.computeIfAbsent(expression, LocationPredicates::compile);
+		}
+		return predicate != XPATH
+				? predicate
+				: null;
+	}
+
+	static Predicate compile(String expression) {
+		List<Test> tests = new ArrayList<>();
+		Matcher term = TERM.matcher(expression);
+		Matcher and = AND.matcher(expression);
+		int position = 0;
+		while (true) {
+			term.region(position, expression.length());
+			if (!term.lookingAt()) {
+				return XPATH;
+			}
+			String value = term.group(4) != null
+					? term.group(4).substring(1, term.group(4).length() - 1)
+					: null;
+			if (term.group(1) != null) {
+				// the XPath evaluation does not test the presence of an attribute, nor xsi:type with other tests
+				if (value == null ||
+						"xsi:type".equals(term.group(1)) && (position > 0 || term.end() < expression.length())) {
+					return XPATH;
+				}
+				tests.add(new Test(null, term.group(1), value));
+			} else {
+				tests.add(new Test(term.group(2), term.group(3), value));
+			}
+			position = term.end();
+			if (position == expression.length()) {
+				break;
+			}
+			and.region(position, expression.length());
+			if (!and.lookingAt()) {
+				return XPATH;
+			}
+			position = and.end();
+		}
+		if (tests.size() == 1) {
+			Test test = tests.get(0);
+			return test::test;
+		}
+		return element -> {
+			for (Test test : tests) {
+				if (!test.test(element)) {
+					return false;
+				}
+			}
+			return true;
+		};
+	}
+
+} // LocationPredicates
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2016 MDMIX Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     MDMIX Software, Inc - initial API and implementation
+ *
+ * Author:
+ *     Sean Muir
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.xml;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.Stack;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Text;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Passes the events of a SAX parser to the handler of {@link DOMSAXSyntacticParser} as the {@link InternalTreeWalker}
+ * does for a DOM, without a DOM of the document.
+ *
+ * The parser must not be namespace aware, the events are then those the tree walker sends for a DOM built by the
+ * default DocumentBuilderFactory: the local name is the part of the name after the prefix, and the attributes are in
+ * the order of their names.
+ *
+ * The location predicates of the syntax nodes are evaluated on the DOM node of the element being started, which they
+ * may look into, so an element named like a syntax node with a predicate is held back until it ends: a DOM of the
+ * element is built from its events, and when it ends the events are handed on from that DOM, as the tree walker does,
+ * with its nodes on the DOM node stack. The elements held back inside it are nodes of the same DOM, so its text is
+ * kept once, and each has its full text content, as in the DOM of the document. Elements not held back get a null on
+ * the DOM node stack; only the outermost element held back, and what is in it, is ever in memory at once.
+ */
+class StreamingTreeWalker extends DefaultHandler2 {
+
+	private static final Comparator<String[]> BY_NAME = Comparator.comparing(attribute -> attribute[0]);
+
+	private final DefaultHandler2 handler;
+
+	private final Stack<org.w3c.dom.Node> domNodes;
+
+	private final Set<String> predicated;
+
+	private final Document document;
+
+	// the element of the DOM being built the events are in, null when they go straight to the handler
+	private Element current;
+
+	// the depth in the elements held back, 0 when the events go straight to the handler
+	private int depth;
+
+	// in a CDATA section of an element held back
+	private boolean cdata;
+
+	// the document element is not matched to the syntax model, it is never held back
+	private boolean documentElement = true;
+
+	/**
+	 * @param handler
+	 *            The handler of the events.
+	 * @param domNodes
+	 *            The DOM node stack of the handler.
+	 * @param predicated
+	 *            The names of the elements to hold back.
+	 * @param document
+	 *            The document to create the DOM of the elements held back with.
+	 */
+	StreamingTreeWalker(DefaultHandler2 handler, Stack<org.w3c.dom.Node> domNodes, Set<String> predicated,
+			Document document) {
+		this.handler = handler;
+		this.domNodes = domNodes;
+		this.predicated = predicated;
+		this.document = document;
+	}
+
+	static String localName(String qName) {
+		int colon = qName.indexOf(':');
+		return colon < 0
+				? qName
+				: qName.substring(colon + 1);
+	}
+
+	private Element element(String qName, Attributes attributes) {
+		Element element = document.createElement(qName);
+		for (int i = 0; i < attributes.getLength(); i++) {
+			element.setAttribute(attributes.getQName(i), attributes.getValue(i));
+		}
+		return element;
+	}
+
+	// the attributes of an element held back, as the tree walker hands them on
+	private static Attributes attributes(Element element) {
+		NamedNodeMap map = element.getAttributes();
+		AttributesImpl attributes = new AttributesImpl();
+		for (int i = 0; i < map.getLength(); i++) {
+			Attr attribute = (Attr) map.item(i);
+			attributes.addAttribute("", "", attribute.getName(), "CDATA", attribute.getValue());
+		}
+		return sorted(attributes);
+	}
+
+	// a copy of the attributes, in the order of their names as in a DOM
+	private static Attributes sorted(Attributes attributes) {
+		String[][] byName = new String[attributes.getLength()][];
+		for (int i = 0; i < byName.length; i++) {
+			byName[i] = new String[] { attributes.getQName(i), attributes.getValue(i), attributes.getType(i) };
+		}
+		Arrays.sort(byName, BY_NAME);
+		AttributesImpl copy = new AttributesImpl();
+		for (String[] attribute : byName) {
+			copy.addAttribute("", localName(attribute[0]), attribute[0], attribute[2], attribute[1]);
+		}
+		return copy;
+	}
+
+	@Override
+	public void startDocument() throws SAXException {
+		handler.startDocument();
+	}
+
+	@Override
+	public void endDocument() throws SAXException {
+		handler.endDocument();
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes)
+			throws SAXException {
+		boolean isPredicated = !documentElement &&
+				(predicated.contains(qName) || predicated.contains(localName(qName)));
+		documentElement = false;
+		if (depth == 0 && !isPredicated) {
+			domNodes.push(null);
+			handler.startElement("", localName(qName), qName, sorted(attributes));
+			return;
+		}
+		Element element = element(qName, attributes);
+		if (current != null) {
+			current.appendChild(element);
+		}
+		current = element;
+		depth++;
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		if (depth == 0) {
+			domNodes.pop();
+			handler.endElement("", localName(qName), qName);
+			return;
+		}
+		Element element = current;
+		org.w3c.dom.Node parent = current.getParentNode();
+		current = parent instanceof Element
+				? (Element) parent
+				: null;
+		if (--depth == 0) {
+			replay(element);
+		}
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (depth == 0) {
+			handler.characters(ch, start, length);
+			return;
+		}
+		String text = new String(ch, start, length);
+		// adjacent text is one node, as in a DOM; a CDATA section is its own node
+		org.w3c.dom.Node last = current.getLastChild();
+		if (last instanceof Text && (last instanceof CDATASection) == cdata) {
+			((Text) last).appendData(text);
+		} else {
+			current.appendChild(document.createTextNode(text));
+		}
+	}
+
+	@Override
+	public void startCDATA() throws SAXException {
+		if (depth == 0) {
+			handler.startCDATA();
+		} else {
+			current.appendChild(document.createCDATASection(""));
+			cdata = true;
+		}
+	}
+
+	@Override
+	public void endCDATA() throws SAXException {
+		if (depth == 0) {
+			handler.endCDATA();
+		} else {
+			cdata = false;
+		}
+	}
+
+	// hand on the events of a node of the DOM of the element held back, and of what is in it
+	private void replay(org.w3c.dom.Node node) throws SAXException {
+		if (node instanceof Element) {
+			Element element = (Element) node;
+			String qName = element.getTagName();
+			domNodes.push(element);
+			handler.startElement("", localName(qName), qName, attributes(element));
+			for (org.w3c.dom.Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+				replay(child);
+			}
+			domNodes.pop();
+			handler.endElement("", localName(qName), qName);
+		} else if (node instanceof Text) {
+			char[] text = ((Text) node).getData().toCharArray();
+			if (node instanceof CDATASection) {
+				handler.startCDATA();
+				handler.characters(text, 0, text.length);
+				handler.endCDATA();
+			} else {
+				handler.characters(text, 0, text.length);
+			}
+		}
+	}
+
+} // StreamingTreeWalker
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2018 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.json.simple.JSONObject;
+import org.mdmi.MDMIBusinessElementReference;
+import org.mdmi.core.Mdmi;
+import org.mdmi.core.MdmiMapRegistry;
+import org.mdmi.core.MdmiMessage;
+import org.mdmi.core.MdmiModelRef;
+import org.mdmi.core.MdmiTransferInfo;
+import org.mdmi.core.MdmiUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A source to target transformation prepared once and executed many times, see
+ * {@link RuntimeService#prepare(String, String, String, Properties, Properties)}.
+ *
+ * The models are resolved and the business elements common to both models are computed when the transformation is
+ * prepared, {@link #transform(byte[])} only does the work for one message. Instances are thread safe.
+ *
+ * A prepared transformation keeps using the maps that were loaded when it was prepared; prepare it again to pick up
+ * reloaded maps.
+ */
+public final class PreparedTransformation {
+
+	private static Logger logger = LoggerFactory.getLogger(PreparedTransformation.class);
+
+	private final MdmiModelRef sourceModel;
+
+	private final MdmiModelRef targetModel;
+
+	private final MdmiMapRegistry.Snapshot maps;
+
+	private final ArrayList<MDMIBusinessElementReference> elements;
+
+	private final String location;
+
+	private final Properties sourceProperties;
+
+	private final Properties targetProperties;
+
+	PreparedTransformation(String srcMdl, String trgMdl, String location, Properties sourcePropertyValues,
+			Properties targetPropertyValues) {
+		this.maps = Mdmi.INSTANCE().getResolver().getRegistry().snapshot();
+		this.sourceModel = new MdmiModelRef(srcMdl);
+		this.sourceModel.resolve(maps);
+		this.targetModel = new MdmiModelRef(trgMdl);
+		this.targetModel.resolve(maps);
+		this.elements = MdmiUtil.getElements(
+			sourceModel.getModel(), targetModel.getModel(), new ArrayList<String>());
+		this.location = location;
+		this.sourceProperties = copy(sourcePropertyValues);
+		this.targetProperties = copy(targetPropertyValues);
+		logger.debug(
+			"Prepared " + sourceModel.getQualifiedName() + " to " + targetModel.getQualifiedName() + " with " +
+					elements.size() + " business elements");
+	}
+
+	/**
+	 * Transform one message with the properties given when the transformation was prepared.
+	 *
+	 * @param srcData
+	 *            The source message.
+	 * @return The target message.
+	 */
+	public String transform(byte[] srcData) {
+		return transform(srcData, null, null, null, null);
+	}
+
+	/**
+	 * Transform one message read from the given stream, the stream is not closed.
+	 *
+	 * @param srcData
+	 *            The source message.
+	 * @return The target message.
+	 * @throws IOException
+	 */
+	public String transform(InputStream srcData) throws IOException {
+		return transform(srcData.readAllBytes());
+	}
+
+	/**
+	 * Transform one message.
+	 *
+	 * @param srcData
+	 *            The source message.
+	 * @param sourcePropertyValues
+	 *            Source properties for this message, added to the ones given when the transformation was prepared;
+	 *            may be null.
+	 * @param targetPropertyValues
+	 *            Target properties for this message, added to the ones given when the transformation was prepared;
+	 *            may be null.
+	 * @param sourceValues
+	 *            may be null
+	 * @param targetValues
+	 *            may be null
+	 * @return The target message.
+	 */
+	public String transform(byte[] srcData, Properties sourcePropertyValues, Properties targetPropertyValues,
+			JSONObject sourceValues, JSONObject targetValues) {
+		MdmiMessage sMsg = new MdmiMessage(srcData);
+		MdmiMessage tMsg = new MdmiMessage();
+
+		MdmiTransferInfo ti = new MdmiTransferInfo(sourceModel, sMsg, targetModel, tMsg, elements);
+		ti.location = location;
+		ti.useDictionary = true;
+		ti.sourceProperties = copy(sourceProperties);
+		ti.targetProperties = copy(targetProperties);
+		if (sourcePropertyValues != null) {
+			ti.sourceProperties.putAll(sourcePropertyValues);
+		}
+		if (targetPropertyValues != null) {
+			ti.targetProperties.putAll(targetPropertyValues);
+		}
+		ti.sourceValues = sourceValues;
+		ti.targetValues = targetValues;
+
+		Mdmi.INSTANCE().executeTransfer(ti);
+
+		return tMsg.getDataAsString();
+	}
+
+	/**
+	 * @return the source model, as 'group.model'
+	 */
+	public String getSourceModel() {
+		return sourceModel.getQualifiedName();
+	}
+
+	/**
+	 * @return the target model, as 'group.model'
+	 */
+	public String getTargetModel() {
+		return targetModel.getQualifiedName();
+	}
+
+	/**
+	 * @return the business elements transfered from source to target
+	 */
+	public List<MDMIBusinessElementReference> getElements() {
+		return Collections.unmodifiableList(elements);
+	}
+
+	/**
+	 * @return the version of the loaded maps this transformation was prepared with
+	 */
+	public long getMapsVersion() {
+		return maps.getVersion();
+	}
+
+	private static Properties copy(Properties properties) {
+		Properties result = new Properties();
+		if (properties != null) {
+			result.putAll(properties);
+		}
+		return result;
+	}
+
+} // PreparedTransformation
@@ -31,6 +31,42 @@ public class RuntimeService {
 
 	private static Logger logger = LoggerFactory.getLogger(RuntimeService.class);
 
+	/**
+	 * Prepare a transformation from the source to the target model, to run it on many messages.
+	 * The registered maps are loaded if needed.
+	 *
+	 * @param srcMdl
+	 *            The source model, as 'group.model'.
+	 * @param trgMdl
+	 *            The target model, as 'group.model'.
+	 * @return The prepared transformation.
+	 */
+	public static PreparedTransformation prepare(String srcMdl, String trgMdl) {
+		return prepare(srcMdl, trgMdl, null, null, null);
+	}
+
+	/**
+	 * Prepare a transformation from the source to the target model, to run it on many messages.
+	 * The registered maps are loaded if needed.
+	 *
+	 * @param srcMdl
+	 *            The source model, as 'group.model'.
+	 * @param trgMdl
+	 *            The target model, as 'group.model'.
+	 * @param location
+	 *            may be null
+	 * @param sourcePropertyValues
+	 *            Source properties used for every message; may be null.
+	 * @param targetPropertyValues
+	 *            Target properties used for every message; may be null.
+	 * @return The prepared transformation.
+	 */
+	public static PreparedTransformation prepare(String srcMdl, String trgMdl, String location,
+			Properties sourcePropertyValues, Properties targetPropertyValues) {
+		Mdmi.INSTANCE().getResolver().load(Mdmi.INSTANCE());
+		return new PreparedTransformation(srcMdl, trgMdl, location, sourcePropertyValues, targetPropertyValues);
+	}
+
 	//
 	public static String runTransformation(String srcMdl, byte[] srcData, String trgMdl, String location,
 			Properties sourcePropertyValues, Properties targetPropertyValues, JSONObject sourceValues,
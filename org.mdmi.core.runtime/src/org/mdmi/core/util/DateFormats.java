@@ -0,0 +1,417 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.util;
+
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Thread safe date formatting and parsing with SimpleDateFormat patterns.
+ *
+ * Each pattern is translated once into immutable java.time formatters, cached by pattern and shared by all threads.
+ * The formatters keep the SimpleDateFormat behavior the MDMI converters rely on: missing fields default to
+ * 1970-01-01T00:00:00 in the default time zone, two digit years fall within 80 years before and 20 years after now,
+ * and text after the date is ignored.
+ * Patterns whose letters mean something else in java.time (week fields, 'u', a single 'y', odd 'S' counts and so on)
+ * are run with a SimpleDateFormat of the calling thread instead.
+ *
+ * SimpleDateFormat reads a number up to the next non digit, or the letter count when the next field is a number too;
+ * java.time does not. So a text is only parsed with java.time when each number of it has exactly the digits of its
+ * field, like 20210315 for yyyyMMdd, and with SimpleDateFormat otherwise.
+ */
+public final class DateFormats {
+
+	/** The java.time formatters of a pattern, or none if only SimpleDateFormat can run it */
+	private static final class Format {
+		final DateTimeFormatter formatter;
+
+		final DateTimeFormatter strict;
+
+		final DateTimeFormatter lenient;
+
+		/** The texts the parser reads as SimpleDateFormat does, null if it never does */
+		final Pattern digits;
+
+		/** The zone of the formatters, as SimpleDateFormat sees it */
+		final TimeZone timeZone;
+
+		Format(DateTimeFormatter formatter, DateTimeFormatter parser, Pattern digits) {
+			this.formatter = formatter;
+			this.digits = digits;
+			this.timeZone = formatter != null
+					? TimeZone.getTimeZone(formatter.getZone())
+					: null;
+			this.strict = parser != null
+					? parser.withResolverStyle(ResolverStyle.STRICT)
+					: null;
+			this.lenient = parser != null
+					? parser.withResolverStyle(ResolverStyle.LENIENT)
+					: null;
+		}
+
+		// before standard time, java.time uses the local mean time of the zone and SimpleDateFormat does not
+		boolean sameOffset(Instant instant) {
+			return formatter.getZone().getRules().getOffset(instant).getTotalSeconds() * 1000L == timeZone.getOffset(
+				instant.toEpochMilli());
+		}
+
+		// a local time without an offset, in a daylight saving overlap or gap, is resolved differently by each
+		boolean isAmbiguous(TemporalAccessor parsed) {
+			if (parsed.query(TemporalQueries.offset()) != null) {
+				return false;
+			}
+			LocalDate date = parsed.query(TemporalQueries.localDate());
+			LocalTime time = parsed.query(TemporalQueries.localTime());
+			return date != null && time != null &&
+					formatter.getZone().getRules().getValidOffsets(LocalDateTime.of(date, time)).size() != 1;
+		}
+	}
+
+	private static final Map<String, Format> FORMATS = new ConcurrentHashMap<>();
+
+	private static final ThreadLocal<Map<String, SimpleDateFormat>> FALLBACK = ThreadLocal.withInitial(HashMap::new);
+
+	private DateFormats() {
+	}
+
+	/**
+	 * @param pattern
+	 *            A SimpleDateFormat pattern.
+	 * @return the formatter for the pattern, or null if the pattern can only be run by SimpleDateFormat
+	 * @throws IllegalArgumentException
+	 *             If the pattern is invalid.
+	 */
+	public static DateTimeFormatter getFormatter(String pattern) {
+		return format(pattern).formatter;
+	}
+
+	/**
+	 * Format the date as SimpleDateFormat would.
+	 *
+	 * @param pattern
+	 *            A SimpleDateFormat pattern.
+	 * @param date
+	 *            The date to format.
+	 * @return The formatted date.
+	 * @throws IllegalArgumentException
+	 *             If the pattern is invalid.
+	 */
+	public static String format(String pattern, Date date) {
+		Format format = format(pattern);
+		if (format.formatter == null || !format.sameOffset(date.toInstant())) {
+			return fallback(pattern, true).format(date);
+		}
+		return format.formatter.format(date.toInstant());
+	}
+
+	/**
+	 * Parse the date as SimpleDateFormat would, from the start of the text.
+	 *
+	 * @param pattern
+	 *            A SimpleDateFormat pattern.
+	 * @param text
+	 *            The text to parse.
+	 * @param lenient
+	 *            If out of range values roll over, as with SimpleDateFormat.setLenient(true).
+	 * @return The date parsed.
+	 * @throws ParseException
+	 *             If the beginning of the text can not be parsed.
+	 * @throws IllegalArgumentException
+	 *             If the pattern is invalid.
+	 */
+	public static Date parse(String pattern, String text, boolean lenient) throws ParseException {
+		Format format = format(pattern);
+		if (format.digits == null || !format.digits.matcher(text).lookingAt()) {
+			return fallback(pattern, lenient).parse(text);
+		}
+		TemporalAccessor parsed;
+		Instant instant;
+		try {
+			parsed = (lenient
+					? format.lenient
+					: format.strict).parse(text, new ParsePosition(0));
+			instant = Instant.from(parsed);
+		} catch (DateTimeParseException e) {
+			throw new ParseException("Unparseable date: \"" + text + "\"", e.getErrorIndex());
+		} catch (RuntimeException e) {
+			// parsed, but not to an instant, or out of range
+			throw new ParseException("Unparseable date: \"" + text + "\"", 0);
+		}
+		if (!format.sameOffset(instant) || format.isAmbiguous(parsed)) {
+			return fallback(pattern, lenient).parse(text);
+		}
+		return Date.from(instant);
+	}
+
+	private static SimpleDateFormat fallback(String pattern, boolean lenient) {
+		SimpleDateFormat sdf = FALLBACK.get().computeIfAbsent(pattern, SimpleDateFormat::new);
+		sdf.setLenient(lenient);
+		return sdf;
+	}
+
+	private static Format format(String pattern) {
+		Format format = FORMATS.get(pattern);
+		if (format == null) {
+			format = FORMATS.computeIfAbsent(pattern, DateFormats::translate);
+		}
+		return format;
+	}
+
+	private static Format translate(String pattern) {
+		// SimpleDateFormat decides which patterns are valid
+		new SimpleDateFormat(pattern);
+
+		DateTimeFormatterBuilder formatter = new DateTimeFormatterBuilder();
+		DateTimeFormatterBuilder parser = new DateTimeFormatterBuilder().parseCaseInsensitive().parseLenient();
+		boolean era = pattern.replaceAll("'[^']*'", "").indexOf('G') >= 0;
+		// the numbers with a fixed count of digits, and the literals, of the pattern; null once there is another field
+		StringBuilder digits = new StringBuilder();
+		String letters = "";
+		int i = 0;
+		while (i < pattern.length()) {
+			char c = pattern.charAt(i);
+			if (c == '\'') {
+				int end = i + 1;
+				while (end < pattern.length()) {
+					if (pattern.charAt(end) == '\'') {
+						if (end + 1 < pattern.length() && pattern.charAt(end + 1) == '\'') {
+							end += 2;
+							continue;
+						}
+						break;
+					}
+					end++;
+				}
+				String quoted = pattern.substring(i, Math.min(end + 1, pattern.length()));
+				formatter.appendPattern(quoted);
+				parser.appendPattern(quoted);
+				if (digits != null) {
+					digits.append(Pattern.quote(unquote(quoted)));
+				}
+				i = end + 1;
+				continue;
+			}
+			if (!isLetter(c)) {
+				// SimpleDateFormat has no optional sections or reserved characters, everything else is literal
+				formatter.appendLiteral(c);
+				parser.appendLiteral(c);
+				if (digits != null) {
+					digits.append(Pattern.quote(String.valueOf(c)));
+				}
+				i++;
+				continue;
+			}
+			int count = 1;
+			while (i + count < pattern.length() && pattern.charAt(i + count) == c) {
+				count++;
+			}
+			String letter = repeat(c, count);
+			if (digits != null) {
+				int width = width(c, count);
+				if (width > 0) {
+					digits.append("\\d{").append(width).append('}');
+				} else if (c == 'Z') {
+					digits.append("[+-]\\d{4}");
+				} else {
+					digits = null;
+				}
+			}
+			switch (c) {
+				case 'y':
+					if (count == 1) {
+						return new Format(null, null, null);
+					}
+					if (count == 2) {
+						formatter.appendValueReduced(ChronoField.YEAR, 2, 2, LocalDate.now().minusYears(80));
+						parser.appendValueReduced(ChronoField.YEAR, 2, 2, LocalDate.now().minusYears(80));
+					} else {
+						String year = era
+								? letter
+								: repeat('u', count);
+						formatter.appendPattern(year);
+						parser.appendPattern(year);
+					}
+					break;
+				case 'Z':
+					formatter.appendOffset("+HHMM", "+0000");
+					parser.appendOffset("+HHMM", "+0000");
+					break;
+				case 'S':
+				case 'a':
+				case 'G':
+				case 'M':
+				case 'E':
+				case 'D':
+				case 'd':
+				case 'H':
+				case 'h':
+				case 'k':
+				case 'K':
+				case 'm':
+				case 's':
+				case 'X':
+				case 'z':
+					if (count > maxCount(c) || (c == 'S' && count != 3)) {
+						return new Format(null, null, null);
+					}
+					formatter.appendPattern(letter);
+					parser.appendPattern(letter);
+					break;
+				default:
+					// week fields, day number of week and stand alone month mean something else in java.time
+					return new Format(null, null, null);
+			}
+			letters += c;
+			i += count;
+		}
+
+		// the defaults of SimpleDateFormat for the fields the pattern does not have
+		if (!contains(letters, "y")) {
+			parser.parseDefaulting(ChronoField.YEAR, 1970);
+		}
+		if (!contains(letters, "MD")) {
+			parser.parseDefaulting(ChronoField.MONTH_OF_YEAR, 1);
+		}
+		if (!contains(letters, "dD")) {
+			parser.parseDefaulting(ChronoField.DAY_OF_MONTH, 1);
+		}
+		if (!contains(letters, "HhkK")) {
+			parser.parseDefaulting(ChronoField.HOUR_OF_DAY, 0);
+		} else if (!contains(letters, "a") && !contains(letters, "Hk")) {
+			parser.parseDefaulting(ChronoField.AMPM_OF_DAY, 0);
+		}
+		if (!contains(letters, "m")) {
+			parser.parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0);
+		}
+		if (!contains(letters, "s")) {
+			parser.parseDefaulting(ChronoField.SECOND_OF_MINUTE, 0);
+		}
+		if (!contains(letters, "S")) {
+			parser.parseDefaulting(ChronoField.NANO_OF_SECOND, 0);
+		}
+
+		ZoneId zone = ZoneId.systemDefault();
+		return new Format(
+			formatter.toFormatter().withZone(zone), parser.toFormatter().withZone(zone), digits != null
+					? Pattern.compile(digits.append("(?!\\d)").toString())
+					: null);
+	}
+
+	// the text of a quoted literal, two quotes are one
+	private static String unquote(String quoted) {
+		if (quoted.equals("''")) {
+			return "'";
+		}
+		int end = quoted.length() > 1 && quoted.endsWith("'")
+				? quoted.length() - 1
+				: quoted.length();
+		return quoted.substring(1, end).replace("''", "'");
+	}
+
+	/**
+	 * @return the digits of a number field the parsers read the same, 0 if they may not
+	 */
+	private static int width(char c, int count) {
+		switch (c) {
+			case 'y':
+				// a two digit year is placed by the whole date with SimpleDateFormat, by the year with java.time
+				return count == 4
+						? 4
+						: 0;
+			case 'M':
+			case 'd':
+			case 'H':
+			case 'h':
+			case 'k':
+			case 'K':
+			case 'm':
+			case 's':
+				return count == 2
+						? 2
+						: 0;
+			case 'S':
+			case 'D':
+				return count == 3
+						? 3
+						: 0;
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * @return the most letters java.time formats the way SimpleDateFormat does
+	 */
+	private static int maxCount(char c) {
+		switch (c) {
+			case 'a':
+				return 1;
+			case 'd':
+			case 'H':
+			case 'h':
+			case 'k':
+			case 'K':
+			case 'm':
+			case 's':
+				return 2;
+			case 'S':
+				// SimpleDateFormat S is milliseconds, it only lines up with the java.time fraction at three
+			case 'G':
+			case 'D':
+			case 'X':
+				return 3;
+			default:
+				return 4;
+		}
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean contains(String letters, String any) {
+		for (int i = 0; i < any.length(); i++) {
+			if (letters.indexOf(any.charAt(i)) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String repeat(char c, int count) {
+		StringBuilder sb = new StringBuilder(count);
+		for (int i = 0; i < count; i++) {
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+} // DateFormats
@@ -35,7 +35,6 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -51,28 +50,24 @@ public class DateUtil {
 
 	private static final Pattern bracketMatcher = Pattern.compile("\\[([^\\]]+)");
 
-	private static HashMap<String, SimpleDateFormat> dateCache = new HashMap<>();
-
 	/***
-	 * Global DateFormat cache. Note this is not thread safe, but
-	 * MDMI is not in general currently anyway.
+	 * A SimpleDateFormat for the format, or null if the format is invalid.
+	 * SimpleDateFormat is not thread safe, so this is a new one on each call;
+	 * DateUtil itself formats and parses with the shared formatters of DateFormats.
+	 *
+	 * @deprecated use {@link DateFormats}
 	 */
+	@Deprecated
 	public static SimpleDateFormat getDateFormatCached(String format) {
-		if (dateCache.containsKey(format)) {
-			return dateCache.get(format);
-		}
-		SimpleDateFormat sdf = null;
 		try {
-			sdf = new SimpleDateFormat(format);
+			return new SimpleDateFormat(format);
 		} catch (IllegalArgumentException e) {
 			return null;
 		}
-		dateCache.put(format, sdf);
-		return sdf;
 	}
 
 	/***
-	 * Format the date as a string using cached SimpleDateFormats.
+	 * Format the date as a string using the cached formatters of DateFormats.
 	 * Follows the MDMI convention of using
 	 * ISO format if format is null, empty, or "DATE". Adds a colon after character 26, because
 	 * XmlUtil used to, so I preserved it. Probably should be removed if it's not needed.
@@ -97,8 +92,7 @@ public class DateUtil {
 			myFormat = fmtISO;
 		}
 		myFormat = matchPrecision(myFormat, originalFormat);
-		SimpleDateFormat sdf = getDateFormatCached(myFormat);
-		String dateString = sdf.format(value);
+		String dateString = DateFormats.format(myFormat, value);
 
 		// I've preserved a weird colon insertion in the timezone from XmlUtil.
 		if (format == null || format.equals("") || format.equals("DATE")) {
@@ -198,9 +192,8 @@ public class DateUtil {
 		Date output = null;
 		String originalFormat = null;
 		for (int i = fmts.size() - 1; i >= 0; i--) {
-			SimpleDateFormat sdf = new SimpleDateFormat(fmts.get(i));
 			try {
-				output = sdf.parse(value);
+				output = DateFormats.parse(fmts.get(i), value, true);
 				originalFormat = fmts.get(i);
 				break;
 			} catch (ParseException e) {
@@ -227,11 +220,9 @@ public class DateUtil {
 		Date output = null;
 
 		// Optimization: in the average case, the format chosen by pickDateFormat will work
-		SimpleDateFormat sdf = getDateFormatCached(format);
-		sdf.setLenient(false);
-		// Otherwise crazy dates crop up if the string is longer than the format
+		// Not lenient, otherwise crazy dates crop up if the string is longer than the format
 		try {
-			output = sdf.parse(value);
+			output = DateFormats.parse(format, value, false);
 			// It worked!
 			return new DateWrapper(output, format, value);
 		} catch (ParseException e) {
@@ -294,11 +285,9 @@ public class DateUtil {
 		output = null;
 		String originalFormat = null;
 		for (int i = dateparts.size() - 1; i >= 0; i--) {
-			sdf = getDateFormatCached(dateparts.get(i));
-			sdf.setLenient(false);
-			// Otherwise crazy dates crop up if the string is longer than the format
+			// Not lenient, otherwise crazy dates crop up if the string is longer than the format
 			try {
-				output = sdf.parse(value);
+				output = DateFormats.parse(dateparts.get(i), value, false);
 				originalFormat = dateparts.get(i);
 				break;
 			} catch (ParseException e) {
@@ -16,7 +16,6 @@ package org.mdmi.core.util;
 
 import java.io.StringReader;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.regex.Pattern;
@@ -42,15 +41,16 @@ import org.xml.sax.SAXParseException;
  * @author goancea
  */
 public class XmlUtil {
-	private static final SimpleDateFormat YMDHMSMZ = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+	// formatted and parsed (leniently, as SimpleDateFormat does by default) with the shared formatters of DateFormats
+	private static final String YMDHMSMZ = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
 
-	private static final SimpleDateFormat YMDHMSZ = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
+	private static final String YMDHMSZ = "yyyy-MM-dd'T'HH:mm:ssZ";
 
-	private static final SimpleDateFormat YMDZ = new SimpleDateFormat("yyyy-MM-ddZ");
+	private static final String YMDZ = "yyyy-MM-ddZ";
 
-	private static final SimpleDateFormat HMSMZ = new SimpleDateFormat("HH:mm:ss.SSSZ");
+	private static final String HMSMZ = "HH:mm:ss.SSSZ";
 
-	private static final SimpleDateFormat HMSZ = new SimpleDateFormat("HH:mm:ssZ");
+	private static final String HMSZ = "HH:mm:ssZ";
 
 	// patterns for the XML Schema builtin types
 
@@ -133,9 +133,7 @@ public class XmlUtil {
 			String tz = dateString.substring(24);
 			dateString = dateString.substring(0, 24) + tz.substring(0, 2) + tz.substring(3);
 		}
-		synchronized (YMDHMSMZ) {
-			return YMDHMSMZ.parse(dateString);
-		}
+		return DateFormats.parse(YMDHMSMZ, dateString, true);
 	}
 
 	/**
@@ -172,9 +170,7 @@ public class XmlUtil {
 			String tz = dateString.substring(20);
 			dateString = dateString.substring(0, 20) + tz.substring(0, 2) + tz.substring(3);
 		}
-		synchronized (YMDHMSZ) {
-			return YMDHMSZ.parse(dateString);
-		}
+		return DateFormats.parse(YMDHMSZ, dateString, true);
 	}
 
 	/**
@@ -211,9 +207,7 @@ public class XmlUtil {
 			String tz = dateString.substring(11);
 			dateString = dateString.substring(0, 11) + tz.substring(0, 2) + tz.substring(3);
 		}
-		synchronized (YMDZ) {
-			return YMDZ.parse(dateString);
-		}
+		return DateFormats.parse(YMDZ, dateString, true);
 	}
 
 	/**
@@ -250,9 +244,7 @@ public class XmlUtil {
 			String tz = dateString.substring(13);
 			dateString = dateString.substring(0, 13) + tz.substring(0, 2) + tz.substring(3);
 		}
-		synchronized (HMSMZ) {
-			return HMSMZ.parse(dateString);
-		}
+		return DateFormats.parse(HMSMZ, dateString, true);
 	}
 
 	/**
@@ -289,9 +281,7 @@ public class XmlUtil {
 			String tz = dateString.substring(9);
 			dateString = dateString.substring(0, 9) + tz.substring(0, 2) + tz.substring(3);
 		}
-		synchronized (HMSZ) {
-			return HMSZ.parse(dateString);
-		}
+		return DateFormats.parse(HMSZ, dateString, true);
 	}
 
 	/**
@@ -309,10 +299,8 @@ public class XmlUtil {
 	 * @throws ParseException
 	 */
 	public static String formatDateYMDHMSMZ(Date date) {
-		synchronized (YMDHMSMZ) {
-			String dateString = YMDHMSMZ.format(date);
-			return dateString.substring(0, 26) + ":" + dateString.substring(26);
-		}
+		String dateString = DateFormats.format(YMDHMSMZ, date);
+		return dateString.substring(0, 26) + ":" + dateString.substring(26);
 	}
 
 	/**
@@ -330,10 +318,8 @@ public class XmlUtil {
 	 * @throws ParseException
 	 */
 	public static String formatDateYMDHMSZ(Date date) {
-		synchronized (YMDHMSZ) {
-			String dateString = YMDHMSZ.format(date);
-			return dateString.substring(0, 26) + ":" + dateString.substring(26);
-		}
+		String dateString = DateFormats.format(YMDHMSZ, date);
+		return dateString.substring(0, 26) + ":" + dateString.substring(26);
 	}
 
 	/**
@@ -351,10 +337,8 @@ public class XmlUtil {
 	 * @throws ParseException
 	 */
 	public static String formatDateYMDZ(Date date) {
-		synchronized (YMDZ) {
-			String dateString = YMDZ.format(date);
-			return dateString.substring(0, 13) + ":" + dateString.substring(13);
-		}
+		String dateString = DateFormats.format(YMDZ, date);
+		return dateString.substring(0, 13) + ":" + dateString.substring(13);
 	}
 
 	/**
@@ -372,10 +356,8 @@ public class XmlUtil {
 	 * @throws ParseException
 	 */
 	public static String formatDateHMSMZ(Date date) {
-		synchronized (HMSMZ) {
-			String dateString = HMSMZ.format(date);
-			return dateString.substring(0, 15) + ":" + dateString.substring(15);
-		}
+		String dateString = DateFormats.format(HMSMZ, date);
+		return dateString.substring(0, 15) + ":" + dateString.substring(15);
 	}
 
 	/**
@@ -393,10 +375,8 @@ public class XmlUtil {
 	 * @throws ParseException
 	 */
 	public static String formatDateHMSZ(Date date) {
-		synchronized (HMSZ) {
-			String dateString = HMSZ.format(date);
-			return dateString.substring(0, 11) + ":" + dateString.substring(11);
-		}
+		String dateString = DateFormats.format(HMSZ, date);
+		return dateString.substring(0, 11) + ":" + dateString.substring(11);
 	}
 
 	/**
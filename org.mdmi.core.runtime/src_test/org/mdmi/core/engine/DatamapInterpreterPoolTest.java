@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mdmi.MDMIFactory;
+import org.mdmi.MessageGroup;
+import org.mdmi.core.MdmiException;
+
+public class DatamapInterpreterPoolTest {
+
+	@BeforeEach
+	public void setUp() {
+		System.setProperty(DatamapInterpreterPool.PARAM_POOL_SIZE, "1");
+		System.setProperty(DatamapInterpreterPool.PARAM_POOL_WAIT, "200");
+	}
+
+	@AfterEach
+	public void tearDown() {
+		System.clearProperty(DatamapInterpreterPool.PARAM_POOL_SIZE);
+		System.clearProperty(DatamapInterpreterPool.PARAM_POOL_WAIT);
+	}
+
+	@Test
+	public void testPoolOfGroup() {
+		MessageGroup group = group("CDA");
+		MessageGroup reloaded = group("CDA");
+
+		DatamapInterpreterPool pool = DatamapInterpreterPool.of(group, DatamapInterpreterPoolTest::interpreter);
+		assertSame(pool, DatamapInterpreterPool.of(group, DatamapInterpreterPoolTest::interpreter));
+		assertNotSame(pool, DatamapInterpreterPool.of(reloaded, DatamapInterpreterPoolTest::interpreter));
+	}
+
+	@Test
+	public void testBoundedWait() {
+		DatamapInterpreterPool pool = DatamapInterpreterPool.of(group("CDA"), DatamapInterpreterPoolTest::interpreter);
+		DatamapInterpreter borrowed = pool.borrow();
+
+		assertThrows(MdmiException.class, pool::borrow);
+
+		pool.release(borrowed);
+		assertSame(borrowed, pool.borrow());
+	}
+
+	@Test
+	public void testWaitForRelease() throws Exception {
+		DatamapInterpreterPool pool = DatamapInterpreterPool.of(group("CDA"), DatamapInterpreterPoolTest::interpreter);
+		DatamapInterpreter borrowed = pool.borrow();
+
+		CompletableFuture<DatamapInterpreter> waiting = CompletableFuture.supplyAsync(pool::borrow);
+		Thread.sleep(50);
+		pool.release(borrowed);
+
+		assertSame(borrowed, waiting.get(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testFailedCreation() {
+		DatamapInterpreterPool pool = DatamapInterpreterPool.of(group("CDA"), () -> {
+			throw new RuntimeException("Unable to Load Script");
+		});
+
+		assertEquals("Unable to Load Script", assertThrows(RuntimeException.class, pool::borrow).getMessage());
+		// the permit of the failed interpreter was given back
+		assertEquals("Unable to Load Script", assertThrows(RuntimeException.class, pool::borrow).getMessage());
+	}
+
+	private static MessageGroup group(String name) {
+		MessageGroup group = MDMIFactory.eINSTANCE.createMessageGroup();
+		group.setName(name);
+		return group;
+	}
+
+	private static DatamapInterpreter interpreter() {
+		return new DatamapInterpreter((IScriptBackend.Script) null);
+	}
+
+} // DatamapInterpreterPoolTest
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mdmi.DTSPrimitive;
+import org.mdmi.MDMIFactory;
+import org.mdmi.core.engine.javascript.BuiltinRuleFunctions;
+
+/**
+ * The rule functions a map defines as a built in one, or as a wrapper of a Utils call, run in Java; the others in the
+ * script.
+ */
+public class RuleFunctionsTest {
+
+	private static final String FORMAT_DATE = "function CDADateToDate(source, target) {\n" +
+			"\ttarget.setValue(Utils.FormatDate('yyyyMMddHHmmssZ', \"yyyy-MM-dd'T'HH:mm:ss+zzzz\",\n" +
+			"\t\tsource));\n}\n";
+
+	private final List<String> scriptCalls = new ArrayList<>();
+
+	@AfterEach
+	public void tearDown() {
+		System.clearProperty(RuleFunctions.PARAM_JAVA_FUNCTIONS);
+	}
+
+	@Test
+	public void testFormatDate() throws Exception {
+		XValue target = value();
+		RuleFunctions.resolve(script(), FORMAT_DATE, "CDADateToDate").call(
+			"20150801103000-0500", target, null, null);
+
+		assertEquals("2015-08-01T10:30:00-05:00", target.getValue());
+		assertEquals(0, scriptCalls.size());
+	}
+
+	@Test
+	public void testUtilsCalls() {
+		assertNotNull(
+			BuiltinRuleFunctions.bind(
+				"function ToDate(s, t, properties, rule) { t.setValue( Utils.FormatDate(\"yyyyMMdd\", 'yyyy-MM-dd'," +
+						" s.getValue()) ) }"));
+		assertNotNull(
+			BuiltinRuleFunctions.bind(
+				"function ToGender(source, target) { target.setValue(Utils.transform(source.value(), 'gender')); }"));
+
+		// anything else the function does, or other arguments, stay in the script
+		assertNull(
+			BuiltinRuleFunctions.bind(
+				"function ToGender(source, target) { target.setValue(Utils.transform(source, 'gender') + 'x'); }"));
+		assertNull(
+			BuiltinRuleFunctions.bind(
+				"function ToGender(source, target) { target.setValue(Utils.transform(target, 'gender')); }"));
+		assertNull(
+			BuiltinRuleFunctions.bind(
+				"function ToGender(source, target) { var s = source; target.setValue(Utils.transform(s, 'x')); }"));
+		assertNull(
+			BuiltinRuleFunctions.bind(
+				"function ToDate(source, target) { target.setValue(Utils.FormatDate('yyyyMMdd', source)); }"));
+	}
+
+	@Test
+	public void testDefinedDifferently() throws Exception {
+		String script = "function CopyValue(source, target) {\n\ttarget.setValue(source);\n}\n";
+		RuleFunctions.resolve(script(), script, "CopyValue").call("value", value(), null, null);
+
+		assertEquals(List.of("CopyValue"), scriptCalls);
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		System.setProperty(RuleFunctions.PARAM_JAVA_FUNCTIONS, "false");
+		RuleFunctions.resolve(script(), FORMAT_DATE, "CDADateToDate").call("20150801", value(), null, null);
+
+		assertEquals(List.of("CDADateToDate"), scriptCalls);
+	}
+
+	private static XValue value() {
+		DTSPrimitive string = MDMIFactory.eINSTANCE.createDTSPrimitive();
+		string.setTypeName("String");
+		return new XValue("value", string);
+	}
+
+	// the script functions record their calls
+	private IScriptBackend.Script script() {
+		return new IScriptBackend.Script() {
+
+			@Override
+			public IScriptBackend.ScriptFunction getFunction(String name) {
+				return args -> invokeFunction(name, args);
+			}
+
+			@Override
+			public Object invokeMethod(Object thiz, String name, Object... args) throws NoSuchMethodException {
+				throw new NoSuchMethodException(name);
+			}
+
+			@Override
+			public Object invokeFunction(String name, Object... args) {
+				scriptCalls.add(name);
+				return null;
+			}
+		};
+	}
+
+} // RuleFunctionsTest
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.script.ScriptException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mdmi.MDMIFactory;
+import org.mdmi.core.runtime.CompiledMapTest;
+
+/**
+ * The script backends, each one that is available: {@link JavaScriptEngineBackend} needs a JavaScript script engine,
+ * {@link GraalScriptBackend} GraalJS on the class path.
+ */
+public class ScriptBackendTest {
+
+	private static final String SCRIPT = "function benchmark(source, target, properties, rule) { " +
+			"if (properties.containsKey('VALUESET')) { target.put('code', properties.get('VALUESET').get(source)); } " +
+			"else { target.put('code', source); } " + "} ";
+
+	private static final String COUNTER = "var counter = 0; function next() { return ++counter; }";
+
+	@BeforeEach
+	public void setUp() {
+		System.setProperty(ScriptCache.PARAM_CACHE_DIR, "");
+	}
+
+	@AfterEach
+	public void tearDown() {
+		System.clearProperty(ScriptCache.PARAM_CACHE_DIR);
+	}
+
+	@Test
+	public void testDatatypeMap() throws Exception {
+		for (IScriptBackend backend : backends()) {
+			DatamapInterpreter interpreter = new DatamapInterpreter(backend.load("datatypemap", SCRIPT));
+			Map<String, Object> target = new HashMap<>();
+			assertTrue(interpreter.execute("benchmark", "value", target, new Properties(), null), backend.getName());
+			assertEquals("value", target.get("code"), backend.getName());
+		}
+	}
+
+	@Test
+	public void testContextPerLoad() throws Exception {
+		for (IScriptBackend backend : backends()) {
+			IScriptBackend.Script first = backend.load("counter", COUNTER);
+			IScriptBackend.Script second = backend.load("counter", COUNTER);
+			assertEquals(1, ((Number) first.invokeFunction("next")).intValue(), backend.getName());
+			assertEquals(2, ((Number) first.invokeFunction("next")).intValue(), backend.getName());
+			assertEquals(1, ((Number) second.invokeFunction("next")).intValue(), backend.getName());
+		}
+	}
+
+	@Test
+	public void testEvalError() throws Exception {
+		for (IScriptBackend backend : backends()) {
+			IScriptBackend.EvalException e = assertThrows(
+				IScriptBackend.EvalException.class,
+				() -> backend.load("broken", "function before() { return 1; } throw 'broken';"), backend.getName());
+			assertEquals(1, ((Number) e.getScript().invokeFunction("before")).intValue(), backend.getName());
+		}
+	}
+
+	// as the engine it ran on before, an interpreter keeps the functions defined before the script failed
+	@Test
+	public void testInterpreterKeepsFailedScript() {
+		IScriptBackend.Script script = new IScriptBackend.Script() {
+
+			@Override
+			public IScriptBackend.ScriptFunction getFunction(String name) {
+				return args -> invokeFunction(name, args);
+			}
+
+			@Override
+			public Object invokeMethod(Object thiz, String name, Object... args) throws NoSuchMethodException {
+				throw new NoSuchMethodException(name);
+			}
+
+			@Override
+			public Object invokeFunction(String name, Object... args) throws NoSuchMethodException {
+				throw new NoSuchMethodException(name);
+			}
+		};
+		IScriptBackend failing = new IScriptBackend() {
+
+			@Override
+			public String getName() {
+				return "failing";
+			}
+
+			@Override
+			public Script load(String key, String source) throws ScriptException {
+				throw new EvalException("broken", script);
+			}
+		};
+
+		assertSame(script, new DatamapInterpreter(MDMIFactory.eINSTANCE.createMessageGroup(), failing).inv);
+	}
+
+	@Test
+	public void testBoundedSources() throws Exception {
+		IScriptBackend none = new CompiledMapTest.NoScripts();
+		for (int i = 0; i < 80; i++) {
+			ScriptCache.load("function f" + i + "() { return " + i + "; }", none);
+		}
+		assertTrue(ScriptCache.size() <= Integer.getInteger(ScriptCache.PARAM_CACHE_SIZE, 64));
+	}
+
+	private static List<IScriptBackend> backends() {
+		List<IScriptBackend> backends = new ArrayList<>();
+		if (JavaScriptEngineBackend.isAvailable()) {
+			backends.add(ScriptCache.backend(JavaScriptEngineBackend.NAME));
+		}
+		if (GraalScriptBackend.isAvailable()) {
+			IScriptBackend graal = ScriptCache.backend(GraalScriptBackend.NAME);
+			try {
+				graal.load("empty", "");
+				backends.add(graal);
+			} catch (ScriptException | RuntimeException | LinkageError e) {
+				// the polyglot API without the JavaScript language
+			}
+		}
+		assumeFalse(backends.isEmpty(), "No script backend available");
+		return backends;
+	}
+
+} // ScriptBackendTest
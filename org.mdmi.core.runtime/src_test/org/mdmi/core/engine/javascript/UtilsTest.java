@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2017,2018 MDIX.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir(MDIX) - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.javascript;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * FormatDate classifies the date once, parses it with the format its class fits, and shares its results between the
+ * threads. The deprecated mapOfTransforms reads the code maps.
+ */
+public class UtilsTest {
+
+	private static final String HL7 = "yyyyMMddHHmmssZ";
+
+	private static final String FHIR = "yyyy-MM-dd'T'HH:mm:ss+zzzz";
+
+	@Test
+	public void testFormatDate() {
+		assertEquals("2015-08-01T10:30:00-05:00", Utils.FormatDate(HL7, FHIR, "20150801103000-0500"));
+		assertEquals("2015-08-01", Utils.FormatDate(HL7, FHIR, "20150801"));
+		assertEquals("2015-08", Utils.FormatDate(HL7, FHIR, "201508"));
+		assertEquals("20150801103000-0500", Utils.FormatDate(FHIR, HL7, "2015-08-01T10:30:00-05:00"));
+		assertEquals("20150801", Utils.FormatDate(FHIR, HL7, "2015-08-01"));
+		assertEquals("2015-08-01", Utils.FormatDate("MM/dd/yyyy", "yyyy-MM-dd'T'hh:mm:ss", "8/1/2015"));
+
+		// the known data issues
+		assertEquals("201508", Utils.FormatDate(FHIR, HL7, "2015-08-"));
+		assertEquals("20150801", Utils.FormatDate(FHIR, HL7, "2015-08-01--2016"));
+
+		// the dates no format fits, or of values out of range, are kept
+		assertEquals("abc", Utils.FormatDate(HL7, FHIR, "abc"));
+		assertEquals("20151301", Utils.FormatDate(HL7, FHIR, "20151301"));
+		assertEquals("", Utils.FormatDate(HL7, FHIR, ""));
+	}
+
+	@Test
+	public void testSharedResults() throws Exception {
+		List<String> dates = new ArrayList<>();
+		for (int day = 1; day <= 28; day++) {
+			dates.add(String.format("201508%02d103000-0500", day));
+			dates.add(String.format("201508%02d", day));
+		}
+		List<String> expected = new ArrayList<>();
+		for (String date : dates) {
+			expected.add(Utils.FormatDate(HL7, FHIR, date));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<List<String>>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> {
+					List<String> formatted = new ArrayList<>();
+					for (String date : dates) {
+						formatted.add(Utils.FormatDate(HL7, FHIR, date));
+					}
+					return formatted;
+				}));
+			}
+			for (Future<List<String>> result : results) {
+				assertEquals(expected, result.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testMapOfTransforms(@TempDir File directory) throws Exception {
+		Files.write(new File(directory, "UtilsTestGender.properties").toPath(),
+			"M=male\nF=female\n".getBytes(StandardCharsets.UTF_8));
+		System.setProperty(CodeMaps.PARAM_DIR, directory.getAbsolutePath());
+		try {
+			assertEquals("male", Utils.mapOfTransforms.get("UtilsTestGender").get("M"));
+			assertEquals("female", Utils.mapOfTransforms.get("UtilsTestGender").getProperty("F"));
+			assertEquals(2, Utils.mapOfTransforms.get("UtilsTestGender").size());
+			assertNull(Utils.mapOfTransforms.get("UtilsTestGender").get("U"));
+			assertFalse(Utils.mapOfTransforms.containsKey("UtilsTestNone"));
+			assertNull(Utils.mapOfTransforms.get("UtilsTestNone"));
+		} finally {
+			System.clearProperty(CodeMaps.PARAM_DIR);
+		}
+	}
+
+} // UtilsTest
@@ -0,0 +1,388 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.terminology;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mdmi.core.engine.terminology.TerminologyStub.SOURCE;
+import static org.mdmi.core.engine.terminology.TerminologyStub.TARGET;
+import static org.mdmi.core.engine.terminology.TerminologyStub.expected;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mdmi.core.engine.ITerminologyTransform.TransformCode;
+import org.mdmi.core.engine.terminology.FHIRTerminologyTransform.Lookup;
+
+/**
+ * FHIRTerminologyTransform against a local stub terminology server, see {@link TerminologyStub}.
+ *
+ * Each test has its own stub, on its own port, so its own {@link CircuitBreaker}; the breaker does not open unless
+ * the test sets it to.
+ */
+public class FHIRTerminologyTransformTest {
+
+	private static final int THREADS = 8;
+
+	private static final int CODES = 200;
+
+	private TerminologyStub stub;
+
+	@BeforeAll
+	public static void setUpClass() {
+		// before TerminologyClient reads it
+		System.setProperty(TerminologyClient.PARAM_DEADLINE, "2000");
+	}
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		System.setProperty(CircuitBreaker.PARAM_FAILURE_RATE, "101");
+		stub = new TerminologyStub();
+		FHIRTerminologyTransform.setFHIRTerminologyURL(stub.url());
+		FHIRTerminologyTransform.processTerminology = true;
+		FHIRTerminologyTransform.cache.clear();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		FHIRTerminologyTransform.processTerminology = false;
+		FHIRTerminologyTransform.setFHIRTerminologyURL(null);
+		FHIRTerminologyTransform.cache.clear();
+		System.clearProperty(CircuitBreaker.PARAM_FAILURE_RATE);
+		System.clearProperty(CircuitBreaker.PARAM_OPEN);
+		System.clearProperty(CircuitBreaker.PARAM_SLOW);
+		stub.close();
+	}
+
+	// threads transforming random codes each get the transform of the stub, and a code goes to the stub once
+	@Test
+	public void testConcurrentTransforms() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				results.add(executor.submit(() -> {
+					FHIRTerminologyTransform transform = new FHIRTerminologyTransform();
+					Random random = new Random();
+					for (int i = 0; i < 2000; i++) {
+						String code = "C" + random.nextInt(CODES);
+						assertEquals(expected(code), transform.transform(SOURCE, code, TARGET).code, code);
+					}
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(stub.requests.get() <= CODES, stub.requests.get() + " requests");
+		assertTrue(FHIRTerminologyTransform.cache.getHits() > 0);
+		assertTrue(FHIRTerminologyTransform.cache.getNegativeHits() > 0);
+	}
+
+	// the callers of the former map still fill and read the cache through it
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testCodeValues() {
+		FHIRTerminologyTransform.processTerminology = false;
+		String key = FHIRTerminologyTransform.createKey(SOURCE, "X1", TARGET);
+		TransformCode code = new TransformCode("Y1", TARGET, "Translated X1");
+		FHIRTerminologyTransform.codeValues.put(key, code);
+
+		assertTrue(FHIRTerminologyTransform.codeValues.containsKey(key));
+		assertSame(code, FHIRTerminologyTransform.codeValues.get(key));
+		assertEquals(1, FHIRTerminologyTransform.codeValues.size());
+		assertSame(code, new FHIRTerminologyTransform().transform(SOURCE, "X1", TARGET));
+		assertSame(FHIRTerminologyTransform.BLANK, new FHIRTerminologyTransform().transform(SOURCE, "X2", TARGET));
+		assertThrows(UnsupportedOperationException.class, () -> FHIRTerminologyTransform.codeValues.entrySet());
+
+		assertSame(code, FHIRTerminologyTransform.codeValues.remove(key));
+		assertTrue(FHIRTerminologyTransform.codeValues.isEmpty());
+		assertEquals(0, stub.requests.get());
+	}
+
+	// all the threads miss the cache on the same code at once, they share one request
+	@Test
+	public void testCoalesce() throws Exception {
+		stub.delay = 200;
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<TransformCode>> results = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					return new FHIRTerminologyTransform().transform(SOURCE, "C2", TARGET);
+				}));
+			}
+			start.countDown();
+			for (Future<TransformCode> result : results) {
+				assertEquals("T2", result.get().code);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, stub.requests.get());
+	}
+
+	// the threads waiting on a lookup to a hung server give up with it, the code passes through
+	@Test
+	public void testCoalesceDeadline() throws Exception {
+		stub.delay = 5000;
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Long>> results = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					long started = System.nanoTime();
+					assertEquals("C4", new FHIRTerminologyTransform().transform(SOURCE, "C4", TARGET).code);
+					return (System.nanoTime() - started) / 1000000;
+				}));
+			}
+			start.countDown();
+			for (Future<Long> result : results) {
+				long millis = result.get();
+				assertTrue(millis < 4000, millis + " ms");
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, stub.requests.get());
+	}
+
+	@Test
+	public void testPrefetchBatch() {
+		prefetch(true);
+		assertTrue(stub.batches.get() > 0);
+	}
+
+	@Test
+	public void testPrefetchOneByOne() {
+		prefetch(false);
+		assertEquals(CODES, stub.requests.get());
+	}
+
+	// the prefetch threads do not keep the JVM alive
+	@Test
+	public void testPrefetchThreads() {
+		prefetch(false);
+		int threads = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if ("mdmi-terminology".equals(thread.getName())) {
+				assertTrue(thread.isDaemon());
+				threads++;
+			}
+		}
+		assertTrue(threads > 0);
+	}
+
+	// codes to their own code system are not translated, one at a time nor prefetched
+	@Test
+	public void testSameCodeSystem() {
+		FHIRTerminologyTransform transform = new FHIRTerminologyTransform();
+		List<Lookup> lookups = new ArrayList<>();
+		for (int i = 0; i < CODES; i++) {
+			lookups.add(new Lookup(SOURCE, "C" + i, SOURCE));
+		}
+		assertEquals(0, transform.prefetch(lookups));
+		for (int i = 0; i < CODES; i++) {
+			assertSame(FHIRTerminologyTransform.BLANK, transform.transform(SOURCE, "C" + i, SOURCE));
+		}
+		assertEquals(0, stub.requests.get() + stub.batches.get());
+	}
+
+	// prefetch all the codes, then transforming them does not go to the server
+	private void prefetch(boolean batch) {
+		stub.batch = batch;
+		FHIRTerminologyTransform transform = new FHIRTerminologyTransform();
+		List<Lookup> lookups = new ArrayList<>();
+		for (int i = 0; i < CODES; i++) {
+			lookups.add(new Lookup(SOURCE, "C" + i, TARGET));
+		}
+		assertEquals(CODES, transform.prefetch(lookups));
+		int requests = stub.requests.get() + stub.batches.get();
+
+		for (int i = 0; i < CODES; i++) {
+			assertEquals(expected("C" + i), transform.transform(SOURCE, "C" + i, TARGET).code, "C" + i);
+		}
+		assertEquals(requests, stub.requests.get() + stub.batches.get());
+	}
+
+	// the cache emptied and warmed from the store as on a restart, only the failed lookups go to the server again
+	@Test
+	public void testRestart(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("terminology.log");
+		FHIRTerminologyTransform.setCacheFile(file.toString());
+		FHIRTerminologyTransform transform = new FHIRTerminologyTransform();
+		try {
+			for (int i = 0; i < CODES; i++) {
+				transform.transform(SOURCE, "C" + i, TARGET);
+			}
+			// closing the store writes what is queued
+			FHIRTerminologyTransform.setCacheFile(null);
+
+			FHIRTerminologyTransform.cache.clear();
+			stub.requests.set(0);
+			FHIRTerminologyTransform.setCacheFile(file.toString());
+			assertEquals(CODES - CODES / 10, FHIRTerminologyTransform.cache.size());
+			for (int i = 0; i < CODES; i++) {
+				assertEquals(expected("C" + i), transform.transform(SOURCE, "C" + i, TARGET).code, "C" + i);
+			}
+			assertEquals(CODES / 10, stub.requests.get());
+		} finally {
+			FHIRTerminologyTransform.setCacheFile(null);
+		}
+	}
+
+	// with a local ConceptMap, only the codes it does not have go to the server
+	@Test
+	public void testConceptMap(@TempDir Path dir) throws Exception {
+		StringBuilder json = new StringBuilder("{\"resourceType\":\"ConceptMap\",\"sourceUri\":\"" + SOURCE + "\",");
+		json.append("\"targetUri\":\"" + TARGET + "\",\"group\":[{\"element\":[");
+		for (int n = 0; n < CODES; n++) {
+			if (n % 10 == 9) {
+				continue;
+			}
+			json.append(n > 0
+					? ","
+					: "").append("{\"code\":\"C" + n + "\",\"target\":[");
+			json.append(n % 2 == 0
+					? "{\"code\":\"T" + n + "\",\"equivalence\":\"equivalent\"}"
+					: "{\"equivalence\":\"unmatched\"}");
+			json.append("]}");
+		}
+		json.append("]}]}");
+		Path maps = Files.createDirectory(dir.resolve("test" + ConceptMapIndex.EXTENSION));
+		Files.write(maps.resolve("test.json"), json.toString().getBytes(StandardCharsets.UTF_8));
+		String mapFile = dir.resolve("test.mdmi").toString();
+
+		ConceptMapIndex.preload("test", mapFile);
+		try {
+			assertEquals(CODES - CODES / 10, ConceptMapIndex.size());
+			// the ConceptMaps of a group do not translate the codes of the others
+			assertNull(ConceptMapIndex.get(List.of("other"), SOURCE, "C0", TARGET));
+			FHIRTerminologyTransform transform = new FHIRTerminologyTransform();
+			transform.setGroups("other", "test");
+			for (int i = 0; i < CODES; i++) {
+				assertEquals(expected("C" + i), transform.transform(SOURCE, "C" + i, TARGET).code, "C" + i);
+			}
+			assertEquals(CODES / 10, stub.requests.get());
+		} finally {
+			Files.delete(maps.resolve("test.json"));
+			ConceptMapIndex.preload("test", mapFile);
+		}
+	}
+
+	// the stub fails, is slow, then hangs; the breaker opens each time and the lookups do not wait on the stub
+	@Test
+	public void testCircuitBreaker() throws Exception {
+		System.setProperty(CircuitBreaker.PARAM_FAILURE_RATE, "50");
+		System.setProperty(CircuitBreaker.PARAM_OPEN, "500");
+		System.setProperty(CircuitBreaker.PARAM_SLOW, "100");
+		CircuitBreaker breaker = FHIRTerminologyTransform.getCircuitBreaker();
+		FHIRTerminologyTransform transform = new FHIRTerminologyTransform();
+
+		stub.fail = true;
+		Lookups failing = lookups(transform, 0, 100);
+		assertTrue(stub.requests.get() < 100, stub.requests.get() + " requests");
+		assertTrue(failing.degraded > 0);
+		assertEquals(0, failing.translated);
+		assertTrue(failing.slowest < 1000, failing.slowest + " ms");
+		assertTrue(breaker.getTrips() > 0);
+
+		stub.fail = false;
+		Thread.sleep(600);
+		assertEquals(1, lookups(transform, 100, 1).translated);
+		assertFalse(breaker.isOpen());
+		// the refused lookups were not cached
+		assertEquals(1, lookups(transform, 99, 1).translated);
+
+		stub.requests.set(0);
+		stub.delay = 300;
+		Lookups slow = lookups(transform, 200, 100);
+		assertTrue(stub.requests.get() < 100, stub.requests.get() + " requests");
+		assertTrue(slow.degraded > 0);
+
+		Thread.sleep(600);
+		stub.delay = 5000;
+		Lookups hung = lookups(transform, 300, 1);
+		assertEquals(0, hung.translated);
+		assertTrue(hung.slowest < 4000, hung.slowest + " ms");
+	}
+
+	// while the breaker is open, the lookups keep the code in the failed degraded mode, and nothing is prefetched
+	@Test
+	public void testDegradedFailed() {
+		System.setProperty(CircuitBreaker.PARAM_FAILURE_RATE, "50");
+		FHIRTerminologyTransform transform = new FHIRTerminologyTransform();
+		stub.fail = true;
+		lookups(transform, 0, 20);
+		assertTrue(FHIRTerminologyTransform.getCircuitBreaker().isOpen());
+
+		FHIRTerminologyTransform.degradedMode = FHIRTerminologyTransform.DegradedMode.FAILED;
+		try {
+			stub.requests.set(0);
+			TransformCode result = transform.transform(SOURCE, "C100", TARGET);
+			assertEquals("C100", result.code);
+			assertEquals("", result.system);
+			assertEquals(0, transform.prefetch(List.of(new Lookup(SOURCE, "C102", TARGET))));
+			assertEquals(0, stub.requests.get() + stub.batches.get());
+		} finally {
+			FHIRTerminologyTransform.degradedMode = FHIRTerminologyTransform.DegradedMode.PASSTHROUGH;
+		}
+	}
+
+	private static final class Lookups {
+		int translated;
+
+		int degraded;
+
+		long slowest;
+	}
+
+	// transform the even codes from the first, which the stub translates; degraded lookups are BLANK
+	private static Lookups lookups(FHIRTerminologyTransform transform, int first, int count) {
+		Lookups lookups = new Lookups();
+		for (int i = 0; i < count; i++) {
+			long start = System.nanoTime();
+			TransformCode result = transform.transform(SOURCE, "C" + (first + i) * 2, TARGET);
+			lookups.slowest = Math.max(lookups.slowest, (System.nanoTime() - start) / 1000000);
+			if (result == FHIRTerminologyTransform.BLANK) {
+				lookups.degraded++;
+			} else if (result.code.startsWith("T")) {
+				lookups.translated++;
+			}
+		}
+		return lookups;
+	}
+
+} // FHIRTerminologyTransformTest
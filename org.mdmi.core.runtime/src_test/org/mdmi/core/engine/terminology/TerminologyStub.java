@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.terminology;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stub $translate and batch endpoint, counts the requests it gets.
+ *
+ * The stub translates the codes C&lt;n&gt; to T&lt;n&gt; when n is even, has no translation when n is odd, and fails
+ * with a 500 for every tenth code.
+ */
+final class TerminologyStub implements AutoCloseable {
+
+	static final String SOURCE = "http://example.org/source";
+
+	static final String TARGET = "http://example.org/target";
+
+	private static final Pattern CODE = Pattern.compile("\"code\",\\s*\"valueString\":\\s*\"([^\"]*)\"");
+
+	final HttpServer server;
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	final AtomicInteger requests = new AtomicInteger();
+
+	final AtomicInteger batches = new AtomicInteger();
+
+	final Set<SocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+	volatile boolean batch = true;
+
+	// milliseconds the stub takes to answer a $translate
+	volatile int delay = 0;
+
+	// the stub fails every request with a 503
+	volatile boolean fail = false;
+
+	TerminologyStub() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/fhir/ConceptMap/$translate", this::translate);
+		server.createContext("/fhir", this::batch);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	String url() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/fhir";
+	}
+
+	private void translate(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		connections.add(exchange.getRemoteAddress());
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		String body;
+		try (InputStream in = exchange.getRequestBody()) {
+			body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+		if (fail) {
+			respond(exchange, 503, "{\"resourceType\":\"OperationOutcome\"}");
+			return;
+		}
+		Matcher matcher = CODE.matcher(body);
+		int n = number(
+			matcher.find()
+					? matcher.group(1)
+					: "");
+		respond(exchange, status(n), resource(n));
+	}
+
+	private void batch(HttpExchange exchange) throws IOException {
+		batches.incrementAndGet();
+		connections.add(exchange.getRemoteAddress());
+		if (fail) {
+			respond(exchange, 503, "{\"resourceType\":\"OperationOutcome\"}");
+			return;
+		}
+		if (!batch) {
+			respond(exchange, 405, "{\"resourceType\":\"OperationOutcome\"}");
+			return;
+		}
+		StringBuilder json = new StringBuilder(
+			"{\"resourceType\":\"Bundle\",\"type\":\"batch-response\",\"entry\":[");
+		try (InputStream in = exchange.getRequestBody()) {
+			String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+			JSONObject bundle = (JSONObject) new JSONParser().parse(body);
+			Iterator<?> entries = ((JSONArray) bundle.get("entry")).iterator();
+			while (entries.hasNext()) {
+				JSONObject resource = (JSONObject) ((JSONObject) entries.next()).get("resource");
+				int n = -1;
+				for (Object parameter : (JSONArray) resource.get("parameter")) {
+					if ("code".equals(((JSONObject) parameter).get("name"))) {
+						n = number((String) ((JSONObject) parameter).get("valueString"));
+					}
+				}
+				json.append("{\"response\":{\"status\":\"").append(status(n)).append("\"},\"resource\":");
+				json.append(resource(n)).append(entries.hasNext()
+						? "},"
+						: "}");
+			}
+		} catch (Exception e) {
+			respond(exchange, 400, "{\"resourceType\":\"OperationOutcome\"}");
+			return;
+		}
+		respond(exchange, 200, json.append("]}").toString());
+	}
+
+	private static int status(int n) {
+		return n % 10 == 9
+				? 500
+				: 200;
+	}
+
+	private static String resource(int n) {
+		if (n % 10 == 9) {
+			return "{\"resourceType\":\"OperationOutcome\"}";
+		} else if (n % 2 == 0) {
+			return "{\"resourceType\":\"Parameters\",\"parameter\":[{\"name\":\"result\",\"valueBoolean\":true}," +
+					"{\"name\":\"match\",\"part\":[{\"name\":\"concept\",\"valueCoding\":{\"system\":\"" + TARGET +
+					"\",\"code\":\"T" + n + "\",\"display\":\"Translated " + n + "\"}}]}]}";
+		}
+		return "{\"resourceType\":\"Parameters\",\"parameter\":[{\"name\":\"result\",\"valueBoolean\":false}]}";
+	}
+
+	private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	static int number(String code) {
+		try {
+			return Integer.parseInt(code.substring(1));
+		} catch (RuntimeException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the code the transform of the code has: its translation, blank if it has none, or the code itself if
+	 *         the stub fails on it
+	 */
+	static String expected(String code) {
+		int n = number(code);
+		return n % 10 == 9
+				? code
+				: n % 2 == 0
+						? "T" + n
+						: "";
+	}
+
+} // TerminologyStub
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2016 MDMIX Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     MDMIX Software, Inc - initial API and implementation
+ *
+ * Author:
+ *     Sean Muir
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.xml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mdmi.Bag;
+import org.mdmi.MDMIFactory;
+import org.mdmi.MessageModel;
+import org.mdmi.MessageSyntaxModel;
+import org.mdmi.Node;
+import org.mdmi.core.MdmiMessage;
+import org.mdmi.core.engine.YLeaf;
+import org.mdmi.core.engine.YNode;
+
+/**
+ * The streaming parse of DOMSAXSyntacticParser must give the syntax tree the DOM parse gives, on the sample CDA of
+ * the repository with a map of its header and sections, whose locations have compiled and XPath predicates, predicates
+ * on elements held back inside elements held back, and predicates on the text of the elements.
+ */
+public class DOMSAXSyntacticParserTest {
+
+	@AfterEach
+	public void tearDown() {
+		DOMSAXSyntacticParser.streaming = false;
+	}
+
+	@Test
+	public void testPredicatedNames() {
+		MessageModel model = model();
+		assertEquals(
+			new HashSet<>(Arrays.asList("templateId", "name", "section", "entry")),
+			DOMSAXSyntacticParser.predicatedNames(model.getSyntaxModel().getRoot()));
+	}
+
+	@Test
+	public void testStreamingParse() throws Exception {
+		MessageModel model = model();
+		byte[] data = Files.readAllBytes(document());
+
+		YNode dom = parse(model, data, false);
+		YNode streamed = parse(model, data, true);
+		assertEquals(dom.toString(), streamed.toString());
+
+		assertEquals(Arrays.asList("2015-08-01"), values(streamed, "documentExtension"));
+		assertEquals(Arrays.asList("Continuity of Care Document"), values(streamed, "documentTitle"));
+		assertEquals(Arrays.asList("Jones"), values(streamed, "family"));
+		assertEquals(Arrays.asList("F"), values(streamed, "gender"));
+		assertEquals(Arrays.asList("Problems"), values(streamed, "problemsTitle"));
+		assertEquals(Arrays.asList("ACT", "ACT"), values(streamed, "problemClass"));
+		assertEquals(Arrays.asList("Allergies and Adverse Reactions"), values(streamed, "allergiesTitle"));
+		assertEquals(Arrays.asList("MEDICATIONS"), values(streamed, "medicationsTitle"));
+		assertEquals(Arrays.asList(), values(streamed, "noteTitle"));
+	}
+
+	// the text of a held back element is its full text content, CDATA and entities included
+	@Test
+	public void testStreamingText() throws Exception {
+		MessageModel model = model();
+		String xml = "<ClinicalDocument><component><structuredBody><component><section>" +
+				"<code code='48765-2'/>Allergies <b>to <![CDATA[<penicillin>]]></b> &amp; " +
+				"<title>A<i>ll</i>ergies</title>" +
+				"<entry><observation><text>Severe</text></observation></entry></section>" +
+				"</component></structuredBody></component></ClinicalDocument>";
+		byte[] data = xml.getBytes(StandardCharsets.UTF_8);
+
+		YNode dom = parse(model, data, false);
+		YNode streamed = parse(model, data, true);
+		assertEquals(dom.toString(), streamed.toString());
+		assertEquals(Arrays.asList("A<i>ll</i>ergies"), values(streamed, "noteTitle"));
+		assertEquals(Arrays.asList(), values(streamed, "allergiesTitle"));
+	}
+
+	private static YNode parse(MessageModel model, byte[] data, boolean streaming) {
+		DOMSAXSyntacticParser.streaming = streaming;
+		return (YNode) new DOMSAXSyntacticParser("CDAR2").parse(model, new MdmiMessage(data));
+	}
+
+	// the sample CDA, the tests run in the project directory or in the repository directory
+	private static Path document() {
+		Path file = Paths.get("..", "files", "messages", "CDA.xml");
+		return Files.exists(file)
+				? file
+				: Paths.get("files", "messages", "CDA.xml");
+	}
+
+	private static List<String> values(YNode ynode, String name) {
+		List<String> values = new ArrayList<>();
+		if (ynode instanceof YLeaf) {
+			if (name.equals(ynode.getNode().getName())) {
+				String value = ((YLeaf) ynode).getValue();
+				values.add(value != null
+						? value.trim()
+						: null);
+			}
+		} else {
+			for (YNode child : ynode.getChildren()) {
+				values.addAll(values(child, name));
+			}
+		}
+		return values;
+	}
+
+	private static MessageModel model() {
+		Bag root = bag("ClinicalDocument", "ClinicalDocument");
+
+		Bag template = add(root, bag("documentTemplate", "templateId[@root='2.16.840.1.113883.10.20.22.1.2']"));
+		add(template, leaf("documentExtension", "@extension"));
+		add(root, leaf("documentTitle", "title"));
+
+		Bag patient = add(add(add(root, bag("recordTarget", "recordTarget")), bag("patientRole", "patientRole")),
+			bag("patient", "patient"));
+		Bag name = add(patient, bag("legalName", "name[@use='L']"));
+		add(name, leaf("family", "family"));
+		add(add(patient, bag("administrativeGender", "administrativeGenderCode")), leaf("gender", "@code"));
+
+		Bag problems = add(root, bag("problems", "component/structuredBody/component/section[code/@code='11450-4']"));
+		add(problems, leaf("problemsTitle", "title"));
+		// an XPath predicate, on an element held back inside one held back
+		Bag problem = add(problems, bag("problem", "entry[act and not(@typeCode)]"));
+		problem.setMaxOccurs(-1);
+		add(add(problem, bag("concern", "act")), leaf("problemClass", "@classCode"));
+
+		// a predicate on the full text content, the text of the descendants once
+		Bag note = add(
+			root, bag(
+				"note",
+				"component/structuredBody/component/section[normalize-space(.)='Allergies to <penicillin> & " +
+						"AllergiesSevere']"));
+		add(note, leaf("noteTitle", "title"));
+
+		Bag allergies = add(
+			root, bag("allergies", "component/structuredBody/component/section[contains(., 'Severe') and code]"));
+		add(allergies, leaf("allergiesTitle", "title"));
+		Bag reaction = add(allergies, bag("reaction", "entry[contains(observation, 'Severe')]"));
+		reaction.setMaxOccurs(-1);
+		add(add(reaction, bag("observation", "observation")), leaf("severity", "text"));
+
+		Bag medications = add(
+			root, bag(
+				"medications",
+				"component/structuredBody/component/section[templateId/@root='2.16.840.1.113883.10.20.22.2.1.1' and " +
+						"title='MEDICATIONS']"));
+		add(medications, leaf("medicationsTitle", "title"));
+
+		MessageSyntaxModel syntaxModel = MDMIFactory.eINSTANCE.createMessageSyntaxModel();
+		syntaxModel.setName("CDA");
+		syntaxModel.setRoot(root);
+		MessageModel model = MDMIFactory.eINSTANCE.createMessageModel();
+		model.setMessageModelName("CDA");
+		model.setSyntaxModel(syntaxModel);
+		return model;
+	}
+
+	private static Bag bag(String name, String location) {
+		Bag bag = MDMIFactory.eINSTANCE.createBag();
+		bag.setName(name);
+		bag.setLocation(location);
+		bag.setMaxOccurs(1);
+		return bag;
+	}
+
+	private static Node leaf(String name, String location) {
+		Node leaf = MDMIFactory.eINSTANCE.createLeafSyntaxTranslator();
+		leaf.setName(name);
+		leaf.setLocation(location);
+		leaf.setMaxOccurs(1);
+		return leaf;
+	}
+
+	private static <T extends Node> T add(Bag bag, T node) {
+		bag.getNodes().add(node);
+		return node;
+	}
+
+} // DOMSAXSyntacticParserTest
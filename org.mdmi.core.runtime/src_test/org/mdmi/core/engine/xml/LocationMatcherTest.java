@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2016 MDMIX Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     MDMIX Software, Inc - initial API and implementation
+ *
+ * Author:
+ *     Sean Muir
+ *
+ *******************************************************************************/
+package org.mdmi.core.engine.xml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.jupiter.api.Test;
+import org.mdmi.Bag;
+import org.mdmi.MDMIFactory;
+import org.mdmi.Node;
+
+/**
+ * The matchers are held by their containers, a syntax model that is no longer used goes away with its matchers.
+ */
+public class LocationMatcherTest {
+
+	@Test
+	public void testMatcherOfBag() {
+		Bag bag = bag();
+		LocationMatcher matcher = LocationMatcher.get(bag);
+
+		assertSame(matcher, LocationMatcher.get(bag));
+		assertNotSame(matcher, LocationMatcher.get(bag()));
+		assertEquals(1, matcher.candidates("section").size());
+		assertSame(bag.getNodes().get(0), matcher.candidates("section").get(0).node);
+	}
+
+	@Test
+	public void testNoMatcher() {
+		Bag bag = bag();
+		bag.getNodes().get(0).setLocationExpressionLanguage("MDMI");
+
+		assertNull(LocationMatcher.get(bag));
+		assertNull(LocationMatcher.get(bag));
+	}
+
+	@Test
+	public void testCollected() throws InterruptedException {
+		Bag bag = bag();
+		LocationMatcher.get(bag);
+		WeakReference<Bag> reference = new WeakReference<>(bag);
+		bag = null;
+
+		for (int i = 0; i < 20 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(reference.get());
+	}
+
+	private static Bag bag() {
+		Bag bag = MDMIFactory.eINSTANCE.createBag();
+		bag.setName("component");
+		bag.setLocation("component");
+		Node section = MDMIFactory.eINSTANCE.createBag();
+		section.setName("section");
+		section.setLocation("section[templateId/@root='2.16.840.1.113883.10.20.22.2.5.1']");
+		bag.getNodes().add(section);
+		return bag;
+	}
+
+} // LocationMatcherTest
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mdmi.Bag;
+import org.mdmi.ConversionRule;
+import org.mdmi.DTCStructured;
+import org.mdmi.DTSPrimitive;
+import org.mdmi.MDMIBusinessElementReference;
+import org.mdmi.MDMIDomainDictionaryReference;
+import org.mdmi.MDMIFactory;
+import org.mdmi.MDMIPackage;
+import org.mdmi.MessageGroup;
+import org.mdmi.MessageModel;
+import org.mdmi.MessageSyntaxModel;
+import org.mdmi.Node;
+import org.mdmi.SemanticElement;
+import org.mdmi.SemanticElementSet;
+import org.mdmi.core.Mdmi;
+import org.mdmi.core.engine.IScriptBackend;
+import org.mdmi.util.MDMIResourceFactoryImpl;
+import org.mdmi.util.MDMIUtil;
+
+/**
+ * A compiled map must run the transformations its XMI map runs: the runtime keys the values of the semantic elements
+ * by the ids they have in the XMI map.
+ */
+public class CompiledMapTest {
+
+	/**
+	 * The map has no scripts, the transfers run without a JavaScript engine.
+	 */
+	public static class NoScripts implements IScriptBackend {
+
+		@Override
+		public String getName() {
+			return "none";
+		}
+
+		@Override
+		public Script load(String key, String script) {
+			return new Script() {
+
+				@Override
+				public ScriptFunction getFunction(String name) {
+					return args -> invokeFunction(name, args);
+				}
+
+				@Override
+				public Object invokeMethod(Object thiz, String name, Object... args) throws NoSuchMethodException {
+					throw new NoSuchMethodException(name);
+				}
+
+				@Override
+				public Object invokeFunction(String name, Object... args) throws NoSuchMethodException {
+					throw new NoSuchMethodException(name);
+				}
+			};
+		}
+	}
+
+	@TempDir
+	File directory;
+
+	@BeforeAll
+	public static void setUp() {
+		if (System.getProperty("mdmi.script.backend") == null) {
+			System.setProperty("mdmi.script.backend", NoScripts.class.getName());
+		}
+	}
+
+	// the maps of the temporary directory are not loaded again by the next tests
+	@AfterEach
+	public void tearDown() {
+		for (String name : new String[] { "TransferSource", "TransferTarget", "CompiledSource", "CompiledTarget" }) {
+			Mdmi.INSTANCE().removeMapInfo(name);
+		}
+	}
+
+	@Test
+	public void testUniqueIds() throws IOException {
+		File xmi = save(directory, group("IdsXMI", "Patient", "name", true));
+		File compiled = new File(directory, "IdsXMI." + MDMIUtil.COMPILED_EXTENSION);
+		MDMIUtil.compile(xmi.getAbsolutePath(), compiled.getAbsolutePath());
+
+		Iterator<SemanticElement> expected = elements(MDMIUtil.load(xmi.getAbsolutePath())).iterator();
+		for (SemanticElement element : elements(MDMIUtil.load(compiled.getAbsolutePath()))) {
+			assertNotNull(element.getUniqueId());
+			assertEquals(expected.next().getUniqueId(), element.getUniqueId());
+		}
+	}
+
+	@Test
+	public void testTransfer() throws Exception {
+		File source = save(directory, group("TransferSource", "Patient", "name", true));
+		File target = save(directory, group("TransferTarget", "Person", "fullName", false));
+		Mdmi.INSTANCE().putMapInfo(new Mdmi.MapInfo("TransferSource", source.getAbsolutePath()));
+		Mdmi.INSTANCE().putMapInfo(new Mdmi.MapInfo("TransferTarget", target.getAbsolutePath()));
+		for (String name : new String[] { "CompiledSource", "CompiledTarget" }) {
+			File compiled = new File(directory, name + "." + MDMIUtil.COMPILED_EXTENSION);
+			MDMIUtil.compile(
+				save(directory, name.endsWith("Source")
+						? group(name, "Patient", "name", true)
+						: group(name, "Person", "fullName", false)).getAbsolutePath(),
+				compiled.getAbsolutePath());
+			Mdmi.INSTANCE().putMapInfo(new Mdmi.MapInfo(name, compiled.getAbsolutePath()));
+		}
+
+		byte[] message = "<Patient><name>Jones</name></Patient>".getBytes(StandardCharsets.UTF_8);
+		String fromXMI = RuntimeService.runTransformation(
+			"TransferSource.Patient", message, "TransferTarget.Person", null, null, null, null, null);
+		String fromCompiled = RuntimeService.runTransformation(
+			"CompiledSource.Patient", message, "CompiledTarget.Person", null, null, null, null, null);
+
+		assertTrue(fromXMI.contains("<fullName>Jones</fullName>"), fromXMI);
+		assertEquals(fromXMI, fromCompiled);
+	}
+
+	private static Iterable<SemanticElement> elements(MessageGroup group) {
+		List<SemanticElement> elements = new ArrayList<>();
+		for (MessageModel model : group.getModels()) {
+			elements.addAll(model.getElementSet().getSemanticElements());
+		}
+		return elements;
+	}
+
+	// saved as XMI, the objects get their ids
+	static File save(File directory, MessageGroup group) throws IOException {
+		File file = new File(directory, group.getName() + ".mdmi");
+		ResourceSet resourceSet = new ResourceSetImpl();
+		resourceSet.getPackageRegistry().put(MDMIPackage.eNS_URI, MDMIPackage.eINSTANCE);
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put("mdmi", new MDMIResourceFactoryImpl());
+		Resource resource = resourceSet.createResource(URI.createFileURI(file.getAbsolutePath()));
+		resource.getContents().add(group);
+		resource.save(Collections.emptyMap());
+		return file;
+	}
+
+	// a map of one model, its leaf mapped to or from the PersonName business element
+	static MessageGroup group(String name, String root, String leaf, boolean source) {
+		MDMIFactory factory = MDMIFactory.eINSTANCE;
+		MessageGroup group = factory.createMessageGroup();
+		group.setName(name);
+
+		DTSPrimitive string = factory.createDTSPrimitive();
+		string.setTypeName("String");
+		group.getDatatypes().add(string);
+
+		MDMIDomainDictionaryReference dictionary = factory.createMDMIDomainDictionaryReference();
+		dictionary.setName("Dictionary");
+		group.setDomainDictionary(dictionary);
+		MDMIBusinessElementReference businessElement = factory.createMDMIBusinessElementReference();
+		businessElement.setName("PersonName");
+		businessElement.setUniqueIdentifier("PersonName");
+		businessElement.setReferenceDatatype(string);
+		dictionary.getBusinessElements().add(businessElement);
+
+		MessageModel model = factory.createMessageModel();
+		model.setMessageModelName(root);
+		group.getModels().add(model);
+
+		MessageSyntaxModel syntaxModel = factory.createMessageSyntaxModel();
+		syntaxModel.setName(root);
+		Bag bag = factory.createBag();
+		bag.setName(root);
+		bag.setLocation(root);
+		bag.setMaxOccurs(1);
+		Node node = factory.createLeafSyntaxTranslator();
+		node.setName(leaf);
+		node.setLocation(leaf);
+		node.setMaxOccurs(1);
+		bag.getNodes().add(node);
+		syntaxModel.setRoot(bag);
+		model.setSyntaxModel(syntaxModel);
+
+		SemanticElementSet elementSet = factory.createSemanticElementSet();
+		elementSet.setName(root);
+		model.setElementSet(elementSet);
+		DTCStructured container = factory.createDTCStructured();
+		container.setTypeName(root);
+		group.getDatatypes().add(container);
+		SemanticElement parent = factory.createSemanticElement();
+		parent.setName(root);
+		parent.setElementType("NORMAL");
+		parent.setDatatype(container);
+		parent.setSyntaxNode(bag);
+		elementSet.getSemanticElements().add(parent);
+		SemanticElement element = factory.createSemanticElement();
+		element.setName(leaf);
+		element.setParent(parent);
+		element.setElementType("NORMAL");
+		element.setDatatype(string);
+		element.setSyntaxNode(node);
+		elementSet.getSemanticElements().add(element);
+
+		ConversionRule rule = factory.createConversionRule();
+		rule.setName(leaf + "Rule");
+		rule.setBusinessElement(businessElement);
+		if (source) {
+			element.getMapToMdmi().add(rule);
+		} else {
+			element.getMapFromMdmi().add(rule);
+		}
+		return group;
+	}
+
+} // CompiledMapTest
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2018 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.runtime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mdmi.core.Mdmi;
+import org.mdmi.core.engine.MdmiUow;
+
+/**
+ * A message transforms the same without the conversion plan of the models (see {@link MdmiUow#PARAM_PLANS}), with the
+ * plan kept, and through a {@link PreparedTransformation}, each time it is run.
+ */
+public class TransformationTest {
+
+	private static final int ITERATIONS = 5;
+
+	@TempDir
+	File directory;
+
+	@BeforeAll
+	public static void setUp() {
+		CompiledMapTest.setUp();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		Mdmi.INSTANCE().removeMapInfo("RunSource");
+		Mdmi.INSTANCE().removeMapInfo("RunTarget");
+	}
+
+	@Test
+	public void testSameTransformation() throws Exception {
+		File source = CompiledMapTest.save(directory, CompiledMapTest.group("RunSource", "Patient", "name", true));
+		File target = CompiledMapTest.save(directory, CompiledMapTest.group("RunTarget", "Person", "fullName", false));
+		Mdmi.INSTANCE().putMapInfo(new Mdmi.MapInfo("RunSource", source.getAbsolutePath()));
+		Mdmi.INSTANCE().putMapInfo(new Mdmi.MapInfo("RunTarget", target.getAbsolutePath()));
+
+		byte[] message = "<Patient><name>Jones</name></Patient>".getBytes(StandardCharsets.UTF_8);
+		PreparedTransformation prepared = RuntimeService.prepare("RunSource.Patient", "RunTarget.Person");
+		String expected = prepared.transform(message);
+		assertTrue(expected.contains("<fullName>Jones</fullName>"), expected);
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			System.setProperty(MdmiUow.PARAM_PLANS, "false");
+			try {
+				assertEquals(expected, run(message));
+			} finally {
+				System.clearProperty(MdmiUow.PARAM_PLANS);
+			}
+			assertEquals(expected, run(message));
+			assertEquals(expected, prepared.transform(message));
+		}
+	}
+
+	private static String run(byte[] message) throws Exception {
+		return RuntimeService.runTransformation(
+			"RunSource.Patient", message, "RunTarget.Person", null, new Properties(), new Properties(), null, null);
+	}
+
+} // TransformationTest
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.core.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * DateFormats must parse and format as SimpleDateFormat does, from several threads at once.
+ */
+public class DateFormatsTest {
+
+	private static final String[] PATTERNS = {
+			DateUtil.fmtISO, DateUtil.fmtHL7, "yyyyMMdd", "yyyyMMddHHmmss", "yyyy-MM-dd", "MM/dd/yyyy", "HH:mm:ss.SSSZ",
+			"yyyy-MM-ddZ", "yyyy", "yyMMdd", "dd-MMM-yyyy", "yyyy-MM-dd'T'HH:mm" };
+
+	@Test
+	public void testShortYearMonthDay() throws ParseException {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(DateFormats.parse("yyyyMMdd", "2021031", false));
+		assertEquals(2021, calendar.get(Calendar.YEAR));
+		assertEquals(Calendar.MARCH, calendar.get(Calendar.MONTH));
+		assertEquals(1, calendar.get(Calendar.DAY_OF_MONTH));
+		assertSame("yyyyMMdd", "2021031");
+	}
+
+	@Test
+	public void testShortMilliseconds() throws ParseException {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(DateFormats.parse("HH:mm:ss.SSS", "12:30:45.1", false));
+		assertEquals(1, calendar.get(Calendar.MILLISECOND));
+		assertSame("HH:mm:ss.SSS", "12:30:45.1");
+	}
+
+	@Test
+	public void testLongYear() {
+		assertNull(DateUtil.parseDateImplicitOptional("", "20210315123045-0500").getDate());
+		assertSame("yyyy", "20210315123045-0500");
+	}
+
+	@Test
+	public void testConcurrentParseAndFormat() throws Exception {
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				long seed = t;
+				results.add(executor.submit(() -> check(new Random(seed), 5000)));
+			}
+			for (Future<String> result : results) {
+				assertNull(result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// format random dates, and parse them, with a digit dropped or added too; null if all match SimpleDateFormat
+	private static String check(Random random, int iterations) throws ParseException {
+		SimpleDateFormat[] expected = new SimpleDateFormat[PATTERNS.length];
+		for (int p = 0; p < PATTERNS.length; p++) {
+			expected[p] = new SimpleDateFormat(PATTERNS[p]);
+		}
+		for (int i = 0; i < iterations; i++) {
+			int p = i % PATTERNS.length;
+			Date date = new Date(random.nextLong() % 4000000000000L);
+			String formatted = DateFormats.format(PATTERNS[p], date);
+			if (!formatted.equals(expected[p].format(date))) {
+				return PATTERNS[p] + " formats " + date.getTime() + " as " + formatted;
+			}
+			int at = random.nextInt(formatted.length());
+			String[] texts = {
+					formatted, formatted.substring(0, at) + formatted.substring(at + 1),
+					formatted.substring(0, at) + random.nextInt(10) + formatted.substring(at) };
+			for (String text : texts) {
+				for (boolean lenient : new boolean[] { true, false }) {
+					expected[p].setLenient(lenient);
+					Date want = parse(expected[p], text);
+					Date got = parse(PATTERNS[p], text, lenient);
+					if (want == null
+							? got != null
+							: !want.equals(got)) {
+						return PATTERNS[p] + " parses " + text + (lenient
+								? " leniently"
+								: "") + " to " + got + " instead of " + want;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private static void assertSame(String pattern, String text) {
+		for (boolean lenient : new boolean[] { true, false }) {
+			SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+			sdf.setLenient(lenient);
+			assertEquals(parse(sdf, text), parse(pattern, text, lenient), pattern + " " + text);
+		}
+	}
+
+	private static Date parse(SimpleDateFormat sdf, String text) {
+		try {
+			return sdf.parse(text);
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
+	private static Date parse(String pattern, String text, boolean lenient) {
+		try {
+			return DateFormats.parse(pattern, text, lenient);
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
+} // DateFormatsTest
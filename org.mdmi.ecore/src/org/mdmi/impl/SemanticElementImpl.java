@@ -16,6 +16,7 @@ import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.InternalEObject;
 import org.eclipse.emf.ecore.impl.ENotificationImpl;
 import org.eclipse.emf.ecore.impl.EObjectImpl;
+import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.util.EDataTypeUniqueEList;
 import org.eclipse.emf.ecore.util.EObjectContainmentEList;
 import org.eclipse.emf.ecore.util.EObjectContainmentWithInverseEList;
@@ -36,6 +37,7 @@ import org.mdmi.SemanticElementRelationship;
 import org.mdmi.SemanticElementSet;
 import org.mdmi.SemanticElementType;
 import org.mdmi.SimpleMessageComposite;
+import org.mdmi.util.MDMICompiledResourceImpl;
 
 /**
  * <!-- begin-user-doc -->
@@ -1936,8 +1938,12 @@ public class SemanticElementImpl extends EObjectImpl implements SemanticElement
 	@Override
 	public String getUniqueId() {
 		if (uniqueID == null) {
-			XMLResource xmlResource = (XMLResource) this.eResource();
-			uniqueID = xmlResource.getID(this);
+			Resource resource = this.eResource();
+			if (resource instanceof XMLResource) {
+				uniqueID = ((XMLResource) resource).getID(this);
+			} else if (resource instanceof MDMICompiledResourceImpl) {
+				uniqueID = ((MDMICompiledResourceImpl) resource).getID(this);
+			}
 		}
 		return uniqueID;
 	}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+
+/**
+ * The resource of a precompiled map, see {@link MDMIUtil#compile(String, String)}.
+ *
+ * The map is stored with the EMF binary resource format, after a table of the ids the objects had in their XMI
+ * resource, in the order of {@link #getAllContents()}; the runtime keys the values of the semantic elements by them,
+ * see {@link org.mdmi.SemanticElement#getUniqueId()}.
+ */
+public class MDMICompiledResourceImpl extends BinaryResourceImpl {
+
+	private final Map<EObject, String> ids = new HashMap<>();
+
+	public MDMICompiledResourceImpl(URI uri) {
+		super(uri);
+	}
+
+	/**
+	 * @return the id of the object in the XMI resource the map was compiled from, or null if it had none
+	 */
+	public String getID(EObject eObject) {
+		return ids.get(eObject);
+	}
+
+	/**
+	 * Set the id of an object of the resource, it is saved with the map.
+	 */
+	public void setID(EObject eObject, String id) {
+		if (id != null) {
+			ids.put(eObject, id);
+		} else {
+			ids.remove(eObject);
+		}
+	}
+
+	@Override
+	protected void doSave(OutputStream outputStream, Map<?, ?> options) throws IOException {
+		List<String> table = new ArrayList<>();
+		for (TreeIterator<EObject> it = getAllContents(); it.hasNext();) {
+			String id = ids.get(it.next());
+			table.add(id != null
+					? id
+					: "");
+		}
+		DataOutputStream data = new DataOutputStream(outputStream);
+		data.writeInt(table.size());
+		for (String id : table) {
+			data.writeUTF(id);
+		}
+		data.flush();
+		super.doSave(outputStream, options);
+	}
+
+	@Override
+	protected void doLoad(InputStream inputStream, Map<?, ?> options) throws IOException {
+		// read without buffering, the binary resource follows the table
+		DataInputStream data = new DataInputStream(inputStream);
+		int count = data.readInt();
+		if (count < 0) {
+			// the signature of a binary resource, the map was compiled without its ids
+			throw new IOException("No id table in " + getURI() + ", recompile the map");
+		}
+		String[] table = new String[count];
+		for (int i = 0; i < table.length; i++) {
+			table[i] = data.readUTF();
+		}
+		super.doLoad(inputStream, options);
+		int i = 0;
+		for (TreeIterator<EObject> it = getAllContents(); it.hasNext(); i++) {
+			EObject eObject = it.next();
+			if (i < table.length && !table[i].isEmpty()) {
+				ids.put(eObject, table[i]);
+			}
+		}
+		if (i != table.length) {
+			throw new IOException(
+				"The id table of " + getURI() + " has " + table.length + " ids for " + i + " objects, recompile the map");
+		}
+	}
+
+} // MDMICompiledResourceImpl
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2016 seanmuir.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     seanmuir - initial API and implementation
+ *
+ *******************************************************************************/
+package org.mdmi.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.mdmi.MessageGroup;
+
+/**
+ * Command line entry point to precompile maps, and to compare the load time of XMI and compiled maps.
+ *
+ * <pre>
+ * MDMICompiler compile map.mdmi [map.mdmib]
+ * MDMICompiler benchmark map.mdmi [iterations]
+ * </pre>
+ */
+public class MDMICompiler {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: MDMICompiler compile <map.mdmi> [<map.mdmib>]");
+			System.err.println("       MDMICompiler benchmark <map.mdmi> [<iterations>]");
+			System.exit(1);
+		}
+
+		String modelUri = args[1];
+		switch (args[0]) {
+			case "compile":
+				String compiledUri = args.length > 2
+						? args[2]
+						: compiledName(modelUri);
+				MDMIUtil.compile(modelUri, compiledUri);
+				System.out.println(
+					"Compiled " + modelUri + " (" + new File(modelUri).length() + " bytes) to " + compiledUri + " (" +
+							new File(compiledUri).length() + " bytes)");
+				break;
+			case "benchmark":
+				int iterations = args.length > 2
+						? Integer.parseInt(args[2])
+						: 10;
+				benchmark(modelUri, iterations);
+				break;
+			default:
+				System.err.println("Unknown command " + args[0]);
+				System.exit(1);
+		}
+	}
+
+	static String compiledName(String modelUri) {
+		int dot = modelUri.lastIndexOf('.');
+		return (dot > 0
+				? modelUri.substring(0, dot)
+				: modelUri) + "." + MDMIUtil.COMPILED_EXTENSION;
+	}
+
+	/**
+	 * Compile the map to a temporary file, then load both forms the given number of times, after one warm up load
+	 * each, and print the average load time.
+	 */
+	static void benchmark(String modelUri, int iterations) throws IOException {
+		File compiled = File.createTempFile("mdmi", "." + MDMIUtil.COMPILED_EXTENSION);
+		compiled.deleteOnExit();
+		MDMIUtil.compile(modelUri, compiled.getAbsolutePath());
+
+		long xmi = time(modelUri, iterations);
+		long binary = time(compiled.getAbsolutePath(), iterations);
+
+		System.out.println("Map       : " + modelUri);
+		System.out.println("XMI       : " + new File(modelUri).length() + " bytes, " + xmi / 1000000 + " ms");
+		System.out.println("Compiled  : " + compiled.length() + " bytes, " + binary / 1000000 + " ms");
+		if (binary > 0) {
+			System.out.println("Speedup   : " + String.format("%.1f", (double) xmi / binary) + "x");
+		}
+	}
+
+	private static long time(String uri, int iterations) {
+		MessageGroup messageGroup = MDMIUtil.load(uri);
+		long total = 0;
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			messageGroup = MDMIUtil.load(uri);
+			total += System.nanoTime() - start;
+		}
+		if (messageGroup.getModels().isEmpty()) {
+			System.out.println("Warning: " + uri + " has no message models");
+		}
+		return total / Math.max(1, iterations);
+	}
+
+} // MDMICompiler
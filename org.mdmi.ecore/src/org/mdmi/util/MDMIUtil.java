@@ -11,18 +11,28 @@
  *******************************************************************************/
 package org.mdmi.util;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 
 import org.eclipse.emf.common.util.ECollections;
+import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.resource.impl.ResourceFactoryImpl;
 import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.xmi.XMLResource;
 import org.mdmi.Bag;
 import org.mdmi.ConversionRule;
 import org.mdmi.MDMIBusinessElementReference;
@@ -41,17 +51,111 @@ import org.mdmi.SemanticElementRelationship;
  */
 public class MDMIUtil {
 
+	/**
+	 * File extension of precompiled maps, see {@link #compile(String, String)}.
+	 */
+	public static final String COMPILED_EXTENSION = "mdmib";
+
+	/**
+	 * Factory for precompiled maps, see {@link MDMICompiledResourceImpl}.
+	 */
+	static class CompiledResourceFactoryImpl extends ResourceFactoryImpl {
+		@Override
+		public Resource createResource(URI uri) {
+			return new MDMICompiledResourceImpl(uri);
+		}
+	}
+
+	/**
+	 * Load a map. Maps with the {@link #COMPILED_EXTENSION} extension are read as precompiled maps, anything else as
+	 * XMI.
+	 *
+	 * @param modelUri
+	 *            The map file name.
+	 * @return The message group in the map.
+	 */
 	public static MessageGroup load(String modelUri) {
 		MDMIPackage.eINSTANCE.getMessageGroup();
 		ResourceSet resourceSet = new ResourceSetImpl();
 		resourceSet.getPackageRegistry().put(MDMIPackage.eNS_URI, MDMIPackage.eINSTANCE);
 		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put("mdmi", new MDMIResourceFactoryImpl());
-		MDMIResourceImpl mdmiResourceImp = (MDMIResourceImpl) resourceSet.getResource(
-			URI.createFileURI(modelUri), true);
-		MessageGroup messageGroup = (MessageGroup) mdmiResourceImp.getContents().get(0);
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put(
+			COMPILED_EXTENSION, new CompiledResourceFactoryImpl());
+		Resource resource = resourceSet.getResource(URI.createFileURI(modelUri), true);
+		MessageGroup messageGroup = (MessageGroup) resource.getContents().get(0);
 		return messageGroup;
 	}
 
+	/**
+	 * Load a precompiled map from a stream.
+	 *
+	 * @param inputStream
+	 *            The stream with the compiled map, see {@link #compile(MessageGroup, OutputStream)}.
+	 * @return The message group in the map.
+	 * @throws IOException
+	 */
+	public static MessageGroup loadCompiled(InputStream inputStream) throws IOException {
+		MDMIPackage.eINSTANCE.getMessageGroup();
+		ResourceSet resourceSet = new ResourceSetImpl();
+		resourceSet.getPackageRegistry().put(MDMIPackage.eNS_URI, MDMIPackage.eINSTANCE);
+		Resource resource = new MDMICompiledResourceImpl(URI.createURI("model." + COMPILED_EXTENSION));
+		resourceSet.getResources().add(resource);
+		resource.load(inputStream, compiledOptions());
+		return (MessageGroup) resource.getContents().get(0);
+	}
+
+	/**
+	 * Compile an XMI map to the binary format. XMI stays the authoring format, the compiled map only speeds up loading
+	 * at runtime.
+	 *
+	 * @param modelUri
+	 *            The XMI map file name.
+	 * @param compiledUri
+	 *            The file name of the compiled map.
+	 * @throws IOException
+	 */
+	public static void compile(String modelUri, String compiledUri) throws IOException {
+		MessageGroup messageGroup = load(modelUri);
+		try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(compiledUri))) {
+			compile(messageGroup, outputStream);
+		}
+	}
+
+	/**
+	 * Write a message group to the binary format, with the ids of its objects in the XMI resource it is in.
+	 * The message group is moved to a new resource, the XMI resource it came from should not be saved afterwards.
+	 *
+	 * @param messageGroup
+	 *            The message group.
+	 * @param outputStream
+	 *            The stream to write to, it is not closed.
+	 * @throws IOException
+	 */
+	public static void compile(MessageGroup messageGroup, OutputStream outputStream) throws IOException {
+		Map<EObject, String> ids = new HashMap<>();
+		if (messageGroup.eResource() instanceof XMLResource) {
+			XMLResource xmlResource = (XMLResource) messageGroup.eResource();
+			ids.put(messageGroup, xmlResource.getID(messageGroup));
+			for (TreeIterator<EObject> it = messageGroup.eAllContents(); it.hasNext();) {
+				EObject eObject = it.next();
+				ids.put(eObject, xmlResource.getID(eObject));
+			}
+		}
+		MDMICompiledResourceImpl resource = new MDMICompiledResourceImpl(
+			URI.createURI("model." + COMPILED_EXTENSION));
+		resource.getContents().add(messageGroup);
+		for (Map.Entry<EObject, String> id : ids.entrySet()) {
+			resource.setID(id.getKey(), id.getValue());
+		}
+		resource.save(outputStream, compiledOptions());
+	}
+
+	private static Map<Object, Object> compiledOptions() {
+		Map<Object, Object> options = new HashMap<>();
+		options.put(BinaryResourceImpl.OPTION_VERSION, BinaryResourceImpl.BinaryIO.Version.VERSION_1_1);
+		return options;
+	}
+
 	public static MessageGroup loadFromWorkspace(String modelUri) {
 		MDMIPackage.eINSTANCE.getMessageGroup();
 		ResourceSet resourceSet = new ResourceSetImpl();